@@ -0,0 +1,74 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the memory allocated by a call between two components.
+ * The driver calls ping, a method without arguments and return value, so that the proxies do not
+ * allocate an argument array or box a return value. The calls through the full call chain pass
+ * through the receptacle context manager, whose call context is created when the receptacle is wired.
+ * The result is the number of bytes allocated by the calling thread per call, it needs a JVM that 
+ * reports the allocated bytes of a thread (com.sun.management.ThreadMXBean).
+ * 
+ * Usage: AllocationBenchmark [iterations per round] [rounds]
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class AllocationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("the JVM does not report the allocated bytes of a thread");
+			System.exit(1);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("the JVM does not report the allocated bytes of a thread");
+			System.exit(1);
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		
+		IDriver driver = BenchmarkApplication.load(null, 1);
+		
+		//warm up, the last round is reported
+		double chained = 0;
+		double direct = 0;
+		for (int round=0 ; round<rounds ; round++) {
+			chained = measure(threads, driver, true, iterations);
+			direct = measure(threads, driver, false, iterations);
+		}
+		System.out.println("chained bytes/call\tdirect bytes/call");
+		System.out.println(InvocationBenchmark.format(chained)+"\t"+InvocationBenchmark.format(direct));
+		System.exit(0);
+	}
+	
+	/**
+	 * @return the bytes allocated per call by the current thread
+	 */
+	private static double measure(com.sun.management.ThreadMXBean threads, IDriver driver, boolean chained, int iterations) {
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		driver.ping(chained, iterations);
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+		return (double)allocated / iterations;
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import org.jlcf.core.IJLCFContainer;
+import org.jlcf.core.JLCFContainer;
+
+/**
+ * Creates the application of the benchmarks: a driver component that calls a target component.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class BenchmarkApplication {
+
+	/**
+	 * writes the application description to a temporary file
+	 * @param invocation the invocation attribute of the application, null for the default engine
+	 * @param targetPoolSize the pool size of the target component
+	 * @return the file
+	 * @throws IOException in case the file cannot be written
+	 */
+	public static File writeDescription(String invocation, int targetPoolSize) throws IOException {
+		return writeDescription(invocation, Target.class.getName(), targetPoolSize);
+	}
+	
+	/**
+	 * writes the application description to a temporary file
+	 * @param invocation the invocation attribute of the application, null for the default engine
+	 * @param targetClass the implementation class of the target component
+	 * @param targetPoolSize the pool size of the target component
+	 * @return the file
+	 * @throws IOException in case the file cannot be written
+	 */
+	public static File writeDescription(String invocation, String targetClass, int targetPoolSize) throws IOException {
+		File file = File.createTempFile("jlcf-bench", ".xml");
+		file.deleteOnExit();
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			writer.write("<Application applicationName=\"Benchmark\" xmlns=\"http://jlcf.sourceforge.net/JLCFApplication\"");
+			if (invocation != null) {
+				writer.write(" invocation=\""+invocation+"\"");
+			}
+			writer.write(">\n");
+			writer.write("\t<component implementationClass=\""+targetClass+"\" name=\"target\" poolSize=\""+targetPoolSize+"\">\n");
+			writer.write("\t\t<interface name=\"target\" type=\""+ITarget.class.getName()+"\"/>\n");
+			writer.write("\t</component>\n");
+			writer.write("\t<component implementationClass=\""+Driver.class.getName()+"\" name=\"driver\">\n");
+			writer.write("\t\t<interface name=\"driver\" type=\""+IDriver.class.getName()+"\"/>\n");
+			writer.write("\t\t<interface name=\"callback\" type=\""+IDriverCallback.class.getName()+"\"/>\n");
+			writer.write("\t\t<receptacle name=\"chained\">\n");
+			writer.write("\t\t\t<Reference path=\"target/target\" callbackReference=\"driver/callback\"/>\n");
+			writer.write("\t\t</receptacle>\n");
+			writer.write("\t\t<receptacle name=\"direct\">\n");
+			writer.write("\t\t\t<Reference path=\"target/target\"/>\n");
+			writer.write("\t\t</receptacle>\n");
+			writer.write("\t</component>\n");
+			writer.write("</Application>\n");
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+	
+	/**
+	 * loads the application in a new container
+	 * @param invocation the invocation attribute of the application, null for the default engine
+	 * @param targetPoolSize the pool size of the target component
+	 * @return the driver interface of the application
+	 * @throws Exception in case the application cannot be loaded
+	 */
+	public static IDriver load(String invocation, int targetPoolSize) throws Exception {
+		IJLCFContainer container = JLCFContainer.getInstance();
+		container.loadApplication(writeDescription(invocation, targetPoolSize).getAbsolutePath());
+		return container.<IDriver>getComponentReference("driver/driver");
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput of calls to one component from a growing number of threads.
+ * All threads call the same target component through the driver, so that they contend on the 
+ * in-flight call tracking of the connector and the component proxy of the target. The number of 
+ * threads doubles from 1 up to the maximum. The result is the number of calls per second of all threads,
+ * through the full call chain and through the directly wired receptacle.
+ * 
+ * Usage: ContentionBenchmark [max threads] [millis per measurement]
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class ContentionBenchmark {
+
+	//calls made by a thread between two checks of the stop flag
+	private static final int BATCH = 1000;
+	
+	public static void main(String[] args) throws Exception {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+		
+		IDriver driver = BenchmarkApplication.load(null, 1);
+		
+		//warm up
+		measure(driver, true, Runtime.getRuntime().availableProcessors(), millis);
+		measure(driver, false, Runtime.getRuntime().availableProcessors(), millis);
+		
+		System.out.println("threads\tchained calls/s\tdirect calls/s");
+		for (int threads=1 ; threads<=maxThreads ; threads*=2) {
+			long chained = measure(driver, true, threads, millis);
+			long direct = measure(driver, false, threads, millis);
+			System.out.println(threads+"\t"+chained+"\t"+direct);
+		}
+		System.exit(0);
+	}
+	
+	/**
+	 * @return the number of calls per second of all threads
+	 */
+	private static long measure(final IDriver driver, final boolean chained, int threads, long millis) throws InterruptedException {
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final AtomicLong calls = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] callers = new Thread[threads];
+		for (int i=0 ; i<threads ; i++) {
+			callers[i] = new Thread("bench caller "+i) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long count = 0;
+					while (!stop.get()) {
+						driver.add(chained, BATCH);
+						count += BATCH;
+					}
+					calls.addAndGet(count);
+				}
+			};
+			callers[i].start();
+		}
+		
+		long begin = System.nanoTime();
+		start.countDown();
+		Thread.sleep(millis);
+		stop.set(true);
+		for (Thread caller : callers) {
+			caller.join();
+		}
+		long time = System.nanoTime() - begin;
+		return calls.get() * 1000000000L / time;
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+import org.jlcf.core.annotation.Receptacle;
+
+/**
+ * The driver component of the benchmarks. 
+ * It has two receptacles to the target component: "chained" declares a callback, its calls pass through 
+ * the context managers and the connector of the target. "direct" has no interceptors and no callback, 
+ * the framework wires it directly to the connector of the target.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class Driver implements IDriver, IDriverCallback {
+
+	private final ITarget chained;
+	private final ITarget direct;
+	
+	public Driver(@Receptacle(name="chained") ITarget chained, @Receptacle(name="direct") ITarget direct) {
+		this.chained = chained;
+		this.direct = direct;
+	}
+	
+	@Override
+	public long add(boolean chainedCalls, int iterations) {
+		ITarget target = chainedCalls ? chained : direct;
+		long sum = 0;
+		for (int i=0 ; i<iterations ; i++) {
+			sum += target.add(i, 1);
+		}
+		return sum;
+	}
+	
+	@Override
+	public void ping(boolean chainedCalls, int iterations) {
+		ITarget target = chainedCalls ? chained : direct;
+		for (int i=0 ; i<iterations ; i++) {
+			target.ping();
+		}
+	}
+
+	@Override
+	public void done() {
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+/**
+ * The interface of the driver component. The driver calls the target component in a loop, 
+ * so that the measured calls are made by a component through its receptacles.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface IDriver {
+
+	/**
+	 * calls add on the target
+	 * @param chained true to call through the receptacle with the full call chain, false through the directly wired receptacle
+	 * @param iterations number of calls
+	 * @return the sum of the results, so that the calls cannot be removed
+	 */
+	public long add(boolean chained, int iterations);
+	
+	/**
+	 * calls ping on the target
+	 * @param chained true to call through the receptacle with the full call chain, false through the directly wired receptacle
+	 * @param iterations number of calls
+	 */
+	public void ping(boolean chained, int iterations);
+}
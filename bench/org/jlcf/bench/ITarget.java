@@ -0,0 +1,35 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+/**
+ * The interface of the target component of the benchmarks.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface ITarget {
+
+	/**
+	 * @return a + b
+	 */
+	public int add(int a, int b);
+	
+	/**
+	 * a call without arguments and return value
+	 */
+	public void ping();
+}
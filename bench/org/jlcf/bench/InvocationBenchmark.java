@@ -0,0 +1,78 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+import org.jlcf.core.invoke.MethodInvokerTable;
+
+/**
+ * Compares the cost of a call between two components with the invocation engines of the framework.
+ * For each engine a new container loads the benchmark application, and the driver calls the target 
+ * through the full call chain (receptacle, context managers, connector, component proxy) and through 
+ * the directly wired receptacle. The result is the average time of a call in nanoseconds.
+ * 
+ * The engines share the call sites of the framework when they run in the same JVM, so the results of an
+ * engine depend on the engines that ran before it. An engine can be given to measure it alone.
+ * 
+ * Usage: InvocationBenchmark [iterations per round] [rounds] [engine]
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class InvocationBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		
+		String[] engines = new String[] {MethodInvokerTable.INVOCATION_REFLECTION, 
+				MethodInvokerTable.INVOCATION_METHOD_HANDLE, MethodInvokerTable.INVOCATION_STUB};
+		if (args.length > 2) {
+			engines = new String[] {args[2]};
+		}
+		System.out.println("engine\tchained ns/call\tdirect ns/call");
+		for (String engine : engines) {
+			IDriver driver = BenchmarkApplication.load(engine, 1);
+			
+			//warm up, the last round is reported
+			double chained = 0;
+			double direct = 0;
+			for (int round=0 ; round<rounds ; round++) {
+				chained = measure(driver, true, iterations);
+				direct = measure(driver, false, iterations);
+			}
+			System.out.println(engine+"\t"+format(chained)+"\t"+format(direct));
+		}
+		System.exit(0);
+	}
+	
+	/**
+	 * @return the average time of a call in nanoseconds
+	 */
+	private static double measure(IDriver driver, boolean chained, int iterations) {
+		long start = System.nanoTime();
+		long sum = driver.add(chained, iterations);
+		long time = System.nanoTime() - start;
+		if (sum == 0) {
+			//the sum is used so that the calls are not removed
+			System.out.println();
+		}
+		return (double)time / iterations;
+	}
+	
+	static String format(double value) {
+		return String.format("%.1f", value);
+	}
+}
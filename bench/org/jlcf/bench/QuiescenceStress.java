@@ -0,0 +1,116 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jlcf.core.IJLCFContainer;
+import org.jlcf.core.JLCFContainer;
+import org.jlcf.core.util.Pair;
+
+/**
+ * Checks the quiescence guarantee of dynamic reconfiguration under load. Many threads call the target
+ * component, half of them through the receptacle with the full call chain and half through the directly
+ * wired receptacle, while the main thread replaces the target over and over. The target ({@link StressTarget})
+ * records every call that runs while its state is extracted, and every extraction while calls are running.
+ * It also passes its call count on to its replacement, so a call that is lost or counted twice across a
+ * reconfiguration shows up as a difference from the calls made by the threads.
+ *
+ * Exits with 0 if there were no violations, 1 otherwise.
+ *
+ * Usage: QuiescenceStress [threads] [reconfigurations] [reconfiguration timeframe millis]
+ *
+ * @author Petros Pissias
+ *
+ */
+public class QuiescenceStress {
+
+	//calls made by a thread between two checks of the stop flag
+	private static final int BATCH = 100;
+
+	public static void main(String[] args) throws Exception {
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int reconfigurations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		long millis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+
+		IJLCFContainer container = JLCFContainer.getInstance();
+		container.loadApplication(BenchmarkApplication.writeDescription(null, StressTarget.class.getName(), 1).getAbsolutePath());
+		final IDriver driver = container.<IDriver>getComponentReference("driver/driver");
+
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final AtomicLong calls = new AtomicLong();
+		final AtomicLong failedCalls = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] callers = new Thread[threads];
+		for (int i=0 ; i<threads ; i++) {
+			final boolean chained = (i % 2) == 0;
+			callers[i] = new Thread("stress caller "+i) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long count = 0;
+					while (!stop.get()) {
+						try {
+							driver.add(chained, BATCH);
+							count += BATCH;
+						} catch (RuntimeException e) {
+							//the calls of the batch before the failure are not known
+							failedCalls.incrementAndGet();
+						}
+					}
+					calls.addAndGet(count);
+				}
+			};
+			callers[i].start();
+		}
+
+		System.out.println("processors:"+Runtime.getRuntime().availableProcessors()+" threads:"+threads+" reconfigurations:"+reconfigurations);
+		long begin = System.nanoTime();
+		start.countDown();
+		int replaced = 0;
+		//the reason of the first failed reconfiguration
+		String failure = null;
+		for (int i=0 ; i<reconfigurations ; i++) {
+			Pair<Boolean, String> response = container.singleComponentReconfguration("target", StressTarget.class.getName(), millis);
+			if (response.getLeft()) {
+				replaced++;
+			} else if (failure == null) {
+				failure = response.getRight();
+			}
+		}
+		stop.set(true);
+		for (Thread caller : callers) {
+			caller.join();
+		}
+		long time = System.nanoTime() - begin;
+
+		long violations = StressTarget.getViolations();
+		long counted = StressTarget.getCalls();
+		System.out.println("replaced:"+replaced+" failed:"+(reconfigurations-replaced)+" in "+(time/1000000)+" ms"+(failure == null ? "" : " first failure:"+failure));
+		System.out.println("calls:"+calls.get()+" counted by the target:"+counted+" failed batches:"+failedCalls.get());
+		System.out.println("violations:"+violations);
+
+		boolean ok = violations == 0 && failedCalls.get() == 0 && counted == calls.get();
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.bench;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jlcf.core.dynrec.IReconfigurableComponent;
+
+/**
+ * The target component of the quiescence stress test. It counts its calls and passes the count on
+ * when it is replaced. It records a violation when a call runs while its state is extracted, that is
+ * from the moment the framework declares the component quiescent until the state is inserted into
+ * the replacement, or the reconfiguration fails and the component proceeds.
+ *
+ * The checks are static so that they span the old and the new instance of a reconfiguration.
+ *
+ * @author Petros Pissias
+ *
+ */
+public class StressTarget implements ITarget, IReconfigurableComponent {
+
+	//calls running in a StressTarget
+	private static final AtomicInteger running = new AtomicInteger();
+	//true from the extraction of the state until it is inserted or the component proceeds
+	private static volatile boolean extracted;
+	//calls that ran inside a reconfiguration window, and extractions while calls were running
+	private static final AtomicLong violations = new AtomicLong();
+	//the instance that receives the calls
+	private static volatile StressTarget current;
+
+	//calls of this instance and its predecessors
+	private final AtomicLong calls = new AtomicLong();
+
+	public StressTarget() {
+		if (current == null) {
+			current = this;
+		}
+	}
+
+	@Override
+	public int add(int a, int b) {
+		running.incrementAndGet();
+		try {
+			if (extracted || current != this) {
+				violations.incrementAndGet();
+			}
+			calls.incrementAndGet();
+			return a + b;
+		} finally {
+			running.decrementAndGet();
+		}
+	}
+
+	@Override
+	public void ping() {
+		add(0, 0);
+	}
+
+	@Override
+	public void stopAliveThreads() {
+	}
+
+	@Override
+	public void proceed() {
+		extracted = false;
+	}
+
+	@Override
+	public Object extractState() {
+		extracted = true;
+		if (running.get() != 0) {
+			violations.incrementAndGet();
+		}
+		return Long.valueOf(calls.get());
+	}
+
+	@Override
+	public void insertState(Object state) {
+		calls.set(((Long)state).longValue());
+		current = this;
+		extracted = false;
+	}
+
+	/**
+	 * @return the number of calls counted by the current instance, including the calls of the replaced instances
+	 */
+	public static long getCalls() {
+		return current.calls.get();
+	}
+
+	/**
+	 * @return the number of calls that ran inside a reconfiguration window
+	 */
+	public static long getViolations() {
+		return violations.get();
+	}
+}
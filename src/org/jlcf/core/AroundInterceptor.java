@@ -0,0 +1,98 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+import java.lang.reflect.Method;
+
+/**
+ * Base class of interceptors that do not depend on the interface of the receptacle.
+ * The interceptor developer shall extend this object and implement the around method, 
+ * which receives every call of the receptacle and forwards it by calling {@link Invocation#proceed()}.
+ * Around interceptors can be mixed with typed interceptors in the same chain.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public abstract class AroundInterceptor extends Interceptor {
+
+	//the invocation reused by the calls of each thread
+	private final ThreadLocal<Invocation> invocations = new ThreadLocal<Invocation>();
+	
+	/**
+	 * Called for every call of the receptacle.
+	 * @param invocation the call, valid until this method returns
+	 * @return the return of the call, typically the return of invocation.proceed()
+	 * @throws Throwable the exception of the call
+	 */
+	public abstract Object around(Invocation invocation) throws Throwable;
+	
+	/**
+	 * Forwards a call to the rest of the chain outside of an invocation, for example in order to 
+	 * deliver calls that were deferred by the interceptor. Inside a call of the interceptor the call 
+	 * is forwarded to the chain of that call, otherwise to the newest chain of the interceptor.
+	 * @param method the method of the receptacle interface
+	 * @param args the arguments, null if the method has no arguments
+	 * @return the return of the method, null for void methods
+	 * @throws Throwable the exception thrown by the rest of the chain
+	 */
+	protected Object proceed(Method method, Object[] args) throws Throwable {
+		ChainLink link = getCurrentLink();
+		return ChainLink.dispatch(link.getNext(method), method, args, link.getInvokers());
+	}
+	
+	/**
+	 * Forwards a call to the rest of the chain outside of an invocation with the call context of the original caller, 
+	 * see {@link #proceed(Method, Object[])}. The call context of the current thread is restored after the call.
+	 * @param context the call context, taken from {@link Invocation#getCallContext()} of the deferred call. null for none
+	 * @param method the method of the receptacle interface
+	 * @param args the arguments, null if the method has no arguments
+	 * @return the return of the method, null for void methods
+	 * @throws Throwable the exception thrown by the rest of the chain
+	 */
+	protected Object proceed(CallContextInformation context, Method method, Object[] args) throws Throwable {
+		ChainLink link = getCurrentLink();
+		return ChainLink.dispatch(link.getContainer(), context, link.getNext(method), method, args, link.getInvokers());
+	}
+	
+	/**
+	 * @return the interface of the receptacle (or component interface) that this interceptor is linked to, null before it is linked
+	 */
+	protected Class<?>[] getInterfaces() {
+		return getLinkedInterfaces();
+	}
+	
+	/**
+	 * Passes a call of a chain to the around method.
+	 * The next object is read from the link of the chain, the call completes on the chain it started with.
+	 */
+	@Override
+	final Object pass(ChainLink link, Method method, Object[] args) throws Throwable {
+		Invocation invocation = invocations.get();
+		if (invocation == null) {
+			invocation = new Invocation();
+			invocations.set(invocation);
+		} else if (invocation.isActive()) {
+			//nested call of the same thread through this interceptor
+			invocation = new Invocation();
+		}
+		invocation.start(method, args, link.getNext(method), link.getInvokers(), link.getContainer());
+		try {
+			return around(invocation);
+		} finally {
+			invocation.end();
+		}
+	}
+}
@@ -18,26 +18,33 @@ package org.jlcf.core;
 
 import java.lang.reflect.Method;
 
-import org.apache.log4j.Logger;
-
 /**
  * All useful information about a call context.
- * Currently it contains the target method and the callback address if any.
+ * Currently it contains the target method, the callback address if any, the deadline of the call if any
+ * and the id of the trace that the call belongs to if it is traced.
  * The call context is set by the calling component (Receptacle Context Manager) and used
  * by the target component (Interface Context Manager)
  * 
+ * Instances are immutable. Contexts without a deadline or trace are shared by all calls of a receptacle 
+ * to the same method, they are created when the receptacle is wired. A call with a deadline or a trace 
+ * has its own context.
+ * 
  * @author Petros Pissias
  *
  */
 public class CallContextInformation {
 
-	private final Logger logger = Logger.getLogger(getClass());
-
 	//the method of the interface that this call is targeted towards
 	private final Method method;
 	
 	//potential callback information
 	private final String callbackAddress;
+	
+	//the deadline of the call in System.nanoTime() time, 0 if the call has no deadline
+	private final long deadline;
+	
+	//the id of the trace of the call, 0 if the call is not traced
+	private final long traceId;
 
 	/**
 	 * Constructor
@@ -45,8 +52,37 @@ public class CallContextInformation {
 	 * @param callbackAddress potential callback address. null if no callback is present.
 	 */
 	public CallContextInformation(Method method, String callbackAddress) {
+		this(method, callbackAddress, 0, 0);
+	}
+	
+	/**
+	 * Constructor
+	 * @param method the target method from the target interface
+	 * @param callbackAddress potential callback address. null if no callback is present.
+	 * @param deadline the deadline of the call in System.nanoTime() time, 0 if the call has no deadline
+	 * @param traceId the id of the trace of the call, 0 if the call is not traced
+	 */
+	public CallContextInformation(Method method, String callbackAddress, long deadline, long traceId) {
 		this.method = method;
 		this.callbackAddress = callbackAddress;
+		this.deadline = deadline;
+		this.traceId = traceId;
+	}
+	
+	/**
+	 * @param newDeadline the deadline in System.nanoTime() time, 0 for no deadline
+	 * @return a context with the same method, callback and trace and the given deadline
+	 */
+	public CallContextInformation withDeadline(long newDeadline) {
+		return new CallContextInformation(method, callbackAddress, newDeadline, traceId);
+	}
+	
+	/**
+	 * @param newTraceId the id of the trace, 0 for no trace
+	 * @return a context with the same method, callback and deadline and the given trace id
+	 */
+	public CallContextInformation withTraceId(long newTraceId) {
+		return new CallContextInformation(method, callbackAddress, deadline, newTraceId);
 	}
 
 	public Method getMethod() {
@@ -56,11 +92,30 @@ public class CallContextInformation {
 	public String getCallbackAddress() {
 		return callbackAddress;
 	}
+	
+	public long getDeadline() {
+		return deadline;
+	}
+	
+	public boolean hasDeadline() {
+		return deadline != 0;
+	}
+	
+	public long getTraceId() {
+		return traceId;
+	}
+	
+	/**
+	 * @return the time left until the deadline in nanoseconds, negative if it has passed. Long.MAX_VALUE if the call has no deadline
+	 */
+	public long getRemainingNanos() {
+		return deadline == 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+	}
 
 	@Override
 	public String toString() {
 		return "ContextInformation [method=" + method + ", callbackAddress="
-				+ callbackAddress + "]";
+				+ callbackAddress + ", deadline=" + deadline + ", traceId=" + traceId + "]";
 	}
 
 	
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.jlcf.core.invoke.MethodInvokerCache;
+
+/**
+ * The position of an interceptor in an {@link InterceptorChain}.
+ * Every chain has its own links, an interceptor that is part of several chains (for example the old and the 
+ * new chain while an interceptor is added at runtime) has one link per chain. A call passes from link to link,
+ * so it completes on the chain it entered even if the chain is replaced while the call is in progress.
+ * 
+ * @author Petros Pissias
+ *
+ */
+final class ChainLink {
+
+	//the interceptor at this position of the chain
+	private final Interceptor interceptor;
+	
+	//method -> next object of the chain, a link or the target of the chain
+	private final Map<Method, Object> nextObjects;
+	
+	//the target of the chain, the next object of the methods that are not in the map
+	private final Object target;
+	
+	//the invokers used to forward calls
+	private final MethodInvokerCache invokers;
+	
+	//the framework container, holds the call context of the calls
+	private final JLCFContainer container;
+	
+	/**
+	 * creates a new link
+	 * @param interceptor the interceptor
+	 * @param nextObjects method -> next object, not modified after the link is created
+	 * @param target the target of the chain
+	 * @param invokers the invokers used to forward calls
+	 * @param container the framework container
+	 */
+	ChainLink(Interceptor interceptor, Map<Method, Object> nextObjects, Object target, MethodInvokerCache invokers, JLCFContainer container) {
+		this.interceptor = interceptor;
+		this.nextObjects = nextObjects;
+		this.target = target;
+		this.invokers = invokers;
+		this.container = container;
+	}
+	
+	/**
+	 * @param m a method of the interface of the chain
+	 * @return the object that receives the calls of the method after the interceptor of this link
+	 */
+	Object getNext(Method m) {
+		Object next = nextObjects.get(m);
+		return next == null ? target : next;
+	}
+	
+	/**
+	 * @return the invokers used to forward calls
+	 */
+	MethodInvokerCache getInvokers() {
+		return invokers;
+	}
+	
+	/**
+	 * @return the framework container
+	 */
+	JLCFContainer getContainer() {
+		return container;
+	}
+	
+	/**
+	 * passes a call through the interceptor of this link
+	 */
+	Object call(Method m, Object[] args) throws Throwable {
+		return interceptor.enter(this, m, args);
+	}
+	
+	/**
+	 * calls the next object of a chain
+	 * @param next a link or the target of the chain
+	 * @param m the method
+	 * @param args the arguments
+	 * @param invokers the invokers used to call the target
+	 * @return the return of the call
+	 * @throws Throwable the exception of the call
+	 */
+	static Object dispatch(Object next, Method m, Object[] args, MethodInvokerCache invokers) throws Throwable {
+		if (next instanceof ChainLink) {
+			return ((ChainLink)next).call(m, args);
+		}
+		return invokers.getInvoker(m).invoke(next, args);
+	}
+	
+	/**
+	 * calls the next object of a chain with a call context, from a thread that does not serve the call 
+	 * (for example a thread of an interceptor). The call context of the thread is restored after the call.
+	 * @param container the framework container
+	 * @param context the call context of the call, null for none
+	 * @param next a link or the target of the chain
+	 * @param m the method
+	 * @param args the arguments
+	 * @param invokers the invokers used to call the target
+	 * @return the return of the call
+	 * @throws Throwable the exception of the call
+	 */
+	static Object dispatch(JLCFContainer container, CallContextInformation context, Object next, Method m, Object[] args, MethodInvokerCache invokers) throws Throwable {
+		CallContextInformation previous = container.getCallContext();
+		if (previous == context) {
+			return dispatch(next, m, args, invokers);
+		}
+		container.setCallContext(context);
+		try {
+			return dispatch(next, m, args, invokers);
+		} finally {
+			container.setCallContext(previous);
+		}
+	}
+}
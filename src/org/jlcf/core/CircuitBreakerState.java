@@ -0,0 +1,31 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+/**
+ * The states of the circuit of a circuit breaker interceptor, see {@link org.jlcf.core.interceptors.CircuitBreakerInterceptor}.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public enum CircuitBreakerState {
+	//calls reach the target
+	CLOSED,
+	//calls do not reach the target and return the fallback
+	OPEN,
+	//a limited number of probe calls reach the target
+	HALF_OPEN
+}
@@ -15,9 +15,9 @@
  */
 package org.jlcf.core;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Level;
@@ -28,6 +28,10 @@ import org.jlcf.core.dynrec.ComponentState;
 import org.jlcf.core.dynrec.ComponentStateEvent;
 import org.jlcf.core.dynrec.IComponentStateReceiver;
 import org.jlcf.core.dynrec.IReconfigurableComponent;
+import org.jlcf.core.exception.ApplicationReconfigurationException;
+import org.jlcf.core.invoke.MethodInvokerCache;
+import org.jlcf.core.invoke.MethodInvokerTable;
+import org.jlcf.core.util.StripedCounter;
 
 /**
  * This is the first level wrapper on top of the POJO component.
@@ -35,16 +39,37 @@ import org.jlcf.core.dynrec.IReconfigurableComponent;
  * It is also used in order to call the Init methods of components
  * and to manage dynamic reconfiguration.
  * 
- * It implements all formal interfaces of the component and is instantiated
- * as a proxy object during the component instantiation by the framework.
+ * The connectors of the component call the POJO through it, there is no proxy object
+ * of the component.
+ * 
+ * Calls in progress are counted without locking. The lock is only used while a reconfiguration
+ * is in progress, when calls are admitted by the connectors.
+ * 
+ * A pooled component has several instances of its POJO behind the same proxy. The instances share the 
+ * receptacles of the component, the calls are spread across them according to the pool policy. They share 
+ * the lock and the count of the calls in progress, so they reach a quiescent state and are reconfigured together.
+ * The instances of a sharded component (consistent hash policy) each keep the state of the keys they own, 
+ * the key of a call is the {@link org.jlcf.core.annotation.ShardKey} argument of the method. Methods without a key 
+ * are marked with {@link org.jlcf.core.annotation.AnyShard}, and the state of a sharded component is only 
+ * transferred to the same number of shards.
  * 
  * @author Petros Pissias
  *
  */
-public class ComponentProxyHandler implements InvocationHandler, IComponentProxy {
+public class ComponentProxyHandler implements IComponentProxy {
 	
 	//the component instance
 	private final Object componentPojo;
+	//all instances of a pooled component, only componentPojo if the component is not pooled
+	private final Object[] componentPojos;
+	//the policy that selects the instance of a call
+	private final PoolPolicy poolPolicy;
+	//the next instance of round robin, or the start of the search of least in flight
+	private final AtomicInteger nextInstance;
+	//calls in progress per instance, only maintained for the least in flight policy. Padded like the striped counter
+	private final AtomicIntegerArray instanceCalls;
+	//routes the calls of a sharded component, null for the other policies
+	private final ShardRouter shardRouter;
 	//init method
 	private final Method initMethod;
 	//name of the component, primarily for logging.
@@ -57,25 +82,72 @@ public class ComponentProxyHandler implements InvocationHandler, IComponentProxy
 	
 	//lock that is used for synchronization between connectors, this object and the reconfiguration manager of the framework
 	private final ReentrantLock lock;
+	
+	//the invokers used to call the component pojo
+	private final MethodInvokerCache invokers;
+	
+	//the factory of the component, null if the component was instantiated with reflection
+	private final IComponentFactory factory;
+	
+	//number of calls in progress
+	private final StripedCounter pendingCalls;
+	
+	//set when a reconfiguration starts, calls must then be admitted by the connectors under the lock
+	private volatile boolean reconfiguring;
+	
+	//distance between two used counters of instanceCalls, keeps them on separate cache lines
+	private static final int INSTANCE_PADDING = 16;
+	
 	/**
 	 * creates a new instance of a component proxy handler.
 	 * @param componentPojoInstance
 	 * @param name
+	 * @param invokers the invokers used to call the component pojo
+	 * @param factory the factory that created the pojo, null if the pojo was created with reflection
+	 */
+	public ComponentProxyHandler(Object componentPojoInstance, String name, MethodInvokerTable invokers, IComponentFactory factory) {
+		this(new Object[]{componentPojoInstance}, PoolPolicy.ROUND_ROBIN, name, invokers, factory);
+	}
+	
+	/**
+	 * creates a new instance of a component proxy handler of a pooled component.
+	 * @param componentPojoInstances the instances of the component, all of the same class
+	 * @param policy the policy that spreads the calls across the instances
+	 * @param name
+	 * @param invokers the invokers used to call the component pojo
+	 * @param factory the factory that created the pojos, null if the pojos were created with reflection
 	 */
-	public ComponentProxyHandler(Object componentPojoInstance, String name) {
-		componentPojo = componentPojoInstance;
-		Method[] methods = componentPojo.getClass().getMethods();
+	public ComponentProxyHandler(Object[] componentPojoInstances, PoolPolicy policy, String name, MethodInvokerTable invokers, IComponentFactory factory) {
+		componentPojos = componentPojoInstances.clone();
+		componentPojo = componentPojos[0];
+		poolPolicy = policy;
+		nextInstance = new AtomicInteger();
+		if (componentPojos.length > 1 && policy == PoolPolicy.LEAST_IN_FLIGHT) {
+			instanceCalls = new AtomicIntegerArray(componentPojos.length * INSTANCE_PADDING);
+		} else {
+			instanceCalls = null;
+		}
+		if (componentPojos.length > 1 && policy == PoolPolicy.CONSISTENT_HASH) {
+			shardRouter = new ShardRouter(componentPojos.length);
+		} else {
+			shardRouter = null;
+		}
+		this.invokers = invokers.newCache();
+		this.factory = factory;
 		Method fInitMethod = null;
 		
-		//search for the init method
+		//search for the init method. the factory knows it already
 		boolean found = false;
-		for (Method method : methods) {
-			InitMethod mthd = method.getAnnotation(InitMethod.class);
-			if (mthd != null) {
-				found = true;
-				fInitMethod = method;
-				break;
-			} 
+		if (factory == null) {
+			Method[] methods = componentPojo.getClass().getMethods();
+			for (Method method : methods) {
+				InitMethod mthd = method.getAnnotation(InitMethod.class);
+				if (mthd != null) {
+					found = true;
+					fInitMethod = method;
+					break;
+				} 
+			}
 		}
 		if (found) {
 			initMethod = fInitMethod;
@@ -87,57 +159,134 @@ public class ComponentProxyHandler implements InvocationHandler, IComponentProxy
 		
 		//create the state manager
 		//TODO do via property file
-		componentExternalStateManager = new ComponentProxyReconfigurationManager();
+		pendingCalls = new StripedCounter();
+		reconfiguring = false;
+		componentExternalStateManager = new ComponentProxyReconfigurationManager(pendingCalls);
 		
 		//initialize the lock
 		lock = new ReentrantLock();
 	}
 	
-	/* (non-Javadoc)
-	 * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+	@Override
+	public int acquireInstance(Method m, Object[] arguments) {
+		int size = componentPojos.length;
+		if (size == 1) {
+			return 0;
+		}
+		if (shardRouter != null) {
+			int shard = shardRouter.route(m, arguments);
+			if (shard >= 0) {
+				return shard;
+			}
+		}
+		if (instanceCalls == null) {
+			//round robin
+			return (nextInstance.getAndIncrement() & Integer.MAX_VALUE) % size;
+		}
+		
+		//least in flight. The search starts at a different instance for each thread, so that ties are spread
+		int start = (int)(Thread.currentThread().getId() % size);
+		int selected = start;
+		int selectedCalls = instanceCalls.get(start * INSTANCE_PADDING);
+		for (int i=1 ; i<size && selectedCalls > 0 ; i++) {
+			int instance = (start + i) % size;
+			int calls = instanceCalls.get(instance * INSTANCE_PADDING);
+			if (calls < selectedCalls) {
+				selected = instance;
+				selectedCalls = calls;
+			}
+		}
+		instanceCalls.incrementAndGet(selected * INSTANCE_PADDING);
+		return selected;
+	}
+	
+	@Override
+	public void releaseInstance(int instance) {
+		if (instanceCalls != null) {
+			instanceCalls.decrementAndGet(instance * INSTANCE_PADDING);
+		}
+	}
+	
+	@Override
+	public Object getComponentPojo(int instance) {
+		return componentPojos[instance];
+	}
+	
+	@Override
+	public int getPoolSize() {
+		return componentPojos.length;
+	}
+	
+	@Override
+	public boolean isRoutedByArguments() {
+		return shardRouter != null;
+	}
+	
+	/**
+	 * returns the number of calls in progress on an instance of a pooled component
+	 * @param instance the index of the instance
+	 * @return the number of calls in progress, -1 if they are not counted by the pool policy
 	 */
+	public int getInstanceCalls(int instance) {
+		if (instanceCalls == null) {
+			return -1;
+		}
+		return instanceCalls.get(instance * INSTANCE_PADDING);
+	}
+	
 	@Override
-	public Object invoke(Object proxy, Method m, Object[] arguments)
-			throws Throwable {
-
-		//logger.debug(name+" sending CALLING msg to state manager");
-		componentExternalStateManager.receiveEvent(ComponentStateEvent.CALLING, m, arguments);
+	public boolean enterCall() {
+		//register the call before checking the flag. Either the reconfiguration counts this call
+		//or this call sees the reconfiguration
+		pendingCalls.increment();
+		if (!reconfiguring) {
+			return true;
+		}
+		//the call must be admitted by the connector
+		exitCall();
+		return false;
+	}
+	
+	@Override
+	public void enterLockedCall() {
+		//register the call, the connector has already obtained the lock
+		pendingCalls.increment();
 		
 		//has been previously locked by the same thread on the connector
 		//logger.debug(name+" thread:"+Thread.currentThread().getName()+" releasing lock");
 		lock.unlock();
-		
-		//logger.debug(name+" invoking pojo");
-		Object ret; //the return
-		try {
-			ret = m.invoke(componentPojo, arguments);
-		}catch (InvocationTargetException ex) {
-			if (ex.getCause() == null) {
-				throw (ex);
-			} else {
-				throw (ex.getCause()); //throw the actual exception of the target interface
-			}		
+	}
+	
+	@Override
+	public void exitCall() {
+		pendingCalls.decrement();
+		if (reconfiguring) {
+			//the reconfiguration may be waiting for this call
+			//logger.debug(name+" sending FINISHED_CALLING msg to state manager after obtaining lock");
+			lock.lock();
+			try {
+				componentExternalStateManager.receiveEvent(ComponentStateEvent.FINISHED_CALLING, null, null);
+			} finally {
+				lock.unlock();
+			}
 		}
-		
-		//logger.debug(name+" sending FINISHED_CALLING msg to state manager after obtaining lock");
-		lock.lock();
-		componentExternalStateManager.receiveEvent(ComponentStateEvent.FINISHED_CALLING, m, arguments);
-		lock.unlock();
-		
-		return ret;
 	}
 
 	@Override
 	public void callInitMethod() {
 		//logger.debug(name+" Calling init method on component pojo if exists");
-		if (initMethod != null) {
-			try {
-				initMethod.invoke(componentPojo, new Object[]{});
-			} catch (Exception e) {
-				//logger.log(Level.ERROR, "Cannot call init method on component of class:"+componentPojo.getClass().getName()+" "+e.getMessage(), e);
+		for (Object pojo : componentPojos) {
+			if (factory != null) {
+				factory.callInitMethod(pojo);
+			} else if (initMethod != null) {
+				try {
+					initMethod.invoke(pojo, new Object[]{});
+				} catch (Exception e) {
+					//logger.log(Level.ERROR, "Cannot call init method on component of class:"+pojo.getClass().getName()+" "+e.getMessage(), e);
+				}
+			}else {
+				//logger.debug(name+" No init method for component of class:"+pojo.getClass().getName());
 			}
-		}else {
-			//logger.debug(name+" No init method for component of class:"+componentPojo.getClass().getName());
 		}
 		
 	}
@@ -150,12 +299,17 @@ public class ComponentProxyHandler implements InvocationHandler, IComponentProxy
 		//inform the component to stop its internal threads that may initiate calls through the component receptcles
 		//this is needed if the component is an "alive" component. That is if it has threads that are able to
 		//make calls through its receptacles.
-		try {
-			//logger.debug(name+" trying to call stopAliveThreads on pojo");
-			((IReconfigurableComponent)componentPojo).stopAliveThreads();
-		}catch (ClassCastException ex) {
-			//logger.debug("could not cast component to IReconfigurableComponent. Assuming component does not implement stopAliveThreads method");
+		for (Object pojo : componentPojos) {
+			try {
+				//logger.debug(name+" trying to call stopAliveThreads on pojo");
+				((IReconfigurableComponent)pojo).stopAliveThreads();
+			}catch (ClassCastException ex) {
+				//logger.debug("could not cast component to IReconfigurableComponent. Assuming component does not implement stopAliveThreads method");
+			}
 		}
+		//from now on calls are admitted by the connectors under the lock
+		reconfiguring = true;
+		
 		//logger.debug(name+" sending RECONFIGURATION_START event to manager");
 		componentExternalStateManager.receiveEvent(ComponentStateEvent.RECONFIGURATION_START, null, null);
 
@@ -163,40 +317,89 @@ public class ComponentProxyHandler implements InvocationHandler, IComponentProxy
 
 	@Override
 	public void proceed() {
-		try {
-			//logger.debug(name+" trying to call proceed on pojo");
-			((IReconfigurableComponent)componentPojo).proceed();
-		}catch (ClassCastException ex) {
-			//logger.debug("could not cast component to IReconfigurableComponent. Assuming component dose not implement proceed method");
-
-		}	
+		for (Object pojo : componentPojos) {
+			try {
+				//logger.debug(name+" trying to call proceed on pojo");
+				((IReconfigurableComponent)pojo).proceed();
+			}catch (ClassCastException ex) {
+				//logger.debug("could not cast component to IReconfigurableComponent. Assuming component dose not implement proceed method");
+	
+			}	
+		}
 		//logger.debug(name+" sending RECONFIGURATION_END event to manager");
 
 		componentExternalStateManager.receiveEvent(ComponentStateEvent.RECONFIGURATION_END, null, null);
+		reconfiguring = false;
 
 	}
 
+	/**
+	 * returns the state of the component. The state of a pooled component is an array 
+	 * with the state of each instance.
+	 */
 	@Override
 	public Object getInternalState() {
+		if (componentPojos.length == 1) {
+			return extractState(componentPojo);
+		}
+		Object[] states = new Object[componentPojos.length];
+		for (int i=0 ; i<componentPojos.length ; i++) {
+			states[i] = extractState(componentPojos[i]);
+		}
+		return states;
+	}
+
+	/**
+	 * sets the state of the component. An array with one state per instance is distributed to 
+	 * the instances of a pooled component, any other state is given to every instance.
+	 * The state of a sharded component must have one state per shard, the keys are owned by the same shards.
+	 */
+	@Override
+	public void setInternalState(Object internalState) throws ApplicationReconfigurationException {
+		if (shardRouter != null && !(internalState instanceof Object[] && ((Object[])internalState).length == componentPojos.length)) {
+			throw new ApplicationReconfigurationException("the state of the sharded component "+name+" does not have one state for each of its "+componentPojos.length+" shards");
+		}
+		if (componentPojos.length > 1 && internalState instanceof Object[] && ((Object[])internalState).length == componentPojos.length) {
+			Object[] states = (Object[])internalState;
+			for (int i=0 ; i<componentPojos.length ; i++) {
+				insertState(componentPojos[i], states[i]);
+			}
+		} else {
+			for (Object pojo : componentPojos) {
+				insertState(pojo, internalState);
+			}
+		}
+	}
+	
+	private Object extractState(Object pojo) {
 		try {
 			//logger.debug(name+" trying to call extractState on pojo");
-			return ((IReconfigurableComponent)componentPojo).extractState();
+			return ((IReconfigurableComponent)pojo).extractState();
 		}catch (ClassCastException ex) {
 			//logger.debug("could not cast component to IReconfigurableComponent");
 		}	
 		return null;
 	}
-
-	@Override
-	public void setInternalState(Object internalState) {
+	
+	private void insertState(Object pojo, Object internalState) {
 		try {
 			//logger.debug(name+" trying to call insertState on pojo");
-			((IReconfigurableComponent)componentPojo).insertState(internalState);
+			((IReconfigurableComponent)pojo).insertState(internalState);
 		}catch (ClassCastException ex) {
 			//logger.debug("could not cast component to IReconfigurableComponent");
 		}	
 	}
 	
+	@Override
+	public long getPendingCalls() {
+		return componentExternalStateManager.getPendingCalls();
+	}
+	
+	@Override
+	public Object getComponentPojo() {
+		return componentPojo;
+	}
+	
 	@Override
 	//called by coonnectors after obtaining the lock in order to determine the component state
 	public ComponentState getExternalState() {
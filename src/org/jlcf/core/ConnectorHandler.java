@@ -16,12 +16,15 @@
 package org.jlcf.core;
 
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Map;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.jlcf.core.dynrec.ConnectorTimingBasedReconfigurationManager;
+import org.jlcf.core.invoke.MethodInvokerCache;
+import org.jlcf.core.invoke.MethodInvokerTable;
+import org.jlcf.core.util.LatencyHistogram;
 
 /**
  * This interecepts and forwards the calls to the component proxy handler.
@@ -30,16 +33,17 @@ import org.jlcf.core.dynrec.ConnectorTimingBasedReconfigurationManager;
  * 
  * The main purpose of a connector is to selectively block calls directed at the
  * component during dynamic reconfiguration.
+ * When no reconfiguration is in progress, calls are registered at the component proxy
+ * without locking and forwarded directly to the component pojo.
+ * The calls to a pooled component are forwarded to the instance selected by the component proxy.
  * 
  * @author Petros Pissias
  *
  */
 public class ConnectorHandler implements InvocationHandler, IConnectorManager {
 	
-	//the component proxy instance.
+	//the proxy handler of the component.
 	//called by the component framework and user threads so needs to be volatile.
-	private volatile Object componentProxy;
-	//the proxy handler of the component
 	private volatile IComponentProxy componentProxyHandler;
 
 	//the connector reconfiguration manager
@@ -51,11 +55,24 @@ public class ConnectorHandler implements InvocationHandler, IConnectorManager {
 	//name of this connector, primarily for logging
 	private final String name;
 	
-	public ConnectorHandler(Object componentProxyInstance, IComponentProxy compProxyHandler, String name) {
-		componentProxy = componentProxyInstance;
+	//the invokers used to forward calls
+	private final MethodInvokerCache invokers;
+	
+	//the generated front end of the connector, null if the front end is a dynamic proxy
+	private volatile Object frontEnd;
+	
+	/**
+	 * creates a new connector
+	 * @param compProxyHandler the component proxy handler
+	 * @param name the name of the connector
+	 * @param invokers the invokers used to forward calls
+	 * @param blockingPercentile the percentile of the method latencies used to block calls during reconfiguration
+	 */
+	public ConnectorHandler(IComponentProxy compProxyHandler, String name, MethodInvokerTable invokers, double blockingPercentile) {
+		this.invokers = invokers.newCache();
 		this.name = name;
 		this.componentProxyHandler = compProxyHandler;
-		connectorReconfigurationManager = new ConnectorTimingBasedReconfigurationManager();
+		connectorReconfigurationManager = new ConnectorTimingBasedReconfigurationManager(blockingPercentile);
 		connectorReconfigurationManager.setComponentProxy(componentProxyHandler);
 	}
 	
@@ -65,29 +82,89 @@ public class ConnectorHandler implements InvocationHandler, IConnectorManager {
 	@Override
 	public Object invoke(Object proxy, Method m, Object[] arguments)
 			throws Throwable {
+		return forwardCall(m, arguments);
+	}
+	
+	@Override
+	public Object forwardCall(Method m, Object[] arguments) throws Throwable {
 		
+		//no reconfiguration in progress, register the call without locking
+		IComponentProxy proxyHandler = componentProxyHandler;
+		if (proxyHandler.enterCall()) {
+			long startTime = System.nanoTime();
+			int instance = proxyHandler.acquireInstance(m, arguments);
+			try {
+				//logger.debug(name+" invoking target component pojo");
+				return invokers.getInvoker(m).invoke(proxyHandler.getComponentPojo(instance), arguments);
+			} finally {
+				proxyHandler.releaseInstance(instance);
+				proxyHandler.exitCall();
+				connectorReconfigurationManager.finishCall(m, startTime);
+			}
+		}
+		
+		//reconfiguration in progress, the call is admitted under the lock of the component proxy
 		//logger.debug(name+" invoking connector reconf manager start method");
-		connectorReconfigurationManager.startCall(m, arguments);
-		//logger.debug(name+" invoking target component proxy");
-		Object ret; //the return
+		proxyHandler = connectorReconfigurationManager.startCall(m, arguments);
+		proxyHandler.enterLockedCall();
+		long startTime = System.nanoTime();
+		int instance = proxyHandler.acquireInstance(m, arguments);
 		try {
-			ret = m.invoke(componentProxy, arguments);
-		}catch (InvocationTargetException ex) {
-			if (ex.getCause() == null) {
-				throw (ex);
-			} else {
-				throw (ex.getCause()); //throw the actual exception of the target interface
-			}		}			
-		//logger.debug(name+" invoking connector reconf manager finish method");
-		connectorReconfigurationManager.finishCall(m, arguments);
-		return ret;
+			//logger.debug(name+" invoking target component pojo");
+			return invokers.getInvoker(m).invoke(proxyHandler.getComponentPojo(instance), arguments);
+		} finally {
+			proxyHandler.releaseInstance(instance);
+			proxyHandler.exitCall();
+			//logger.debug(name+" invoking connector reconf manager finish method");
+			connectorReconfigurationManager.finishCall(m, startTime);
+		}
+	}
+
+	/**
+	 * registers a call of the generated front end without locking.
+	 * The front end then calls the instance returned by acquireInstance of the component proxy handler,
+	 * with null arguments, and must call exitDirectCall when the call finishes.
+	 * @return the component proxy handler of the call. null if a reconfiguration is in progress or the instance 
+	 * of the call depends on its arguments, the front end then forwards the call with forwardCall.
+	 */
+	public IComponentProxy enterDirectCall() {
+		IComponentProxy proxyHandler = componentProxyHandler;
+		if (proxyHandler.isRoutedByArguments() || !proxyHandler.enterCall()) {
+			return null;
+		}
+		return proxyHandler;
+	}
+	
+	/**
+	 * called by the generated front end when a call registered with enterDirectCall finishes
+	 * @param proxyHandler the component proxy handler returned by enterDirectCall
+	 * @param instance the instance that served the call
+	 * @param m the method of the call
+	 * @param startTime the start time of the call, in nanoseconds
+	 */
+	public void exitDirectCall(IComponentProxy proxyHandler, int instance, Method m, long startTime) {
+		proxyHandler.releaseInstance(instance);
+		proxyHandler.exitCall();
+		connectorReconfigurationManager.finishCall(m, startTime);
+	}
+	
+	/**
+	 * sets the generated front end of the connector
+	 * @param frontEnd the front end, implementing the interface of the connector
+	 */
+	public void setFrontEnd(Object frontEnd) {
+		this.frontEnd = frontEnd;
+	}
+	
+	@Override
+	public Object getFrontEnd() {
+		return frontEnd;
 	}
 
 	@Override
 	//called by the framework at startup and after a reconfiguration to set the component proxy target.
-	public void setTarget(Object target, IComponentProxy componentProxyHandler) {
+	public void setTarget(IComponentProxy componentProxyHandler) {
 		//logger.debug(name+" setting target");
-		this.componentProxy = target;
 		this.componentProxyHandler = componentProxyHandler;
 		connectorReconfigurationManager.setComponentProxy(componentProxyHandler);
 	}
@@ -97,5 +174,10 @@ public class ConnectorHandler implements InvocationHandler, IConnectorManager {
 	public void setReconfiguring(boolean reconfiguring, long millis) {
 		connectorReconfigurationManager.setReconfiguring(reconfiguring, millis);
 	}
+	
+	@Override
+	public Map<Method, LatencyHistogram> getMethodLatencies() {
+		return connectorReconfigurationManager.getMethodLatencies();
+	}
 
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+import org.jlcf.core.invoke.IInvocationEngine;
+import org.jlcf.core.types.xml.Application;
+
+/**
+ * A pre-built application. 
+ * Implementations are generated at build time by the {@link org.jlcf.core.apt.JLCFApplicationProcessor}
+ * from an application description file and the annotations of the component classes.
+ * An assembly lets the container load an application without parsing the description file,
+ * without loading the application classes by name and without inspecting the component classes with reflection.
+ * The container still creates the interceptors reflectively and wires the components with dynamic proxies.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface IApplicationAssembly {
+
+	/**
+	 * returns the application description
+	 * @return the application description, as it would be read from the description file
+	 */
+	public Application getApplicationDescription();
+	
+	/**
+	 * returns the factory of a component implementation class
+	 * @param implementationClass the component implementation class
+	 * @return the factory, null if the class is not known to the assembly. The container then instantiates the component with reflection.
+	 */
+	public IComponentFactory getComponentFactory(String implementationClass);
+	
+	/**
+	 * returns a class of the application, an interface, component implementation or interceptor type of the description
+	 * @param className the binary name of the class
+	 * @return the class, null if the class is not known to the assembly. The container then loads the class by name.
+	 */
+	public Class<?> getApplicationClass(String className);
+	
+	/**
+	 * returns the invocation engine of the application
+	 * @return the invocation engine that the invocation handlers will use
+	 */
+	public IInvocationEngine getInvocationEngine();
+}
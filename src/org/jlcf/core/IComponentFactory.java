@@ -0,0 +1,44 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+import java.util.Map;
+
+/**
+ * Creates and initializes the instances of a component implementation class
+ * without reflection. Factories are provided by an {@link IApplicationAssembly}.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface IComponentFactory {
+
+	/**
+	 * creates a new instance of the component POJO
+	 * @param receptacles the receptacle proxies of the component, by receptacle name
+	 * @param properties the properties of the component, by property name
+	 * @param container the container, injected in arguments annotated with ContainerRef
+	 * @return the component POJO
+	 * @throws Exception in case the instance cannot be created
+	 */
+	public Object newInstance(Map<String, Object> receptacles, Map<String, String> properties, IJLCFContainer container) throws Exception;
+	
+	/**
+	 * calls the init method of the component POJO, if it declares one
+	 * @param pojo the component POJO
+	 */
+	public void callInitMethod(Object pojo);
+}
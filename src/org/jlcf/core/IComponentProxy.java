@@ -15,8 +15,11 @@
  */
 package org.jlcf.core;
 
+import java.lang.reflect.Method;
+
 import org.jlcf.core.dynrec.ComponentState;
 import org.jlcf.core.dynrec.IComponentStateReceiver;
+import org.jlcf.core.exception.ApplicationReconfigurationException;
 
 /**
  * This interface Implemented by dynamic proxies that are used for components (Component proxy handler)
@@ -57,9 +60,52 @@ public interface IComponentProxy {
 
 	/**
 	 * called by the framework when the component has reached a quiescent state
-	 * @return the internal state of the component
+	 * @param internalState the internal state of the replaced component
+	 * @throws ApplicationReconfigurationException in case the state does not fit the instances of the component
+	 */
+	public void setInternalState(Object internalState) throws ApplicationReconfigurationException ;
+	
+	/**
+	 * called by the framework when it wires a connection directly to the component
+	 * @return the component pojo, the first instance of a pooled component
+	 */
+	public Object getComponentPojo();
+	
+	/**
+	 * returns the number of instances of the component. A pooled component has several instances
+	 * that share the connectors and receptacles of the component and are reconfigured together.
+	 * @return the number of instances, 1 for a component that is not pooled
+	 */
+	public int getPoolSize();
+	
+	/**
+	 * called by connectors after a call is registered, in order to select the instance that serves it
+	 * according to the pool policy. The connector must call releaseInstance when the call finishes.
+	 * @param m the interface method of the call, its {@link org.jlcf.core.annotation.ShardKey} argument routes the calls to a sharded component
+	 * @param arguments the arguments of the call
+	 * @return the index of the instance, always 0 for a component that is not pooled
+	 */
+	public int acquireInstance(Method m, Object[] arguments);
+	
+	/**
+	 * returns true if the instance of a call depends on its arguments, as for a sharded component.
+	 * Otherwise acquireInstance may be called without the arguments of the call.
+	 * @return true if acquireInstance needs the arguments of the call
+	 */
+	public boolean isRoutedByArguments();
+	
+	/**
+	 * returns an instance of the component
+	 * @param instance the index of the instance
+	 * @return the component pojo
+	 */
+	public Object getComponentPojo(int instance);
+	
+	/**
+	 * called by connectors when a call served by an instance returned by acquireInstance finishes
+	 * @param instance the index of the instance
 	 */
-	public void setInternalState(Object internalState) ;
+	public void releaseInstance(int instance);
 	
 	/**
 	 * called by connectors in order to get the external state of the component
@@ -67,6 +113,32 @@ public interface IComponentProxy {
 	 */
 	public ComponentState getExternalState();
 	
+	/**
+	 * returns the number of calls currently served by the component
+	 * @return the number of pending calls
+	 */
+	public long getPendingCalls();
+	
+	/**
+	 * called by connectors in order to register a call without obtaining the lock.
+	 * This succeeds when no reconfiguration is in progress, the connector then calls the component pojo
+	 * directly and must call exitCall when the call finishes.
+	 * @return true if the call was registered, false if the call must obtain the lock and go through the component proxy
+	 */
+	public boolean enterCall();
+	
+	/**
+	 * called by connectors in order to register a call that was admitted while holding the lock.
+	 * The lock is released. The connector then calls the component pojo directly and must call exitCall 
+	 * when the call finishes.
+	 */
+	public void enterLockedCall();
+	
+	/**
+	 * called by connectors when a call registered with enterCall or enterLockedCall finishes
+	 */
+	public void exitCall();
+	
 	//obtain the lock, used for synchronization between the reconfiguration manager , connectors and the component proxy
 	public void lock();
 	
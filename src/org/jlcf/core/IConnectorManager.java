@@ -15,6 +15,11 @@
  */
 package org.jlcf.core;
 
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.jlcf.core.util.LatencyHistogram;
+
 /**
  * This interface is implemented by component connectors.
  * It provides the management interface of connectors that is used
@@ -27,12 +32,10 @@ public interface IConnectorManager {
 
 	/**
 	 * sets the target of the connector.
-	 * This is typically a component proxy that implements all the interfaces
-	 * of the component POJO.
-	 * @param target the component proxy implementing the target interface
+	 * The connector calls the component POJO through its component proxy handler.
 	 * @param componentProxyHandler the component proxy handler
 	 */
-	public void setTarget(Object target, IComponentProxy componentProxyHandler);
+	public void setTarget(IComponentProxy componentProxyHandler);
 
 	/**
 	 * method called by the framework during dynamic reconfiguration.
@@ -41,4 +44,28 @@ public interface IConnectorManager {
 	 * @param millis the time frame in milliseconds in which we want to achieve a quiescent state
 	 */
 	public void setReconfiguring(boolean reconfiguring, long millis);
+	
+	/**
+	 * returns the latencies of the calls that went through the connector
+	 * @return method -> latency histogram in nanoseconds
+	 */
+	public Map<Method, LatencyHistogram> getMethodLatencies();
+	
+	/**
+	 * forwards a call to the component, as a call through the connector proxy.
+	 * Used by receptacles that are wired directly to the connector.
+	 * @param m the method of the interface
+	 * @param arguments the arguments, null if the method has no arguments
+	 * @return the return of the method
+	 * @throws Throwable the exception of the component
+	 */
+	public Object forwardCall(Method m, Object[] arguments) throws Throwable;
+	
+	/**
+	 * returns the generated front end of the connector. The front end implements the interface of the connector
+	 * and calls the component pojo as a plain interface call, receptacles that are wired directly to the connector 
+	 * call it instead of forwardCall.
+	 * @return the front end, null if the front end of the connector is a dynamic proxy
+	 */
+	public Object getFrontEnd();
 }
@@ -34,4 +34,10 @@ public interface IContextManagerInterface {
 	 * @throws Exception in case the call cannot be forwarded and in case the target component throws an exception
 	 */
 	public Object serviceCall(Object[] args, CallContextInformation context) throws Throwable;
+	
+	/**
+	 * returns the interceptors of the interface, shared by all callers
+	 * @return a copy of the interceptor chain
+	 */
+	public Interceptor[] getInterceptors();
 }
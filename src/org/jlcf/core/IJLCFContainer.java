@@ -15,8 +15,13 @@
  */
 package org.jlcf.core;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+
 import org.jlcf.core.exception.ApplicationInstantiationException;
 import org.jlcf.core.exception.ComponentReferenceException;
+import org.jlcf.core.util.LatencyHistogram;
 import org.jlcf.core.util.Pair;
 
 /**
@@ -35,6 +40,14 @@ public interface IJLCFContainer {
 	 */
 	public void loadApplication(String applicationFile) throws ApplicationInstantiationException;
 	
+	/**
+	 * Creates a complete application from an application assembly generated at build time.
+	 * The application is the same as the one loaded from the description file the assembly was generated from.
+	 * @param assembly the generated application assembly
+	 * @throws ApplicationInstantiationException
+	 */
+	public void loadApplication(IApplicationAssembly assembly) throws ApplicationInstantiationException;
+	
 	/**
 	 * Returns the callback associated with this call. The caller should
 	 * use the same thread that initiated the call and not call this method
@@ -45,6 +58,46 @@ public interface IJLCFContainer {
 	 */
 	public <T> T getCallback() throws ComponentReferenceException;
 	
+	/**
+	 * Sets a deadline on the calls that the current thread makes to components. 
+	 * The deadline is carried by the call contexts: the calls that the called components make 
+	 * while they serve the call inherit it, and calls that reach a component after the deadline are 
+	 * dropped with a {@link org.jlcf.core.exception.CallTimeoutException}.
+	 * When it is called by a component while it serves a call, the deadline applies until that call returns.
+	 * 
+	 * @param millis the time budget from now in milliseconds, 0 to remove the deadline
+	 */
+	public void setCallDeadline(long millis);
+	
+	/**
+	 * Returns the time left until the deadline of the call that the current thread serves or makes.
+	 * Components can use it to skip work that the caller will not wait for. 
+	 * The caller should use the same thread that received the call.
+	 * 
+	 * @return the remaining time in milliseconds, negative if the deadline has passed, Long.MAX_VALUE if there is no deadline
+	 */
+	public long getRemainingMillis();
+	
+	/**
+	 * Enables the sampled tracing of the calls between components, or changes its rate, while the application runs.
+	 * One out of sampleRate calls starts a trace. The calls that the called components make while they serve 
+	 * a traced call, including callbacks, belong to the same trace. While tracing is enabled, receptacles that are 
+	 * wired directly to their target take the full call chain, so their calls are traced as well.
+	 * 
+	 * @param sampleRate one out of sampleRate calls is traced, 0 to disable tracing (default)
+	 */
+	public void setTraceSampling(int sampleRate);
+	
+	/**
+	 * Writes the recent traced calls to a file in the Chrome trace event JSON format (chrome://tracing).
+	 * Each thread keeps its last traced calls in a fixed size buffer.
+	 * 
+	 * @param fileName the file
+	 * @return the number of calls written
+	 * @throws IOException in case the file cannot be written
+	 */
+	public int dumpTraces(String fileName) throws IOException;
+	
 
 	/**
 	 * Generic method that returns a component interface to the requestor.
@@ -74,4 +127,104 @@ public interface IJLCFContainer {
 	 * @throws Exception in case: The new component does not implement the formal interfaces of the old component, in case the old component name cannot be found and in case the new component class cannot be found. 
 	 */
 	public Pair<Boolean, String> singleComponentReconfguration(String component, String replacement, long millis) throws Exception;	
+	
+	/**
+	 * Adds an interceptor at the end of the call chain of a receptacle, while the application runs.
+	 * Callers of the receptacle are not paused, calls that are in progress complete without the interceptor.
+	 * 
+	 * @param receptaclePath the receptacle path, for example componentA/receptacleA
+	 * @param interceptorClass the class of the interceptor, it must implement the receptacle interface
+	 * @return pair of boolean indicating if the interceptor was added and a String message
+	 * @throws Exception in case the interceptor cannot be instantiated
+	 */
+	public Pair<Boolean, String> insertInterceptor(String receptaclePath, String interceptorClass) throws Exception;
+	
+	/**
+	 * Adds an interceptor at the end of the call chain of a receptacle that intercepts only some methods, 
+	 * while the application runs. Calls of the other methods skip the interceptor.
+	 * 
+	 * @param receptaclePath the receptacle path, for example componentA/receptacleA
+	 * @param interceptorClass the class of the interceptor, it must implement the receptacle interface
+	 * @param methods the names or signatures (such as add(int,int)) of the intercepted methods separated by commas, null for all methods
+	 * @return pair of boolean indicating if the interceptor was added and a String message
+	 * @throws Exception in case the interceptor cannot be instantiated
+	 */
+	public Pair<Boolean, String> insertInterceptor(String receptaclePath, String interceptorClass, String methods) throws Exception;
+	
+	/**
+	 * Adds an interceptor at the end of the call chain of a receptacle, configured with properties, 
+	 * while the application runs. The properties are the ones of the interceptor description,
+	 * for example the timeoutMillis of a {@link org.jlcf.core.interceptors.TimeoutInterceptor}.
+	 * 
+	 * @param receptaclePath the receptacle path, for example componentA/receptacleA
+	 * @param interceptorClass the class of the interceptor, it must implement the receptacle interface
+	 * @param methods the names or signatures (such as add(int,int)) of the intercepted methods separated by commas, null for all methods
+	 * @param properties property name -> value, null for no properties
+	 * @return pair of boolean indicating if the interceptor was added and a String message
+	 * @throws Exception in case the interceptor cannot be instantiated or its properties are invalid
+	 */
+	public Pair<Boolean, String> insertInterceptor(String receptaclePath, String interceptorClass, String methods, Map<String, String> properties) throws Exception;
+	
+	/**
+	 * Removes an interceptor from the call chain of a receptacle, while the application runs.
+	 * If the receptacle has more than one interceptor of the class, the last one is removed. 
+	 * Calls that are in progress in the interceptor complete through it.
+	 * 
+	 * @param receptaclePath the receptacle path, for example componentA/receptacleA
+	 * @param interceptorClass the class of the interceptor
+	 * @return pair of boolean indicating if the interceptor was removed and a String message
+	 * @throws Exception in case of a processing error
+	 */
+	public Pair<Boolean, String> removeInterceptor(String receptaclePath, String interceptorClass) throws Exception;
+	
+	/**
+	 * Returns the interceptors of a receptacle, for example in order to read the statistics of built-in interceptors.
+	 * 
+	 * @param receptaclePath the receptacle path, for example componentA/receptacleA
+	 * @return the interceptors of the receptacle, in the order they are called
+	 * @throws ComponentReferenceException in case the receptacle cannot be found
+	 */
+	public Interceptor[] getReceptacleInterceptors(String receptaclePath) throws ComponentReferenceException;
+	
+	/**
+	 * Returns the interceptors declared on a component interface. There is one instance of each interceptor
+	 * for all callers of the interface, so its state is an aggregate view of the calls to the interface.
+	 * 
+	 * @param targetPath the interface path, for example componentA/interfaceA
+	 * @return the interceptors of the interface, in the order they are called
+	 * @throws ComponentReferenceException in case the interface cannot be found
+	 */
+	public Interceptor[] getInterfaceInterceptors(String targetPath) throws ComponentReferenceException;
+	
+	/**
+	 * Returns the number of calls that a component is currently serving.
+	 * This can be used as a live concurrency metric of the component.
+	 * 
+	 * @param component the component name
+	 * @return the number of pending calls
+	 * @throws ComponentReferenceException in case the component cannot be found
+	 */
+	public long getPendingCalls(String component) throws ComponentReferenceException;
+	
+	/**
+	 * Returns the latencies of the calls to a component interface, one histogram per method.
+	 * The histograms are live, they keep recording while the application runs, and cover the
+	 * calls of the last minute or two (see {@link LatencyHistogram}).
+	 * 
+	 * @param targetPath the interface path, for example componentA/interfaceA
+	 * @return method -> latency histogram in nanoseconds
+	 * @throws ComponentReferenceException in case the interface cannot be found
+	 */
+	public Map<Method, LatencyHistogram> getMethodLatencies(String targetPath) throws ComponentReferenceException;
+	
+	/**
+	 * Returns the state of the circuit breaker of a receptacle or of a component interface. 
+	 * The state changes and failure rates are available from the interceptor itself, see {@link #getReceptacleInterceptors(String)}
+	 * and {@link #getInterfaceInterceptors(String)}.
+	 * 
+	 * @param path the receptacle path, for example componentA/receptacleA, or the interface path, for example componentA/interfaceA
+	 * @return the state of the last circuit breaker interceptor of the receptacle, or of the interface if there is no such receptacle
+	 * @throws ComponentReferenceException in case the receptacle or interface cannot be found or has no circuit breaker
+	 */
+	public CircuitBreakerState getCircuitBreakerState(String path) throws ComponentReferenceException;
 }
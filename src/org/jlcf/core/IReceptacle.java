@@ -37,4 +37,26 @@ public interface IReceptacle {
 	 */
 	public void removeInterceptor(Interceptor interceptor);
 	
+	/**
+	 * Returns the interceptors of the call chain, in the order they are called.
+	 * @return a copy of the interceptor chain
+	 */
+	public Interceptor[] getInterceptors();
+	
+	/**
+	 * Wires the receptacle directly to the connector of the target interface.
+	 * Calls then skip the context managers and go to the connector, which registers them at the component 
+	 * and records their latency. Calls made by a thread that serves a call with a callback, deadline 
+	 * or trace, and calls made while tracing is enabled, take the full chain, so that the target sees 
+	 * the call context that the context managers would give it.
+	 * Used by the framework for connections without interceptors and callbacks.
+	 * @param target the connector of the target interface
+	 */
+	public void setDirectTarget(IConnectorManager target);
+	
+	/**
+	 * Restores the full call chain of a directly wired receptacle.
+	 */
+	public void expand();
+	
 }
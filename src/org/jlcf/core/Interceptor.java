@@ -15,10 +15,28 @@
  */
 package org.jlcf.core;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * This is the base class that all interceptors must extend.
  * The interceptor developer shall extend this object and call the getTarget
  * method in order to invoke the target method.
+ * Interceptors that do not depend on the interface of the receptacle extend {@link AroundInterceptor} instead.
+ * An interceptor may be restricted to some methods of the interface, calls of the other methods skip it.
+ * Interceptors may be configured with properties of the application description and are informed 
+ * when the component they intercept calls to is replaced at runtime.
+ * 
+ * The target of an interceptor that is part of a chain forwards each call to the next object of the chain 
+ * that the current call of the thread passes through, so a call completes on the chain it entered even if 
+ * interceptors are added or removed in the meantime. Calls made outside of a call of the chain, for example 
+ * by threads of the interceptor, use the newest chain of the interceptor.
  * 
  * @author Petros Pissias
  *
@@ -29,6 +47,18 @@ public abstract class Interceptor {
 	//accessed by other threads in the lifetime of the framework.
 	//interceptors can be added/removed bynamically.
 	private volatile Object target;
+	
+	//the link of the newest chain of this interceptor, null if it is not part of a chain
+	private volatile ChainLink newestLink;
+	
+	//the interfaces of the newest chain, the target implements them
+	private volatile Class<?>[] linkedInterfaces;
+	
+	//the link of the call that each thread is passing through this interceptor
+	private final ThreadLocal<ChainLink> currentLinks = new ThreadLocal<ChainLink>();
+	
+	//selectors of the intercepted methods (names or signatures without spaces), null for all methods
+	private volatile Set<String> methods;
 
 
 	/**
@@ -52,4 +82,153 @@ public abstract class Interceptor {
 	protected void setTarget(Object target) {
 		this.target = target;
 	}
+	
+	/**
+	 * Restricts the interceptor to the provided methods.
+	 * A method is selected by its name, which selects all its overloads, or by its name and 
+	 * parameter types, for example add(int,int) or put(java.lang.String,long[]). The types 
+	 * are given by their simple or full names.
+	 * It has to be called before the interceptor is added to a receptacle, as the call chain
+	 * of each method is computed when the receptacle is wired.
+	 * 
+	 * @param methodNames the names or signatures of the intercepted methods, none for all methods
+	 */
+	public void setMethods(String... methodNames) {
+		if (methodNames == null || methodNames.length == 0) {
+			methods = null;
+		} else {
+			Set<String> selectors = new HashSet<String>();
+			for (String methodName : methodNames) {
+				selectors.add(methodName.replaceAll("\\s", ""));
+			}
+			methods = Collections.unmodifiableSet(selectors);
+		}
+	}
+	
+	/**
+	 * Returns true if calls of a method pass through this interceptor.
+	 * Interceptors may override it in order to select methods by other criteria.
+	 * 
+	 * @param method the method of the receptacle interface
+	 * @return true if the method is intercepted
+	 */
+	public boolean intercepts(Method method) {
+		Set<String> selected = methods;
+		return selected == null || selected.contains(method.getName()) 
+				|| selected.contains(getSignature(method, false)) || selected.contains(getSignature(method, true));
+	}
+	
+	/**
+	 * returns the signature of a method in the form name(type,type)
+	 * @param method the method
+	 * @param fullNames true for the full names of the parameter types, false for their simple names
+	 * @return the signature
+	 */
+	private static String getSignature(Method method, boolean fullNames) {
+		StringBuilder signature = new StringBuilder(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i=0 ; i<parameterTypes.length ; i++) {
+			if (i > 0) {
+				signature.append(',');
+			}
+			signature.append(fullNames ? parameterTypes[i].getCanonicalName() : parameterTypes[i].getSimpleName());
+		}
+		return signature.append(')').toString();
+	}
+	
+	/**
+	 * Called by the framework after the interceptor is created, with the properties 
+	 * of its description. Interceptors with parameters override it.
+	 * 
+	 * @param properties property name -> value, empty if the interceptor has no properties
+	 * @throws Exception in case of invalid properties
+	 */
+	public void configure(Map<String, String> properties) throws Exception {
+	}
+	
+	/**
+	 * Called by the framework after the interceptor is configured, with the interface of the receptacle 
+	 * or component interface that the interceptor is inserted in. Interceptors whose properties depend 
+	 * on the interface override it.
+	 * 
+	 * @param interfaces the interfaces of the calls that the interceptor will receive
+	 * @throws Exception in case the configuration of the interceptor does not fit the interfaces
+	 */
+	public void checkInterfaces(Class<?>[] interfaces) throws Exception {
+	}
+	
+	/**
+	 * Called by the framework after the component that this interceptor forwards calls to 
+	 * has been replaced at runtime, while the calls to the component are still blocked.
+	 * Interceptors that keep state derived from the replaced component override it.
+	 */
+	public void targetReplaced() {
+	}
+	
+	/**
+	 * Called by the framework when the interceptor becomes part of a chain.
+	 * @param link the link of the interceptor in the chain
+	 * @param interfaces the interfaces of the chain
+	 */
+	void link(ChainLink link, Class<?>[] interfaces) {
+		//the target implements the interfaces of the chain, it is rebuilt when the interceptor is linked to another interface
+		if (!Arrays.equals(interfaces, linkedInterfaces)) {
+			target = Proxy.newProxyInstance(Interceptor.class.getClassLoader(), interfaces, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					ChainLink link = getCurrentLink();
+					return ChainLink.dispatch(link.getNext(method), method, args, link.getInvokers());
+				}
+			});
+			linkedInterfaces = interfaces;
+		}
+		newestLink = link;
+	}
+	
+	/**
+	 * @return the interfaces of the newest chain of the interceptor, null before it is part of a chain
+	 */
+	Class<?>[] getLinkedInterfaces() {
+		return linkedInterfaces;
+	}
+	
+	/**
+	 * @return the link of the call that the current thread is passing through this interceptor, 
+	 * or the link of the newest chain if the thread is not inside a call of the interceptor
+	 */
+	ChainLink getCurrentLink() {
+		ChainLink link = currentLinks.get();
+		return link == null ? newestLink : link;
+	}
+	
+	/**
+	 * Passes a call of a chain through this interceptor.
+	 * @param link the link of the interceptor in the chain of the call
+	 * @param m the called method
+	 * @param args the arguments of the call
+	 * @return the return of the call
+	 * @throws Throwable the exception of the call
+	 */
+	Object enter(ChainLink link, Method m, Object[] args) throws Throwable {
+		//the target of the interceptor follows the link of this call
+		ChainLink previous = currentLinks.get();
+		currentLinks.set(link);
+		try {
+			return pass(link, m, args);
+		} finally {
+			currentLinks.set(previous);
+		}
+	}
+	
+	/**
+	 * Calls the interceptor, which implements the interface of the chain.
+	 * @param link the link of the interceptor in the chain of the call
+	 * @param m the called method
+	 * @param args the arguments of the call
+	 * @return the return of the call
+	 * @throws Throwable the exception of the call
+	 */
+	Object pass(ChainLink link, Method m, Object[] args) throws Throwable {
+		return link.getInvokers().getInvoker(m).invoke(this, args);
+	}
 }
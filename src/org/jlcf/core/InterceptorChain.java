@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jlcf.core.invoke.MethodInvokerCache;
+import org.jlcf.core.invoke.MethodInvokerTable;
+
+/**
+ * A chain of interceptors in front of a target object.
+ * The chain of each method of the interface is computed when the chain is created: it contains
+ * only the interceptors that intercept the method, calls of methods that no interceptor intercepts 
+ * go directly to the target.
+ * 
+ * The chain does not link the interceptors to each other. Each interceptor has a {@link ChainLink} in the chain, 
+ * which holds the next object of every method, and a call passes from link to link. The links of a chain are 
+ * never modified. Adding or removing an interceptor creates a new chain with new links, the interceptors 
+ * themselves are shared between the old and the new chain. Calls that are in progress on the old chain, 
+ * including calls that are inside an interceptor when the chain is replaced, complete on the old chain.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class InterceptorChain {
+
+	//the interceptors, the first one is called first
+	private final Interceptor[] interceptors;
+	
+	//the target of the chain
+	private final Object target;
+	
+	//the invokers used to forward calls
+	private final MethodInvokerCache invokers;
+	
+	//method -> first link of the chain of the method. Methods that are not in the map are forwarded to the target.
+	private final Map<Method, ChainLink> heads;
+	
+	/**
+	 * creates a new chain
+	 * @param interceptors the interceptors, the first one is called first
+	 * @param target the target of the chain
+	 * @param interfaces the interfaces of the target that are called through the chain
+	 * @param invokers the invokers used to forward calls
+	 * @param container the framework container, holds the call context of the calls
+	 */
+	public InterceptorChain(Interceptor[] interceptors, Object target, Class<?>[] interfaces, MethodInvokerTable invokers, JLCFContainer container) {
+		this.interceptors = interceptors.clone();
+		this.target = target;
+		this.invokers = invokers.newCache();
+		
+		//compute the next interceptor of each method after each interceptor, from the end. 
+		//The next interceptor is stored as its index, the target as -1.
+		//An interceptor also has a next object for the methods it does not intercept, for the calls it makes itself.
+		int length = this.interceptors.length;
+		Map<Method, Integer> firstIndexes = new HashMap<Method, Integer>();
+		Map<Method, Integer>[] nextIndexes = newIndexMaps(length);
+		for (Class<?> intf : interfaces) {
+			for (Method m : intf.getMethods()) {
+				int next = -1;
+				for (int i=length-1 ; i>=0 ; i--) {
+					if (next >= 0) {
+						nextIndexes[i].put(m, next);
+					}
+					if (this.interceptors[i].intercepts(m)) {
+						next = i;
+					}
+				}
+				if (next >= 0) {
+					firstIndexes.put(m, next);
+				}
+			}
+		}
+		
+		//create the links, from the end so that the next links exist
+		ChainLink[] links = new ChainLink[length];
+		for (int i=length-1 ; i>=0 ; i--) {
+			Map<Method, Object> nextObjects = new HashMap<Method, Object>();
+			for (Map.Entry<Method, Integer> next : nextIndexes[i].entrySet()) {
+				nextObjects.put(next.getKey(), links[next.getValue()]);
+			}
+			links[i] = new ChainLink(this.interceptors[i], nextObjects, target, this.invokers, container);
+		}
+		Map<Method, ChainLink> methodHeads = new HashMap<Method, ChainLink>();
+		for (Map.Entry<Method, Integer> first : firstIndexes.entrySet()) {
+			methodHeads.put(first.getKey(), links[first.getValue()]);
+		}
+		heads = methodHeads;
+		
+		//the calls that the interceptors make outside of a call of the chain use the newest chain
+		for (int i=0 ; i<length ; i++) {
+			this.interceptors[i].link(links[i], interfaces);
+		}
+	}
+	
+	//generic arrays cannot be created directly
+	@SuppressWarnings("unchecked")
+	private static Map<Method, Integer>[] newIndexMaps(int length) {
+		Map<Method, Integer>[] maps = (Map<Method, Integer>[])new Map<?, ?>[length];
+		for (int i=0 ; i<length ; i++) {
+			maps[i] = new HashMap<Method, Integer>();
+		}
+		return maps;
+	}
+	
+	/**
+	 * forwards a call to the chain of the method
+	 * @param m the method
+	 * @param args the arguments
+	 * @return the return of the call
+	 * @throws Throwable the exception of the call
+	 */
+	public Object invoke(Method m, Object[] args) throws Throwable {
+		ChainLink head = heads.get(m);
+		if (head == null) {
+			return invokers.getInvoker(m).invoke(target, args);
+		}
+		return head.call(m, args);
+	}
+	
+	/**
+	 * @return a copy of the interceptors of the chain
+	 */
+	public Interceptor[] getInterceptors() {
+		return interceptors.clone();
+	}
+}
@@ -15,9 +15,9 @@
  */
 package org.jlcf.core;
 
-import java.lang.reflect.InvocationTargetException;
-
 import org.apache.log4j.Logger;
+import org.jlcf.core.exception.CallTimeoutException;
+import org.jlcf.core.invoke.MethodInvokerTable;
 
 /**
  * This class receives potentially "context-aware"
@@ -25,10 +25,14 @@ import org.apache.log4j.Logger;
  * to the connector of the component, stripping out the context
  * information.
  * 
- * The context information may contain a callback, in which case it is added
- * in ThreadLocal data in order to be used by the target component POJO if needed.
+ * The context information may contain a callback, a deadline or a trace id, in which case it is added
+ * in ThreadLocal data for the duration of the call in order to be used by the target component POJO 
+ * if needed, and to pass the deadline and trace to the calls that the component makes. 
+ * Calls whose deadline has passed are dropped before they reach the component.
  * 
  * This class is the first receiver of a call to a component interface.
+ * Interceptors declared on the interface run here, once for all callers of the interface, 
+ * before the call reaches the connector.
  * 
  * @author Petros Pissias
  *
@@ -43,13 +47,24 @@ public class InterfaceContextManager implements IContextManagerInterface {
 	//the framework container
 	private final JLCFContainer container;
 	
+	//the invokers used to forward calls
+	private final MethodInvokerTable invokers;
+	
+	//the interceptors of the interface, in front of the connector
+	private final InterceptorChain interceptors;
+	
 	/**
 	 * constructor. 
 	 * @param target The connector implementing the target interface
+	 * @param interceptors the interceptors of the interface
+	 * @param targetInterface the interface
+	 * @param container the framework container
 	 */
-	public InterfaceContextManager(Object target, JLCFContainer container) {
+	public InterfaceContextManager(Object target, Interceptor[] interceptors, Class<?> targetInterface, JLCFContainer container) {
 		this.targetConnector = target;
 		this.container = container;
+		this.invokers = container.getMethodInvokers();
+		this.interceptors = new InterceptorChain(interceptors, target, new Class<?>[]{targetInterface}, invokers, container);
 	}
 
 	@Override
@@ -57,25 +72,33 @@ public class InterfaceContextManager implements IContextManagerInterface {
 		
 		//logger.debug("received call for method:"+context.getMethod().getName()+" callback:"+context.getCallbackAddress());
 		
-		if (context.getCallbackAddress() != null) {
-			//handle callback information
-			//logger.debug("found callback information '"+context.getCallbackAddress()+"' adding to threadlocal data");
-			container.setCallContext(context);
+		if (context.hasDeadline() && context.getRemainingNanos() <= 0) {
+			//the caller will not use the result, do not spend work on it
+			throw new CallTimeoutException("deadline of call to "+context.getMethod().getName()+" has passed");
+		}
+		
+		boolean hasContext = context.getCallbackAddress() != null || context.hasDeadline() || context.getTraceId() != 0;
+		CallContextInformation previous = container.getCallContext();
+		if (previous == null && !hasContext) {
+			//forward the call to the interceptors of the method, or to the target connector.	
+			return interceptors.invoke(context.getMethod(), args);
 		}
 		
-		//forward the call to the target connector.	
-		Object ret;
+		//handle callback, deadline and trace information
+		//logger.debug("found callback information '"+context.getCallbackAddress()+"' adding to threadlocal data");
+		//the context of the call that this thread is serving (if any) is restored when this call returns
+		container.setCallContext(hasContext ? context : null);
 		try {
-			ret = context.getMethod().invoke(targetConnector, args);
-			return ret;
-		}catch (InvocationTargetException ex) {
-			if (ex.getCause() == null) {
-				throw (ex);
-			} else {
-				throw (ex.getCause()); //throw the actual exception of the target interface
-			}
+			return interceptors.invoke(context.getMethod(), args);
+		} finally {
+			container.setCallContext(previous);
 		}
 
 	}
 	
+	@Override
+	public Interceptor[] getInterceptors() {
+		return interceptors.getInterceptors();
+	}
+	
 }
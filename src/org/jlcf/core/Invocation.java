@@ -0,0 +1,153 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+import java.lang.reflect.Method;
+
+import org.jlcf.core.invoke.MethodInvokerCache;
+
+/**
+ * A call that passes through an {@link AroundInterceptor}.
+ * It gives access to the called method and its arguments and forwards the call to the rest of the chain.
+ * 
+ * Invocation objects are reused by the calls of a thread, an interceptor shall not keep a 
+ * reference to the invocation after its around method returns. Interceptors that forward the call
+ * from another thread use a {@link #detach() detached} copy.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public final class Invocation {
+
+	//empty arguments of methods without parameters
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	
+	//the called method
+	private Method method;
+	
+	//the arguments of the call
+	private Object[] arguments;
+	
+	//the next object of the chain, a link of the chain or the target of the chain
+	private Object next;
+	
+	//the invokers used to forward the call
+	private MethodInvokerCache invokers;
+	
+	//the framework container, holds the call context of the thread
+	private JLCFContainer container;
+	
+	//a detached invocation carries the call context of the caller to the thread that proceeds it
+	private boolean detached;
+	private CallContextInformation context;
+	
+	//flag that indicates that the invocation is used by a call
+	private boolean active;
+	
+	/**
+	 * creates a new (inactive) invocation
+	 */
+	Invocation() {
+		active = false;
+	}
+	
+	/**
+	 * prepares the invocation for a call
+	 * @param method the called method
+	 * @param arguments the arguments, null if the method has no arguments
+	 * @param next the next object of the chain
+	 * @param invokers the invokers used to forward the call
+	 * @param container the framework container
+	 */
+	void start(Method method, Object[] arguments, Object next, MethodInvokerCache invokers, JLCFContainer container) {
+		this.method = method;
+		this.arguments = arguments == null ? NO_ARGUMENTS : arguments;
+		this.next = next;
+		this.invokers = invokers;
+		this.container = container;
+		this.active = true;
+	}
+	
+	/**
+	 * releases the invocation after the call
+	 */
+	void end() {
+		method = null;
+		arguments = null;
+		next = null;
+		container = null;
+		active = false;
+	}
+	
+	/**
+	 * @return true if the invocation is used by a call
+	 */
+	boolean isActive() {
+		return active;
+	}
+	
+	/**
+	 * Returns the called method. The method object identifies the method, it is the same for all calls.
+	 * @return the called method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+	
+	/**
+	 * Returns the arguments of the call. The interceptor may replace arguments in the array 
+	 * before it calls proceed.
+	 * @return the arguments, an empty array if the method has no arguments
+	 */
+	public Object[] getArguments() {
+		return arguments;
+	}
+	
+	/**
+	 * Returns the call context of the call: the callback, deadline and trace that the caller passes to the target.
+	 * @return the call context, null if the call has none
+	 */
+	public CallContextInformation getCallContext() {
+		return detached ? context : container.getCallContext();
+	}
+	
+	/**
+	 * Returns a copy of this invocation that remains valid after the around method returns. 
+	 * It can be proceeded by another thread, for example in order to run the call with a timeout, 
+	 * and it forwards the call to the chain that the original call entered. The copy keeps the 
+	 * call context of the caller, the thread that proceeds it serves the call with that context.
+	 * @return the copy
+	 */
+	public Invocation detach() {
+		Invocation copy = new Invocation();
+		copy.start(method, arguments.clone(), next, invokers, container);
+		copy.context = getCallContext();
+		copy.detached = true;
+		return copy;
+	}
+	
+	/**
+	 * Forwards the call to the rest of the chain. It may be called more than once, for example in order to retry the call.
+	 * @return the return of the method, null for void methods
+	 * @throws Throwable the exception thrown by the rest of the chain
+	 */
+	public Object proceed() throws Throwable {
+		if (detached) {
+			return ChainLink.dispatch(container, context, next, method, arguments, invokers);
+		}
+		return ChainLink.dispatch(next, method, arguments, invokers);
+	}
+}
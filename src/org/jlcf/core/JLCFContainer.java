@@ -15,13 +15,28 @@
  */
 package org.jlcf.core;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.jlcf.core.exception.ApplicationInstantiationException;
 import org.jlcf.core.exception.ComponentReferenceException;
+import org.jlcf.core.interceptors.CircuitBreakerInterceptor;
+import org.jlcf.core.invoke.MethodInvokerTable;
+import org.jlcf.core.invoke.ReflectionInvocationEngine;
+import org.jlcf.core.trace.CallTracer;
 import org.jlcf.core.types.request.ComponentReplacementRequest;
 import org.jlcf.core.types.request.ComponentTargetRequest;
+import org.jlcf.core.types.request.InsertInterceptorRequest;
 import org.jlcf.core.types.request.LoadApplicationRequest;
+import org.jlcf.core.types.request.MethodLatenciesRequest;
+import org.jlcf.core.types.request.PendingCallsRequest;
+import org.jlcf.core.types.request.ReceptacleInterceptorsRequest;
+import org.jlcf.core.types.request.RemoveInterceptorRequest;
+import org.jlcf.core.util.LatencyHistogram;
 import org.jlcf.core.util.Pair;
 
 
@@ -53,6 +68,21 @@ public class JLCFContainer implements IJLCFContainer {
 	
 	//the container processor. derived from the abstract queue processor
 	private final JLCFContainerProcessor processor;
+	
+	//the invokers used by all invocation handlers. set by the processor when an application is loaded
+	private volatile MethodInvokerTable methodInvokers;
+	
+	//the assembly of the loaded application, null if the application was loaded from a description file
+	private volatile IApplicationAssembly applicationAssembly;
+	
+	//the source of the traced calls made through component references
+	private static final String REFERENCE_SOURCE = "reference";
+	
+	//traces the calls between components
+	private final CallTracer tracer;
+	
+	//cache of the component references that were returned to users and components, target path -> reference
+	private final ConcurrentHashMap<String, Object> componentReferences;
 
 	/**
 	 * Returns an instance of the framework
@@ -76,6 +106,12 @@ public class JLCFContainer implements IJLCFContainer {
             }
 		};
 		
+		//default invocation engine until an application selects otherwise
+		methodInvokers = new MethodInvokerTable(new ReflectionInvocationEngine());
+		
+		componentReferences = new ConcurrentHashMap<String, Object>();
+		tracer = new CallTracer();
+		
 		//create a new processror
 		processor = new JLCFContainerProcessor(this);
 		//logger.debug("JLCF container instance created");
@@ -88,7 +124,26 @@ public class JLCFContainer implements IJLCFContainer {
 	@Override 
 	public void loadApplication(String applicationFile) throws ApplicationInstantiationException{
 		//make a request to the processor
-		LoadApplicationRequest req = new LoadApplicationRequest(applicationFile);
+		loadApplication(new LoadApplicationRequest(applicationFile));
+	}
+
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override 
+	public void loadApplication(IApplicationAssembly assembly) throws ApplicationInstantiationException{
+		//make a request to the processor
+		loadApplication(new LoadApplicationRequest(assembly));
+	}
+	
+	/**
+	 * sends a load application request to the processor and waits for the reply
+	 * @param req the request
+	 * @throws ApplicationInstantiationException in case the application cannot be loaded
+	 */
+	private void loadApplication(LoadApplicationRequest req) throws ApplicationInstantiationException{
+		//references of a previous application are not valid anymore
+		componentReferences.clear();
 		processor.addRequest(req);
 		try {
 			//get the reply form the processor
@@ -134,23 +189,148 @@ public class JLCFContainer implements IJLCFContainer {
 		contextInformation.set(callContext);
 	}
 	
+	/**
+	 * @return the context of the call that the current thread is serving, null if none
+	 */
+	protected CallContextInformation getCallContext() {
+		return contextInformation.get();
+	}
+	
 	/**
 	 * {@link IJLCFContainer}
 	 */
 	@Override
+	public void setCallDeadline(long millis) {
+		CallContextInformation current = contextInformation.get();
+		long deadline = 0;
+		if (millis > 0) {
+			deadline = System.nanoTime() + millis * 1000000L;
+			if (deadline == 0) {
+				//0 means no deadline
+				deadline = 1;
+			}
+		}
+		if (current == null) {
+			contextInformation.set(deadline == 0 ? null : new CallContextInformation(null, null, deadline, 0));
+		} else if (deadline == 0 && current.getCallbackAddress() == null && current.getTraceId() == 0) {
+			contextInformation.set(null);
+		} else {
+			contextInformation.set(current.withDeadline(deadline));
+		}
+	}
+	
+	/**
+	 * @return the tracer of the calls between components
+	 */
+	protected CallTracer getTracer() {
+		return tracer;
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public void setTraceSampling(int sampleRate) {
+		tracer.setSampleRate(sampleRate);
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public int dumpTraces(String fileName) throws IOException {
+		return tracer.dump(fileName);
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public long getRemainingMillis() {
+		CallContextInformation current = contextInformation.get();
+		if (current == null || !current.hasDeadline()) {
+			return Long.MAX_VALUE;
+		}
+		return current.getRemainingNanos() / 1000000L;
+	}
+	
+	/**
+	 * returns the method invokers used by the invocation handlers of the framework
+	 * @return the method invokers
+	 */
+	protected MethodInvokerTable getMethodInvokers() {
+		return methodInvokers;
+	}
+	
+	/**
+	 * called by the processor when an application is loaded, in order to set the invocation mode of the application
+	 * @param methodInvokers the method invokers
+	 */
+	protected void setMethodInvokers(MethodInvokerTable methodInvokers) {
+		this.methodInvokers = methodInvokers;
+	}
+	
+	/**
+	 * called by the processor when an application is loaded, in order to set the assembly that provides the application classes
+	 * @param applicationAssembly the assembly of the application, null for applications loaded from a description file
+	 */
+	protected void setApplicationAssembly(IApplicationAssembly applicationAssembly) {
+		this.applicationAssembly = applicationAssembly;
+	}
+	
+	/**
+	 * returns a class of the application (interface, implementation or interceptor type).
+	 * The class is taken from the application assembly if it knows it, otherwise it is loaded by name.
+	 * @param className the binary name of the class
+	 * @return the class
+	 * @throws ClassNotFoundException in case the class cannot be found
+	 */
+	protected Class<?> loadApplicationClass(String className) throws ClassNotFoundException {
+		IApplicationAssembly assembly = applicationAssembly;
+		if (assembly != null) {
+			Class<?> applicationClass = assembly.getApplicationClass(className);
+			if (applicationClass != null) {
+				return applicationClass;
+			}
+		}
+		return Class.forName(className);
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	//the reference type is chosen by the caller, the proxy implements the interface type of the description
+	@SuppressWarnings("unchecked")
+	@Override
 	public <T> T getComponentReference(String targetPath) throws ComponentReferenceException{
 		//this request should not be serviced by the processor because of concurrency issues.
 		//When a component calls another component providing a callback then this causes a deadlock.
 		//it is served directly here.
+		
+		//the references are context-aware proxies that resolve their target on the first call, they can be shared
+		Object reference = componentReferences.get(targetPath);
+		if (reference != null) {
+			return (T)reference;
+		}
 		try {
 			//get the callback type form the application descrpition
 			String targetType = JLCFFrameworkUtilities.getReceptacleType(targetPath, 
 								processor.getComponentApplication());
 			
 			Pair<Object, IContextManagerReceptacle> compRef = 
-					JLCFFrameworkUtilities.getReceptacleContextInterceptor(targetPath, null, targetType, this);
+					JLCFFrameworkUtilities.getReceptacleContextInterceptor(REFERENCE_SOURCE, targetPath, null, targetType, this);
+			
+			//resolve the target now, so that the first calls do not have to
+			IContextManagerInterface targetInterface = processor.getInterfaceTarget(targetPath);
+			if (targetInterface != null) {
+				compRef.getRight().setTarget(targetInterface, targetPath);
+			}
 			
-			return (T)compRef.getLeft();
+			reference = componentReferences.putIfAbsent(targetPath, compRef.getLeft());
+			if (reference == null) {
+				reference = compRef.getLeft();
+			}
+			return (T)reference;
 		}catch (Exception e ) {
 			//logger.log(Level.ERROR, "Exception while trying to get ReceptacleContextInterceptor", e);
 			throw new ComponentReferenceException("cannot find interface on path "+targetPath+" or processing error. Exception:"+e.getMessage());
@@ -173,6 +353,13 @@ public class JLCFContainer implements IJLCFContainer {
 	 */
 	protected IContextManagerInterface getTargetReference(String path) throws ComponentReferenceException {
 		//logger.debug("getting target reference for path:"+path);
+		//resolve it from the registry of the processor, without a round trip through its queue
+		IContextManagerInterface targetInterface = processor.getInterfaceTarget(path);
+		if (targetInterface != null) {
+			return targetInterface;
+		}
+		
+		//not in the registry (not loaded yet, or an invalid path), let the processor resolve it
 		//create and send request to the processor
 		ComponentTargetRequest req = new ComponentTargetRequest(path);
 		processor.addRequest(req);
@@ -209,7 +396,162 @@ public class JLCFContainer implements IJLCFContainer {
 			//logger.log(Level.ERROR, e.getMessage(), e);
 			throw new Exception("error while processing request. Interrupted.:"+e.getMessage());
 		}
+		if (reply.getLeft()) {
+			//the component was rewired, new references will resolve the new target
+			invalidateComponentReferences(component);
+		}
 		return reply;
 	}
 	
+	/**
+	 * removes the cached references to the interfaces of a component
+	 * @param component the component name
+	 */
+	private void invalidateComponentReferences(String component) {
+		for (String targetPath : componentReferences.keySet()) {
+			if (targetPath.startsWith(component+"/")) {
+				componentReferences.remove(targetPath);
+			}
+		}
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public Pair<Boolean, String> insertInterceptor(String receptaclePath, String interceptorClass) throws Exception {
+		return insertInterceptor(receptaclePath, interceptorClass, null);
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public Pair<Boolean, String> insertInterceptor(String receptaclePath, String interceptorClass, String methods) throws Exception {
+		return insertInterceptor(receptaclePath, interceptorClass, methods, null);
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public Pair<Boolean, String> insertInterceptor(String receptaclePath, String interceptorClass, String methods, Map<String, String> properties) throws Exception {
+		InsertInterceptorRequest req = new InsertInterceptorRequest(receptaclePath, interceptorClass, methods, properties);
+		processor.addRequest(req);
+		try {
+			return req.getResponse();
+		} catch (InterruptedException e) {
+			//logger.log(Level.ERROR, e.getMessage(), e);
+			throw new Exception("error while processing request. Interrupted.:"+e.getMessage());
+		}
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public Pair<Boolean, String> removeInterceptor(String receptaclePath, String interceptorClass) throws Exception {
+		RemoveInterceptorRequest req = new RemoveInterceptorRequest(receptaclePath, interceptorClass);
+		processor.addRequest(req);
+		try {
+			return req.getResponse();
+		} catch (InterruptedException e) {
+			//logger.log(Level.ERROR, e.getMessage(), e);
+			throw new Exception("error while processing request. Interrupted.:"+e.getMessage());
+		}
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public Interceptor[] getReceptacleInterceptors(String receptaclePath) throws ComponentReferenceException {
+		ReceptacleInterceptorsRequest req = new ReceptacleInterceptorsRequest(receptaclePath);
+		processor.addRequest(req);
+		Pair<Boolean, Interceptor[]> reply = null;
+		try {
+			reply = req.getResponse();
+		} catch (InterruptedException e) {
+			//logger.log(Level.ERROR, e.getMessage(), e);
+			throw new ComponentReferenceException("error while processing request. Interrupted.:"+e.getMessage());
+		}
+		if (reply.getLeft() == false) {
+			throw new ComponentReferenceException("cannot find receptacle "+receptaclePath);
+		}
+		return reply.getRight();
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public Interceptor[] getInterfaceInterceptors(String targetPath) throws ComponentReferenceException {
+		//the interface context managers are resolved from the registry, directly or through the processor
+		IContextManagerInterface targetInterface = getTargetReference(targetPath);
+		if (targetInterface == null) {
+			throw new ComponentReferenceException("cannot find interface on path "+targetPath);
+		}
+		return targetInterface.getInterceptors();
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public long getPendingCalls(String component) throws ComponentReferenceException {
+		PendingCallsRequest req = new PendingCallsRequest(component);
+		processor.addRequest(req);
+		Pair<Boolean, Long> reply = null;
+		try {
+			reply = req.getResponse();
+		} catch (InterruptedException e) {
+			//logger.log(Level.ERROR, e.getMessage(), e);
+			throw new ComponentReferenceException("error while processing request. Interrupted.:"+e.getMessage());
+		}
+		if (reply.getLeft() == false) {
+			throw new ComponentReferenceException("cannot find component "+component);
+		}
+		return reply.getRight();
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public Map<Method, LatencyHistogram> getMethodLatencies(String targetPath) throws ComponentReferenceException {
+		MethodLatenciesRequest req = new MethodLatenciesRequest(targetPath);
+		processor.addRequest(req);
+		Pair<Boolean, Map<Method, LatencyHistogram>> reply = null;
+		try {
+			reply = req.getResponse();
+		} catch (InterruptedException e) {
+			//logger.log(Level.ERROR, e.getMessage(), e);
+			throw new ComponentReferenceException("error while processing request. Interrupted.:"+e.getMessage());
+		}
+		if (reply.getLeft() == false) {
+			throw new ComponentReferenceException("cannot find interface on path "+targetPath);
+		}
+		return reply.getRight();
+	}
+	
+	/**
+	 * {@link IJLCFContainer}
+	 */
+	@Override
+	public CircuitBreakerState getCircuitBreakerState(String path) throws ComponentReferenceException {
+		Interceptor[] interceptors;
+		try {
+			interceptors = getReceptacleInterceptors(path);
+		} catch (ComponentReferenceException e) {
+			//not a receptacle, the path may be a component interface
+			interceptors = getInterfaceInterceptors(path);
+		}
+		for (int i=interceptors.length-1 ; i>=0 ; i--) {
+			if (interceptors[i] instanceof CircuitBreakerInterceptor) {
+				return ((CircuitBreakerInterceptor)interceptors[i]).getState();
+			}
+		}
+		throw new ComponentReferenceException("no circuit breaker on "+path);
+	}
+	
 }
@@ -16,7 +16,9 @@
 package org.jlcf.core;
 
 import java.io.FileReader;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,13 +33,21 @@ import org.apache.log4j.Logger;
 import org.jlcf.core.dynrec.SingleComponentReconfigurationManager;
 import org.jlcf.core.exception.ApplicationInstantiationException;
 import org.jlcf.core.exception.ApplicationReconfigurationException;
+import org.jlcf.core.invoke.MethodInvokerTable;
 import org.jlcf.core.types.request.ComponentReplacementRequest;
 import org.jlcf.core.types.request.ComponentTargetRequest;
 import org.jlcf.core.types.request.ContainerProcessorRequestType;
+import org.jlcf.core.types.request.InsertInterceptorRequest;
 import org.jlcf.core.types.request.LoadApplicationRequest;
+import org.jlcf.core.types.request.MethodLatenciesRequest;
+import org.jlcf.core.types.request.PendingCallsRequest;
+import org.jlcf.core.types.request.ReceptacleInterceptorsRequest;
+import org.jlcf.core.types.request.RemoveInterceptorRequest;
 import org.jlcf.core.types.xml.Application;
+import org.jlcf.core.types.xml.Property;
 import org.jlcf.core.util.AbstractQueueProcessor;
 import org.jlcf.core.util.GenericProcessorRequest;
+import org.jlcf.core.util.LatencyHistogram;
 import org.jlcf.core.util.Pair;
 
 /**
@@ -61,11 +71,21 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 	//the framework container
 	private final JLCFContainer container;
 	
+	//the pre-built application, null if the application was loaded from a description file
+	private IApplicationAssembly assembly;
+	
+	//interface path (component/interface) -> context-aware interface of the target.
+	//immutable, it is replaced when an application is loaded. The interface context managers survive 
+	//component replacements so it can be read by any thread without going through the processor queue.
+	private volatile Map<String, IContextManagerInterface> interfaceTargets;
+	
 	public JLCFContainerProcessor(JLCFContainer container) {
 		super("JLCFContainerProcessor");
 		
 		//initialize the components map
 		components = new HashMap<String, JLCFComponent>();
+		
+		interfaceTargets = Collections.emptyMap();
 	
 		//set the framework container
 		this.container = container;
@@ -80,7 +100,11 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 			//request to load an application based on a description file
 			LoadApplicationRequest req = (LoadApplicationRequest)event;
 			try {
-				handleLoadAppRequest(req.getApplicationDescription());
+				if (req.getAssembly() != null) {
+					handleLoadAppRequest(req.getAssembly());
+				} else {
+					handleLoadAppRequest(req.getApplicationDescription());
+				}
 				req.insertResponse(new Pair<Boolean, String>(true,""));
 			}catch (Exception e) {
 				req.insertResponse(new Pair<Boolean, String>(false,e.getMessage()));
@@ -116,6 +140,67 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 			}			
 			break;
 		}
+		case GET_PENDING_CALLS : {
+			//request by the user to get the number of calls currently served by a component
+			PendingCallsRequest req = (PendingCallsRequest) event;
+			JLCFComponent component = components.get(req.getComponent());
+			if (component == null) {
+				req.insertResponse(new Pair<Boolean, Long>(false, Long.valueOf(0)));
+			} else {
+				req.insertResponse(new Pair<Boolean, Long>(true, component.getComponentProxy().getPendingCalls()));
+			}
+			break;
+		}
+		case GET_METHOD_LATENCIES : {
+			//request by the user to get the method latencies of a component interface
+			MethodLatenciesRequest req = (MethodLatenciesRequest) event;
+			String[] path = req.getPath().split("/");
+			JLCFComponent component = path.length == 2 ? components.get(path[0]) : null;
+			Pair<IConnectorManager, IContextManagerInterface> connector = component == null ? null : component.getConnectors().get(path[1]);
+			if (connector == null) {
+				req.insertResponse(new Pair<Boolean, Map<Method, LatencyHistogram>>(false, null));
+			} else {
+				req.insertResponse(new Pair<Boolean, Map<Method, LatencyHistogram>>(true, connector.getLeft().getMethodLatencies()));
+			}
+			break;
+		}
+		case GET_RECEPTACLE_INTERCEPTORS : {
+			//request by the user to get the interceptors of a receptacle
+			ReceptacleInterceptorsRequest req = (ReceptacleInterceptorsRequest) event;
+			String[] path = req.getReceptaclePath().split("/");
+			JLCFComponent component = path.length == 2 ? components.get(path[0]) : null;
+			Pair<IReceptacle, IContextManagerReceptacle> recData = component == null ? null : component.getReceptacles().get(path[1]);
+			if (recData == null) {
+				req.insertResponse(new Pair<Boolean, Interceptor[]>(false, null));
+			} else {
+				req.insertResponse(new Pair<Boolean, Interceptor[]>(true, recData.getLeft().getInterceptors()));
+			}
+			break;
+		}
+		case INSERT_INTERCEPTOR : {
+			//request by the user to add an interceptor to a receptacle at runtime
+			InsertInterceptorRequest req = (InsertInterceptorRequest) event;
+			try {
+				Pair<Boolean, String> reply = handleInsertInterceptorRequest(req.getReceptaclePath(), req.getInterceptorClass(), req.getMethods(), req.getProperties());
+				req.insertResponse(reply);
+			} catch (Exception e) {
+				req.insertResponse(new Pair<Boolean, String>(false, "proessing error"+e.getMessage()));
+				throw (e);
+			}
+			break;
+		}
+		case REMOVE_INTERCEPTOR : {
+			//request by the user to remove an interceptor from a receptacle at runtime
+			RemoveInterceptorRequest req = (RemoveInterceptorRequest) event;
+			try {
+				Pair<Boolean, String> reply = handleRemoveInterceptorRequest(req.getReceptaclePath(), req.getInterceptorClass());
+				req.insertResponse(reply);
+			} catch (Exception e) {
+				req.insertResponse(new Pair<Boolean, String>(false, "proessing error"+e.getMessage()));
+				throw (e);
+			}
+			break;
+		}
 		default : {
 			//logger.info("ignoring request:"+event.getRequestType());
 		}
@@ -150,6 +235,9 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 		}
 		//logger.debug("obtained proxy and connectors rfor component:"+targetComponent);
 
+		//connections that are wired directly to the component use the connectors from now on
+		expandDirectConnections(targetComponent);
+		
 		//create the reconfiguration manager for this reconfiguration
 		BlockingQueue<Pair<Boolean, String>> reconfResponseQueue = new LinkedBlockingQueue<Pair<Boolean, String>>();
 		SingleComponentReconfigurationManager reconfManager 
@@ -172,7 +260,20 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 			//components.remove(targetComponent);
 
 			//replace the component --> this replaces the component with the new POJO and instantiates the new component
-			replaceComponent(targetComponent, newImplementation, internalState);
+			try {
+				replaceComponent(targetComponent, newImplementation, internalState);
+			} catch (ApplicationReconfigurationException e) {
+				if (component.getComponentProxy() != compProxy) {
+					throw e;
+				}
+				//the new component was rejected before it replaced the old one, which proceeds
+				response = new Pair<Boolean, String>(false, e.getMessage());
+			}
+		}
+		
+		if (response.getLeft()) {
+			//inform the interceptors in front of the component, before the blocked calls are released
+			notifyTargetReplaced(targetComponent);
 			
 			//inform connectors
 			for (IConnectorManager connector: connectorList) {
@@ -181,7 +282,7 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 				connector.setReconfiguring(false,0);
 			}			
 		} else {
-			//reconfiguration failed at the specified timeframe
+			//reconfiguration failed at the specified timeframe, or the new component was rejected
 			
 			//inform component to proceed. 
 			//get lock on new component
@@ -194,6 +295,11 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 			//release lock on component
 			//logger.info("releasing lock");
 			compProxy.unlock();	
+			
+			//release the calls blocked on the connectors
+			for (IConnectorManager connector: connectorList) {
+				connector.setReconfiguring(false,0);
+			}
 		}
 
 		return response;
@@ -214,7 +320,7 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 	private void replaceComponent(String targetComponent,
 			String newImplementation, Object internalState) throws ApplicationReconfigurationException {
 	    try {
-	    	Pair<Object,JLCFComponent> newComponent = null;
+	    	JLCFComponent newComponent = null;
 	    	JLCFComponent oldComponent = components.get(targetComponent);
 	    	
 		    //locate component description 
@@ -223,15 +329,20 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 		    		//found the old component description, get the associated objects
 
 			    	//create new instance
-			    	newComponent = JLCFFrameworkUtilities.instantiatePOJO(compDescription, newImplementation, componentApplication, container);
+			    	newComponent = JLCFFrameworkUtilities.instantiatePOJO(compDescription, newImplementation, componentApplication, assembly, container);
+			    	
+			    	//set the internal state of the old component (if any) to the new component, 
+			    	//before the old component is replaced so that it stays in place if the state does not fit
+			    	//logger.debug("setting internal state");
+			    	newComponent.getComponentProxy().setInternalState(internalState);
 		    		
 		    		//replace component proxy and pojo to the connectors
 		    		for (String connector : oldComponent.getConnectors().keySet()) {
-		    			oldComponent.getConnectors().get(connector).getLeft().setTarget(newComponent.getLeft(), newComponent.getRight().getComponentProxy());
+		    			oldComponent.getConnectors().get(connector).getLeft().setTarget(newComponent.getComponentProxy());
 		    		}
 		    		//replace the receptacles list with the ones from the new component
-		    		oldComponent.setReceptacles(newComponent.getRight().getReceptacles());
-		    		oldComponent.setComponentProxy(newComponent.getRight().getComponentProxy());
+		    		oldComponent.setReceptacles(newComponent.getReceptacles());
+		    		oldComponent.setComponentProxy(newComponent.getComponentProxy());
 		    	}
 		    }
 		    
@@ -252,10 +363,6 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 		    	}
 		    }
 	
-		    //set the internal state of the old component (if any) to the new component
-		    //logger.debug("setting internal state");
-		    newComponent.getRight().getComponentProxy().setInternalState(internalState);
-		    
 		    //INITIALIZATION PHASE
 		    //call init methods on all components
 		    for (String component : components.keySet()) {
@@ -317,6 +424,9 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 	 */
 	public void handleLoadAppRequest(String applicationFile) throws ApplicationInstantiationException{
 	    try {
+	    	assembly = null;
+	    	container.setApplicationAssembly(null);
+	    	
 			//create the JAXB unmarshaller
 			JAXBContext context = JAXBContext.newInstance(Application.class);
 			Unmarshaller um = context.createUnmarshaller();
@@ -324,12 +434,57 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 			//read the file
 		    componentApplication = (Application) um.unmarshal(new FileReader(applicationFile));
 
+		    //set up the invokers before any invocation handler is created
+		    MethodInvokerTable invokers = new MethodInvokerTable(MethodInvokerTable.getEngine(componentApplication.getInvocation()));
+		    invokers.prepare(JLCFFrameworkUtilities.getApplicationInterfaces(componentApplication, container));
+		    container.setMethodInvokers(invokers);
+		    
+		    createApplication();
+	    } catch (ApplicationInstantiationException e) {
+	    	throw e;
+	    } catch (Exception e) {
+	    	//logger.log(Level.ERROR, "cannot instantiate application", e);
+	    	throw new ApplicationInstantiationException(e.getMessage());
+	    }
+	}
+	
+	/**
+	 * creates a complete application from a pre-built application assembly.
+	 * The description, component factories and invocation engine are taken from the assembly.
+	 * @param applicationAssembly the application assembly
+	 */
+	public void handleLoadAppRequest(IApplicationAssembly applicationAssembly) throws ApplicationInstantiationException{
+		try {
+			assembly = applicationAssembly;
+			container.setApplicationAssembly(applicationAssembly);
+			componentApplication = applicationAssembly.getApplicationDescription();
+			
+		    //set up the invokers before any invocation handler is created
+			MethodInvokerTable invokers = new MethodInvokerTable(applicationAssembly.getInvocationEngine());
+			invokers.prepare(JLCFFrameworkUtilities.getApplicationInterfaces(componentApplication, container));
+			container.setMethodInvokers(invokers);
+			
+			createApplication();
+	    } catch (ApplicationInstantiationException e) {
+	    	throw e;
+	    } catch (Exception e) {
+	    	//logger.log(Level.ERROR, "cannot instantiate application", e);
+	    	throw new ApplicationInstantiationException(e.getMessage());
+	    }
+	}
+	
+	/**
+	 * instantiates, connects and initializes all components of the application description
+	 */
+	private void createApplication() throws ApplicationInstantiationException{
+	    try {
 		    //initialize all components and store their references
 		    for (org.jlcf.core.types.xml.Component compDescription : componentApplication.getComponent()) {
-		    	JLCFComponent componentProxy = JLCFFrameworkUtilities.instantiateComponent(compDescription, componentApplication, container);
+		    	JLCFComponent componentProxy = JLCFFrameworkUtilities.instantiateComponent(compDescription, componentApplication, assembly, container);
 		    	//logger.debug("inserting component to central map:"+compDescription.getName());
 		    	components.put(compDescription.getName(), componentProxy);
 		    }
+		    publishInterfaceTargets();
 		    
 		    //logger.debug("central component map:"+components);
 		    //connect components together
@@ -382,9 +537,206 @@ public class JLCFContainerProcessor extends AbstractQueueProcessor<GenericProces
 							JLCFFrameworkUtilities.getReceptacleDescription(componentSource, receptacle, componentApplication);
 			String cbReference = recDesc.getReference().getCallbackReference();
 			recData.getRight().setCallback(cbReference);
+			
+			//connections without interceptors and callbacks skip the chain and call the target connector directly
+			IConnectorManager directTarget = getDirectTarget(recDesc, targetPath);
+			if (directTarget != null) {
+				//logger.debug("wiring "+componentSource+"/"+receptacle+" directly to "+targetPath);
+				recData.getLeft().setDirectTarget(directTarget);
+			}
 		}	
 	}
 	
+	/**
+	 * returns the connector of the target interface of a receptacle, if the receptacle can be wired directly to it.
+	 * This is the case when the receptacle and the target interface have no interceptors and the receptacle has no callback.
+	 * @param recDesc the receptacle description
+	 * @param targetPath the target path
+	 * @return the target connector or null if the receptacle needs the full call chain
+	 * @throws Exception in case the receptacle type cannot be loaded
+	 */
+	private IConnectorManager getDirectTarget(org.jlcf.core.types.xml.Receptacle recDesc, String targetPath) throws Exception {
+		if (recDesc.getInterceptor() != null && recDesc.getInterceptor().size() > 0) {
+			return null;
+		}
+		String cbReference = recDesc.getReference().getCallbackReference();
+		if (cbReference != null && !cbReference.equals("")) {
+			return null;
+		}
+		if (targetPath.equals("")) {
+			return null;
+		}
+		
+		String[] path = targetPath.split("/");
+		org.jlcf.core.types.xml.Interface intfDesc = JLCFFrameworkUtilities.getInterfaceDescription(path[0], path[1], componentApplication);
+		if (intfDesc != null && intfDesc.getInterceptor().size() > 0) {
+			return null;
+		}
+		
+		JLCFComponent targetComponent = components.get(path[0]);
+		IComponentProxy target = targetComponent.getComponentProxy();
+		String receptacleType = recDesc.getReference().getType();
+		if (receptacleType == null || "".equals(receptacleType)) {
+			receptacleType = JLCFFrameworkUtilities.getReceptacleType(targetPath, componentApplication);
+		}
+		if (!container.loadApplicationClass(receptacleType).isInstance(target.getComponentPojo())) {
+			return null;
+		}
+		return targetComponent.getConnectors().get(path[1]).getLeft();
+	}
+	
+	/**
+	 * restores the full call chain of all receptacles that are wired directly to a component
+	 * @param targetComponent the target component
+	 */
+	private void expandDirectConnections(String targetComponent) {
+		for (org.jlcf.core.types.xml.Component compDescription : componentApplication.getComponent()) {
+			for (org.jlcf.core.types.xml.Receptacle receptacle : compDescription.getReceptacle()) {
+				String path = receptacle.getReference().getPath();
+				if (path.startsWith(targetComponent+"/")) {
+					components.get(compDescription.getName()).getReceptacles().get(receptacle.getName()).getLeft().expand();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * handles a request to add an interceptor at the end of the call chain of a receptacle.
+	 * The interceptor is also added to the application description, so that it is kept 
+	 * when the component is replaced.
+	 * @param receptaclePath the receptacle path in the form of component/receptacle
+	 * @param interceptorClass the class of the interceptor
+	 * @param methods the intercepted methods, separated by commas. null for all methods
+	 * @return pair of boolean indicating if the interceptor was added and a String message
+	 * @throws Exception in case the interceptor cannot be instantiated
+	 */
+	private Pair<Boolean, String> handleInsertInterceptorRequest(String receptaclePath, String interceptorClass, String methods, Map<String, String> properties) throws Exception {
+		String[] path = receptaclePath.split("/");
+		JLCFComponent component = path.length == 2 ? components.get(path[0]) : null;
+		Pair<IReceptacle, IContextManagerReceptacle> recData = component == null ? null : component.getReceptacles().get(path[1]);
+		if (recData == null) {
+			return new Pair<Boolean, String>(false, "cannot find receptacle "+receptaclePath);
+		}
+		
+		org.jlcf.core.types.xml.Receptacle recDesc = JLCFFrameworkUtilities.getReceptacleDescription(path[0], path[1], componentApplication);
+		String receptacleType = recDesc.getReference().getType();
+		if (receptacleType == null || "".equals(receptacleType)) {
+			receptacleType = JLCFFrameworkUtilities.getReceptacleType(recDesc.getReference().getPath(), componentApplication);
+		}
+		
+		Interceptor interceptor = JLCFFrameworkUtilities.getInterceptor(interceptorClass, container);
+		interceptor.setMethods(JLCFFrameworkUtilities.getMethodNames(methods));
+		interceptor.configure(properties);
+		interceptor.checkInterfaces(new Class<?>[]{container.loadApplicationClass(receptacleType)});
+		recData.getLeft().addInterceptor(interceptor);
+		
+		org.jlcf.core.types.xml.Interceptor interceptorDesc = new org.jlcf.core.types.xml.Interceptor();
+		interceptorDesc.setName(interceptorClass);
+		interceptorDesc.setType(interceptorClass);
+		interceptorDesc.setMethods(methods);
+		for (String propertyName : properties.keySet()) {
+			Property propertyDesc = new Property();
+			propertyDesc.setName(propertyName);
+			propertyDesc.setValue(properties.get(propertyName));
+			interceptorDesc.getProperty().add(propertyDesc);
+		}
+		recDesc.getInterceptor().add(interceptorDesc);
+		//logger.debug("added interceptor "+interceptorClass+" to "+receptaclePath);
+		return new Pair<Boolean, String>(true, "");
+	}
+	
+	/**
+	 * handles a request to remove an interceptor from the call chain of a receptacle.
+	 * The last interceptor of the class is removed, from the call chain and the application description.
+	 * A receptacle that is left without interceptors is wired directly to its target again, if possible.
+	 * @param receptaclePath the receptacle path in the form of component/receptacle
+	 * @param interceptorClass the class of the interceptor
+	 * @return pair of boolean indicating if the interceptor was removed and a String message
+	 * @throws Exception in case the target of the receptacle cannot be resolved
+	 */
+	private Pair<Boolean, String> handleRemoveInterceptorRequest(String receptaclePath, String interceptorClass) throws Exception {
+		String[] path = receptaclePath.split("/");
+		JLCFComponent component = path.length == 2 ? components.get(path[0]) : null;
+		Pair<IReceptacle, IContextManagerReceptacle> recData = component == null ? null : component.getReceptacles().get(path[1]);
+		if (recData == null) {
+			return new Pair<Boolean, String>(false, "cannot find receptacle "+receptaclePath);
+		}
+		
+		Interceptor[] interceptors = recData.getLeft().getInterceptors();
+		Interceptor interceptor = null;
+		for (int i=interceptors.length-1 ; i>=0 && interceptor == null ; i--) {
+			if (interceptors[i].getClass().getName().equals(interceptorClass)) {
+				interceptor = interceptors[i];
+			}
+		}
+		if (interceptor == null) {
+			return new Pair<Boolean, String>(false, "cannot find interceptor "+interceptorClass+" on "+receptaclePath);
+		}
+		recData.getLeft().removeInterceptor(interceptor);
+		
+		org.jlcf.core.types.xml.Receptacle recDesc = JLCFFrameworkUtilities.getReceptacleDescription(path[0], path[1], componentApplication);
+		List<org.jlcf.core.types.xml.Interceptor> interceptorDescs = recDesc.getInterceptor();
+		for (int i=interceptorDescs.size()-1 ; i>=0 ; i--) {
+			if (interceptorDescs.get(i).getType().equals(interceptorClass)) {
+				interceptorDescs.remove(i);
+				break;
+			}
+		}
+		
+		//the receptacle may be wired directly again
+		IConnectorManager directTarget = getDirectTarget(recDesc, recDesc.getReference().getPath());
+		if (directTarget != null) {
+			recData.getLeft().setDirectTarget(directTarget);
+		}
+		//logger.debug("removed interceptor "+interceptorClass+" from "+receptaclePath);
+		return new Pair<Boolean, String>(true, "");
+	}
+	
+	/**
+	 * informs the interceptors of the receptacles that target a component and the interceptors
+	 * of the component interfaces that the component was replaced
+	 * @param targetComponent the replaced component
+	 */
+	private void notifyTargetReplaced(String targetComponent) {
+		for (org.jlcf.core.types.xml.Component compDescription : componentApplication.getComponent()) {
+			for (org.jlcf.core.types.xml.Receptacle receptacle : compDescription.getReceptacle()) {
+				if (receptacle.getReference().getPath().startsWith(targetComponent+"/")) {
+					for (Interceptor interceptor : components.get(compDescription.getName()).getReceptacles().get(receptacle.getName()).getLeft().getInterceptors()) {
+						interceptor.targetReplaced();
+					}
+				}
+			}
+		}
+		for (Pair<IConnectorManager, IContextManagerInterface> connector : components.get(targetComponent).getConnectors().values()) {
+			for (Interceptor interceptor : connector.getRight().getInterceptors()) {
+				interceptor.targetReplaced();
+			}
+		}
+	}
+	
+	/**
+	 * builds and publishes the registry of the context-aware interfaces of all components
+	 */
+	private void publishInterfaceTargets() {
+		Map<String, IContextManagerInterface> targets = new HashMap<String, IContextManagerInterface>();
+		for (String componentName : components.keySet()) {
+			Map<String, Pair<IConnectorManager, IContextManagerInterface>> connectors = components.get(componentName).getConnectors();
+			for (String intfName : connectors.keySet()) {
+				targets.put(componentName+"/"+intfName, connectors.get(intfName).getRight());
+			}
+		}
+		interfaceTargets = Collections.unmodifiableMap(targets);
+	}
+	
+	/**
+	 * returns the context-aware interface on a path. Can be called by any thread.
+	 * @param targetPath the interface path in the form of component/interface
+	 * @return the context-aware interface or null if there is no such interface
+	 */
+	protected IContextManagerInterface getInterfaceTarget(String targetPath) {
+		return interfaceTargets.get(targetPath);
+	}
+	
 	/**
 	 * returns the application description
 	 * @return description of the application that is currently loaded
@@ -19,12 +19,17 @@ package org.jlcf.core;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.jlcf.core.dynrec.ConnectorTimingBasedReconfigurationManager;
 import org.jlcf.core.exception.ComponentReferenceException;
+import org.jlcf.core.invoke.DirectDispatchGenerator;
 import org.jlcf.core.types.xml.Application;
 import org.jlcf.core.types.xml.Component;
 import org.jlcf.core.types.xml.Interface;
@@ -53,7 +58,7 @@ public class JLCFFrameworkUtilities {
 	 * @return the relevant data structures that are needed at runtime.
 	 * @throws Exception in case the component cannot be found or there is a problem creating the receptacles proxies.
 	 */
-	protected static JLCFComponent instantiateComponent(Component compDescription, Application componentApplication, JLCFContainer container) throws Exception{
+	protected static JLCFComponent instantiateComponent(Component compDescription, Application componentApplication, IApplicationAssembly assembly, JLCFContainer container) throws Exception{
 		
 		/**
 		 * the steps are the following
@@ -63,8 +68,8 @@ public class JLCFFrameworkUtilities {
 		
 		//logger.debug("instantiating component:"+compDescription.getName());
 		
-		//get the POJO instance with its proxy object, and the proxy handler and receptacles. use the default implementation class
-		Pair<Object,JLCFComponent> pojoComponentInstance = instantiatePOJO(compDescription, null, componentApplication, container);
+		//get the POJO instance with its proxy handler and receptacles. use the default implementation class
+		JLCFComponent pojoComponentInstance = instantiatePOJO(compDescription, null, componentApplication, assembly, container);
 
 		//now create the interfaces chain 
 		
@@ -72,7 +77,7 @@ public class JLCFFrameworkUtilities {
 		//the proxy implements all the formal interfaces of the component
 		Class<?>[] interfaces = new Class<?>[compDescription.getInterface().size()];
 		for (int i=0;i<compDescription.getInterface().size();i++) {
-			interfaces[i] = Class.forName(compDescription.getInterface().get(i).getType());
+			interfaces[i] = container.loadApplicationClass(compDescription.getInterface().get(i).getType());
 		}
 		
 		//create one connector and one context manager on top of the connector for each interface and store them for the return
@@ -80,16 +85,16 @@ public class JLCFFrameworkUtilities {
 							= new HashMap<String, Pair<IConnectorManager, IContextManagerInterface>>();
 		for (Interface receptacleDescription : compDescription.getInterface()) {
 			//connector
-			Pair<Object, IConnectorManager> connectorObjs = JLCFFrameworkUtilities.getConnector(receptacleDescription, pojoComponentInstance.getLeft(), pojoComponentInstance.getRight().getComponentProxy());
+			Pair<Object, IConnectorManager> connectorObjs = JLCFFrameworkUtilities.getConnector(receptacleDescription, pojoComponentInstance.getComponentProxy(), componentApplication, container);
 			//context handler
-			IContextManagerInterface contextHandlerIntf = JLCFFrameworkUtilities.getInterfaceContextInterceptor(connectorObjs.getLeft(), container);
+			IContextManagerInterface contextHandlerIntf = JLCFFrameworkUtilities.getInterfaceContextInterceptor(connectorObjs.getLeft(), receptacleDescription, container);
 			interfaceConnectors.put(receptacleDescription.getName(), 
 										new Pair<IConnectorManager, IContextManagerInterface>(connectorObjs.getRight(), contextHandlerIntf) );
 		}
 				
 		//return the overall structure
 		JLCFComponent componentHolder 
-					= new JLCFComponent(pojoComponentInstance.getRight().getComponentProxy(), pojoComponentInstance.getRight().getReceptacles(), interfaceConnectors);
+					= new JLCFComponent(pojoComponentInstance.getComponentProxy(), pojoComponentInstance.getReceptacles(), interfaceConnectors);
 		//logger.info("component:"+compDescription.getName()+" instantiated");
 
 		return componentHolder;
@@ -107,12 +112,13 @@ public class JLCFFrameworkUtilities {
 	 * @param compDescription the component description
 	 * @param implementationClass the component implementation class. Null if the default class in the component description is to be used.
 	 * @param componentApplication The aplpciation description
-	 * @return the relevant data structures that are needed at runtime. A component proxy implementation, implementing all the formal component interfaces and a JLCFComponent
-	 * instance without the connector information.
+	 * @param assembly the pre-built application, null if the application was loaded from a description file
+	 * @return the relevant data structures that are needed at runtime, a JLCFComponent instance without the connector information.
+	 * The connectors call the pojos through the component proxy handler, there is no proxy object of the component.
 	 * @throws Exception in case the component cannot be found or there is a problem creating the receptacles proxies.
 	 */
-	protected static Pair<Object,JLCFComponent> instantiatePOJO(Component compDescription, String implementationClass, 
-																		Application componentApplication, JLCFContainer container) throws Exception{
+	protected static JLCFComponent instantiatePOJO(Component compDescription, String implementationClass, 
+																		Application componentApplication, IApplicationAssembly assembly, JLCFContainer container) throws Exception{
 		
 		/**
 		 * the steps are the following
@@ -127,7 +133,7 @@ public class JLCFFrameworkUtilities {
 		HashMap<String, Pair<Object, Pair<IReceptacle, IContextManagerReceptacle>> > listOfReceptacles
 								= new HashMap<String, Pair<Object, Pair<IReceptacle, IContextManagerReceptacle>>>();
 		for (Receptacle receptacleDescription : compDescription.getReceptacle()) {
-			listOfReceptacles.put(receptacleDescription.getName(), getReceptacle(receptacleDescription, componentApplication, container));
+			listOfReceptacles.put(receptacleDescription.getName(), getReceptacle(compDescription.getName(), receptacleDescription, componentApplication, container));
 		}
 		
 		//create property values
@@ -137,32 +143,58 @@ public class JLCFFrameworkUtilities {
 		}
 		
 		//get the class of the pojo
-		Class<?> pojoClass = null;
+		String pojoClassName = null;
 		if (implementationClass != null) {
 			//logger.debug("loading alternative implementation class :"+implementationClass);
-			pojoClass = Class.forName(implementationClass);
+			pojoClassName = implementationClass;
 		} else  {
 			//logger.debug("loading class as defined in the application description:"+compDescription.getImplementationClass());
-			pojoClass = Class.forName(compDescription.getImplementationClass());
+			pojoClassName = compDescription.getImplementationClass();
 		}
 
-		//get the pojo instance
-		Object pojoInstance = getComponentPojoInstance(listOfReceptacles, properties , pojoClass, container);
+		//get the pojo instance, from the factory of the assembly if there is one
+		IComponentFactory factory = null;
+		if (assembly != null) {
+			factory = assembly.getComponentFactory(pojoClassName);
+		}
+		//a pooled component has several instances that share the receptacles
+		int poolSize = 1;
+		if (compDescription.getPoolSize() != null) {
+			poolSize = compDescription.getPoolSize();
+			if (poolSize < 1) {
+				throw new Exception("component "+compDescription.getName()+" has an invalid pool size:"+poolSize);
+			}
+		}
+		PoolPolicy poolPolicy = PoolPolicy.fromName(compDescription.getPoolPolicy());
 		
-		//now create the interfaces chain (proxies)
+		Object[] pojoInstances = new Object[poolSize];
+		if (factory != null) {
+			Map<String, Object> receptacleProxies = new HashMap<String, Object>();
+			for (String receptacleName : listOfReceptacles.keySet()) {
+				receptacleProxies.put(receptacleName, listOfReceptacles.get(receptacleName).getLeft());
+			}
+			for (int i=0 ; i<poolSize ; i++) {
+				pojoInstances[i] = factory.newInstance(receptacleProxies, properties, container);
+			}
+		} else {
+			Class<?> pojoClass = container.loadApplicationClass(pojoClassName);
+			for (int i=0 ; i<poolSize ; i++) {
+				pojoInstances[i] = getComponentPojoInstance(listOfReceptacles, properties , pojoClass, container);
+			}
+		}
 		
-		//create the first level proxy that implements all interfaces
-		//the proxy implements all the formal interfaces of the component, it is primarily used to
-		//call init methods on pojos and for dynamic reconfiguration.
+		//load the formal interfaces of the component
 		Class<?>[] interfaces = new Class<?>[compDescription.getInterface().size()];
 		for (int i=0;i<compDescription.getInterface().size();i++) {
-			interfaces[i] = Class.forName(compDescription.getInterface().get(i).getType());
+			interfaces[i] = container.loadApplicationClass(compDescription.getInterface().get(i).getType());
 		}
-		//create proxy
-		ComponentProxyHandler compProxyHandler = new ComponentProxyHandler(pojoInstance, compDescription.getName());
-		Object componentProxy = Proxy.newProxyInstance(JLCFFrameworkUtilities.class.getClassLoader(), 
-				interfaces, compProxyHandler) ;
-				
+		//calls without a key would reach a shard that does not own the key, unless the method is marked for any shard
+		if (poolPolicy == PoolPolicy.CONSISTENT_HASH) {
+			ShardRouter.checkKeys(compDescription.getName(), interfaces);
+		}
+		//create the proxy handler
+		ComponentProxyHandler compProxyHandler = new ComponentProxyHandler(pojoInstances, poolPolicy, compDescription.getName(), container.getMethodInvokers(), factory);
+		
 		
 		//create the receptacle references for the return
 		Map<String , Pair<IReceptacle, IContextManagerReceptacle>> receptaclesReferences 
@@ -178,7 +210,7 @@ public class JLCFFrameworkUtilities {
 		if (implementationClass != null) {
 			//logger.info("component:"+compDescription.getName()+" instantiated with new implementation class:"+implementationClass);
 		}
-		return new Pair<Object,JLCFComponent> (componentProxy, componentHolder);
+		return componentHolder;
 	}
 
 	/**
@@ -289,14 +321,73 @@ public class JLCFFrameworkUtilities {
 	}
 
 	
+	/**
+	 * returns new instances of the interceptors of a receptacle or interface description
+	 * @param interceptorDescriptions the interceptor descriptions, may be null
+	 * @param intf the interface of the receptacle or component interface of the interceptors
+	 * @param container the container, loads the interceptor classes
+	 * @return the interceptors, in the order of the description
+	 * @throws Exception in case an interceptor cannot be created or its configuration does not fit the interface
+	 */
+	private static Interceptor[] getInterceptors(List<org.jlcf.core.types.xml.Interceptor> interceptorDescriptions, Class<?> intf, JLCFContainer container) throws Exception {
+		int numberOfInterceptors = 0;
+		if (interceptorDescriptions != null) {
+			numberOfInterceptors = interceptorDescriptions.size();
+		}
+		Interceptor[] interceptors = new Interceptor[numberOfInterceptors];
+		
+		//put interceptor instances into the array
+		for (int i=0;i<numberOfInterceptors;i++) {
+			interceptors[i] = JLCFFrameworkUtilities.getInterceptor(interceptorDescriptions.get(i).getType(), container);
+			interceptors[i].setMethods(JLCFFrameworkUtilities.getMethodNames(interceptorDescriptions.get(i).getMethods()));
+			HashMap<String, String> properties = new HashMap<String, String>();
+			for (Property prop : interceptorDescriptions.get(i).getProperty()) {
+				properties.put(prop.getName(), prop.getValue());
+			}
+			interceptors[i].configure(properties);
+			interceptors[i].checkInterfaces(new Class<?>[]{intf});
+		}
+		return interceptors;
+	}
+	
+	/**
+	 * returns the method names of a methods attribute of the application description.
+	 * The methods are names or signatures such as add(int,int), the commas of the signatures 
+	 * do not separate methods.
+	 * @param methods the method names separated by commas, may be null
+	 * @return the method names, an empty array for all methods
+	 */
+	protected static String[] getMethodNames(String methods) {
+		if (methods == null || methods.trim().equals("")) {
+			return new String[0];
+		}
+		List<String> methodNames = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i=0 ; i<methods.length() ; i++) {
+			char c = methods.charAt(i);
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				methodNames.add(methods.substring(start, i).trim());
+				start = i+1;
+			}
+		}
+		methodNames.add(methods.substring(start).trim());
+		return methodNames.toArray(new String[methodNames.size()]);
+	}
+	
 	/**
 	 * returns an interceptor instance of the provided class.
 	 * @param interceptorClass the full name of the class
+	 * @param container the container, loads the interceptor class
 	 * @return an interceptor instance.
 	 * @throws Exception in case the class or instance cannot be loaded / created.
 	 */
-	private static Interceptor getInterceptor(String interceptorClass) throws Exception {
-		Class<?> interceptorPojoClass = Class.forName(interceptorClass);
+	protected static Interceptor getInterceptor(String interceptorClass, JLCFContainer container) throws Exception {
+		Class<?> interceptorPojoClass = container.loadApplicationClass(interceptorClass);
 		Constructor<?> interceptorPojoConstructor = interceptorPojoClass.getConstructor(new Class[]{});
 		Object interceptorInstance = interceptorPojoConstructor.newInstance();	
 		//logger.info("created interceptor instance of class "+interceptorClass);
@@ -307,12 +398,13 @@ public class JLCFFrameworkUtilities {
 
 	/**
 	 * creates a new receptacle object chain for component.
+	 * @param componentName the name of the component of the receptacle
 	 * @param receptacleDescription the description of the receptacle
 	 * @param componentApplication 
 	 * @return returns the proxy object implementing the receptacle interface that is passed to the user component and the receptacle manager and context interceptor invoction handlers.
 	 * @throws Exception in case the receptacle cannot be created.
 	 */
-	private static Pair<Object, Pair<IReceptacle, IContextManagerReceptacle>> getReceptacle (Receptacle receptacleDescription, Application componentApplication, JLCFContainer container) throws Exception{
+	private static Pair<Object, Pair<IReceptacle, IContextManagerReceptacle>> getReceptacle (String componentName, Receptacle receptacleDescription, Application componentApplication, JLCFContainer container) throws Exception{
 		/**
 		 * The steps for creating a receptacle are the following:
 		 * - create instances of all interceptors
@@ -321,19 +413,6 @@ public class JLCFFrameworkUtilities {
 		 * - create the context manager for the receptacle.
 		 */
 		//logger.debug("Processing receptacle : "+receptacleDescription.getName());
-		//determine number of interceptors and create array
-		int numberOfInterceptors = 0;
-		if (receptacleDescription.getInterceptor() != null) {
-			numberOfInterceptors = receptacleDescription.getInterceptor().size();
-		}
-		Interceptor[] interceptors = new Interceptor[numberOfInterceptors];
-		//logger.debug(receptacleDescription.getName()+" "+interceptors.length+" interceptors");
-		
-		//put interceptor instances into the array
-		for (int i=0;i<numberOfInterceptors;i++) {
-			interceptors[i] = JLCFFrameworkUtilities.getInterceptor(receptacleDescription.getInterceptor().get(i).getType());
-		}
-		
 		//create the context-aware proxy of the receptacle
 		String path = receptacleDescription.getReference().getPath();
 		String callbackPath = receptacleDescription.getReference().getCallbackReference();
@@ -347,16 +426,26 @@ public class JLCFFrameworkUtilities {
 			//logger.debug("resolved to :"+receptacleType);
 		}
 		
-		Pair<Object,IContextManagerReceptacle> receptacleContextManager = JLCFFrameworkUtilities.getReceptacleContextInterceptor(path, callbackPath, receptacleType, container);
+		//determine number of interceptors and create array
+		Interceptor[] interceptors = JLCFFrameworkUtilities.getInterceptors(receptacleDescription.getInterceptor(), container.loadApplicationClass(receptacleType), container);
+		//logger.debug(receptacleDescription.getName()+" "+interceptors.length+" interceptors");
+		
+		Pair<Object,IContextManagerReceptacle> receptacleContextManager = JLCFFrameworkUtilities.getReceptacleContextInterceptor(componentName+"/"+receptacleDescription.getName(), path, callbackPath, receptacleType, container);
 		Object contextAwareRecProxy = receptacleContextManager.getLeft();
 		
 		//create invocation handler and proxy object for the target interface of the receptacle
 		String receptacleWrapperName = receptacleDescription.getName()+":"+receptacleDescription.getReference().getPath();
-		JLCFReceptacle handler = new JLCFReceptacle(interceptors, receptacleWrapperName, contextAwareRecProxy);
+		JLCFReceptacle handler = new JLCFReceptacle(interceptors, receptacleWrapperName, contextAwareRecProxy, container);
 		
-		//create the receptacle proxy that will be passed to the POJO constructor
-		Object proxy = Proxy.newProxyInstance(JLCFFrameworkUtilities.class.getClassLoader(), new Class[]{ 
-									Class.forName(receptacleType)}, handler);
+		//create the receptacle proxy that will be passed to the POJO constructor, or its generated front end
+		Object proxy = null;
+		if (container.getMethodInvokers().generatesFrontEnds()) {
+			proxy = DirectDispatchGenerator.newReceptacleFrontEnd(container.loadApplicationClass(receptacleType), handler);
+		}
+		if (proxy == null) {
+			proxy = Proxy.newProxyInstance(JLCFFrameworkUtilities.class.getClassLoader(), new Class[]{ 
+									container.loadApplicationClass(receptacleType)}, handler);
+		}
 		//logger.debug("Finished processing receptacle : "+receptacleDescription.getName());
 
 		//create return type
@@ -368,17 +457,18 @@ public class JLCFFrameworkUtilities {
 	/**
 	 * returns a context aware proxy for a receptacle. 
 	 * This is also returned to the framework users when they request access to one of the component interfaces.
+	 * @param source the caller, the path of the receptacle or a name for references, used by the traces
 	 * @param path path of the target
 	 * @param callback the callback path, if any
 	 * @return returns a proxy object implementing the user interface and an ReceptacleContextInterceptorHandler that adds context aware information
 	 * @throws ClassNotFoundException 
 	 */
-	protected static Pair<Object, IContextManagerReceptacle> getReceptacleContextInterceptor(String path, String callbackpath, String userInterface, JLCFContainer container) throws ClassNotFoundException {
+	protected static Pair<Object, IContextManagerReceptacle> getReceptacleContextInterceptor(String source, String path, String callbackpath, String userInterface, JLCFContainer container) throws ClassNotFoundException {
 		//create the context-aware proxy of the receptacle, also implements IReceptacleContextInterceptor
 		//logger.debug("loading class:"+userInterface);
-		Class<?>[] interfaces = new Class[]{ Class.forName(userInterface)};
+		Class<?>[] interfaces = new Class[]{ container.loadApplicationClass(userInterface)};
 		ReceptacleContextManager contextRecInterceptor 
-								= new ReceptacleContextManager(path, callbackpath, container);
+								= new ReceptacleContextManager(source, path, callbackpath, interfaces[0], container);
 		Object contextAwareRecProxy = Proxy.newProxyInstance(JLCFFrameworkUtilities.class.getClassLoader(), 
 				interfaces, contextRecInterceptor);		
 		//logger.debug("returning proxy and context handler");
@@ -390,17 +480,30 @@ public class JLCFFrameworkUtilities {
 	/**
 	 * Returns a connector for the specified interface
 	 * @param intf the interface description
-	 * @param componentProxy the component proxy that the conector will forward all calls 
+	 * @param compProxyHandler the component proxy handler that the conector will forward all calls to
+	 * @param componentApplication the application description, provides the blocking percentile of the connector
 	 * @return the connector proxy implementing the target interface and the connector manager (invocation handler)
 	 */
-	private static Pair<Object,IConnectorManager> getConnector(Interface intf, Object componentProxy, IComponentProxy compProxyHandler) throws Exception {
+	private static Pair<Object,IConnectorManager> getConnector(Interface intf, IComponentProxy compProxyHandler, Application componentApplication, JLCFContainer container) throws Exception {
 		//logger.debug("Processing interface : "+intf.getName());
 		
+		double blockingPercentile = ConnectorTimingBasedReconfigurationManager.DEFAULT_BLOCKING_PERCENTILE;
+		if (componentApplication.getBlockingPercentile() != null) {
+			blockingPercentile = componentApplication.getBlockingPercentile();
+		}
+		
 		//create invocation handler and proxy object for the target interface of the component
-		ConnectorHandler handler = new ConnectorHandler(componentProxy, compProxyHandler, intf.getName()+":"+intf.getType());
+		ConnectorHandler handler = new ConnectorHandler(compProxyHandler, intf.getName()+":"+intf.getType(), container.getMethodInvokers(), blockingPercentile);
 		
-		Class<?> interfaceClass = Class.forName(intf.getType());
-		Object proxy = Proxy.newProxyInstance(JLCFFrameworkUtilities.class.getClassLoader(), new Class[]{interfaceClass}, handler);	
+		Class<?> interfaceClass = container.loadApplicationClass(intf.getType());
+		Object proxy = null;
+		if (container.getMethodInvokers().generatesFrontEnds()) {
+			proxy = DirectDispatchGenerator.newConnectorFrontEnd(interfaceClass, handler);
+			handler.setFrontEnd(proxy);
+		}
+		if (proxy == null) {
+			proxy = Proxy.newProxyInstance(JLCFFrameworkUtilities.class.getClassLoader(), new Class[]{interfaceClass}, handler);
+		}
 		
 		return new Pair<Object, IConnectorManager>(proxy, handler);
 	}	
@@ -409,13 +512,17 @@ public class JLCFFrameworkUtilities {
 	/**
 	 * returns a new interface context manager
 	 * @param connector the connector that this context manager will forward calls
+	 * @param intf the interface description, provides the interceptors of the interface
 	 * @return the new instance of the interface context manager
+	 * @throws Exception in case the interface type or an interceptor cannot be loaded
 	 */
-	private static IContextManagerInterface getInterfaceContextInterceptor(Object connector, JLCFContainer container){
+	private static IContextManagerInterface getInterfaceContextInterceptor(Object connector, Interface intf, JLCFContainer container) throws Exception {
 		//logger.debug("Creating interface context interceptor for connector");
 		
 		//create InterfaceContextInterceptorHandler
-		InterfaceContextManager handler = new InterfaceContextManager(connector, container);
+		Class<?> interfaceClass = container.loadApplicationClass(intf.getType());
+		InterfaceContextManager handler = new InterfaceContextManager(connector, 
+				JLCFFrameworkUtilities.getInterceptors(intf.getInterceptor(), interfaceClass, container), interfaceClass, container);
 
 		return handler;
 	}		
@@ -470,6 +577,30 @@ public class JLCFFrameworkUtilities {
 		return null;		
 	}
 	
+	/**
+	 * returns all interface types of an application, these are the types of
+	 * the component interfaces and the explicitly typed receptacles.
+	 * @param componentApplication the application description
+	 * @param container the container, loads the interface types
+	 * @return the interface types
+	 * @throws ClassNotFoundException in case an interface type cannot be loaded
+	 */
+	protected static Set<Class<?>> getApplicationInterfaces(Application componentApplication, JLCFContainer container) throws ClassNotFoundException {
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		for (Component comp : componentApplication.getComponent()) {
+			for (Interface intf : comp.getInterface()) {
+				interfaces.add(container.loadApplicationClass(intf.getType()));
+			}
+			for (Receptacle rec : comp.getReceptacle()) {
+				String type = rec.getReference().getType();
+				if (type != null && !"".equals(type)) {
+					interfaces.add(container.loadApplicationClass(type));
+				}
+			}
+		}
+		return interfaces;
+	}
+	
 	/**
 	 * Returns the type of a receptacle by investigating its path
 	 * @param path the path
@@ -16,10 +16,11 @@
 package org.jlcf.core;
 
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
+import org.jlcf.core.invoke.MethodInvokerTable;
 
 /**
  * The receptacle is the invocation handler of the proxy object that is created for every receptacle.
@@ -30,7 +31,21 @@ import org.apache.log4j.Logger;
  * another component.
  * 
  * This object also implements the methods for adding  / removing interceptors at runtime.
+ * The {@link InterceptorChain} is replaced as a whole. A new chain has its own links between the interceptors
+ * and the links of a published chain are never modified, the interceptor instances are shared between the chains. 
+ * Callers never lock, and calls that are already in a chain, including calls inside an interceptor that is 
+ * removed, complete on the chain they entered.
+ * Typed interceptors implement the receptacle interface, {@link AroundInterceptor}s receive every call 
+ * through an {@link Invocation}. Both can be mixed in the chain. Calls of methods that no interceptor 
+ * intercepts go directly to the Receptacle Context Manager.
  * 
+ * Receptacles without interceptors and callbacks may be wired directly to the connector of the target 
+ * interface by the framework. Calls made without a call context then skip the context managers, calls with 
+ * a callback, deadline or trace, and all calls while tracing is enabled, take the full chain. The full chain 
+ * is restored (expanded) when the target is reconfigured or an interceptor is added.
+ * When the direct invocation engine is used, the receptacle is a generated class instead of a proxy, and a
+ * directly wired call goes from it to the generated front end of the connector without any reflection.
+ *
  * @author Petros Pissias
  *
  */
@@ -42,27 +57,43 @@ public class JLCFReceptacle implements IReceptacle, InvocationHandler{
 	//target interface. This is the context-aware receptacle context manager
 	private final Object target;
 	
-	//list of interceptors 
-	//TODO change to non final synchronized list when feature to add / remove interceptors dynamically is added.
-	private final Interceptor[] interceptors;
+	//the interceptor chain. its links are never modified, a new chain is published when interceptors are added / removed.
+	private volatile InterceptorChain chain;
+	
+	//the interface of the receptacle
+	private final Class<?>[] interfaces;
 	
 	//name of this handler (for logging)
 	private final String name;
 	
-	//flag that indicates if this receptacle has interceptors
-	private final boolean hasInterceptors;
+	//the framework container
+	private final JLCFContainer container;
+	
+	//the invokers of the application, used by the chains
+	private final MethodInvokerTable invokerTable;
+	
+	//the connector of the target interface when this receptacle is directly wired, null otherwise
+	private volatile IConnectorManager directTarget;
+	
+	//the generated front end of the connector when this receptacle is directly wired, null otherwise
+	private volatile Object directFrontEnd;
 	
 	/**
 	 * Creates a new instance of this invocation handler.
 	 * @param interceptors the list of initial interceptors
 	 * @param name the name of this receptacle 
+	 * @param target the receptacle context manager proxy
+	 * @param container the framework container, provides the invokers used to forward calls
 	 */
-	public JLCFReceptacle(Interceptor[] interceptors, String name, Object target) {
-		this.interceptors = interceptors;
-		this.hasInterceptors = (interceptors != null && interceptors.length > 0);		
+	public JLCFReceptacle(Interceptor[] interceptors, String name, Object target, JLCFContainer container) {
 		this.name = name;
 		this.target = target;
-		setupInterceptors() ;
+		this.container = container;
+		this.invokerTable = container.getMethodInvokers();
+		this.directTarget = null;
+		this.directFrontEnd = null;
+		this.interfaces = target.getClass().getInterfaces();
+		this.chain = new InterceptorChain(interceptors == null ? new Interceptor[0] : interceptors, target, this.interfaces, invokerTable, container);
 	}
 	
 	/* (non-Javadoc)
@@ -72,61 +103,80 @@ public class JLCFReceptacle implements IReceptacle, InvocationHandler{
 	public Object invoke(Object proxy, Method m, Object[] arguments)
 			throws Throwable {
 		
-		Object targObject;
-		if (hasInterceptors) { 
-			//invoke the first interceptor
-			//logger.debug(name+" invoking interceptor");
-			targObject = interceptors[0];		
-		} else { //no interceptors
-			//logger.debug(name+" invoking target");
-			targObject = target;
-		}
-		Object ret;
-		try {
-			ret = m.invoke(targObject, arguments);
-			return ret;
-		}catch (InvocationTargetException ex) {
-			if (ex.getCause() == null) {
-				throw (ex);
-			} else {
-				throw (ex.getCause()); //throw the actual exception of the target interface
-			}		
+		IConnectorManager direct = directTarget;
+		if (direct != null && container.getCallContext() == null && container.getTracer().getSampleRate() == 0) {
+			//no call context to pass to the target, the context managers would not add anything
+			//logger.debug(name+" invoking direct target");
+			return direct.forwardCall(m, arguments);
 		}
+		
+		//invoke the first interceptor of the method, or the target if no interceptor intercepts it
+		//logger.debug(name+" invoking chain");
+		return chain.invoke(m, arguments);
 	}
 
-
+	
+	
 	/**
-	 * Sets up the interceptor chain.
-	 * Each interceptor is setup to forward the call to the next one.
-	 * The last interceptor forwards the call to the Reecptacle Context Manager.
+	 * returns the front end of the connector that the receptacle is wired to directly, if the next call can skip
+	 * the context managers. Called by the generated front end of the receptacle before each call, a call that
+	 * gets null goes through invoke.
+	 * @return the front end of the target connector, implementing the receptacle interface. null if the call
+	 * takes the full chain or the connector has no generated front end.
 	 */
-	private void setupInterceptors() {
-		if (!hasInterceptors) {
-			return;
-		}
-		int interceptorsSize = interceptors.length;
-		for (int i=0 ; i<interceptorsSize ; i++) {
-			if (i + 1 < interceptorsSize) {
-				//there is a next one, so fix the previous interceptor to point to the next one
-				interceptors[i].setTarget(interceptors[i+1]);
-			}
+	public Object getDirectFrontEnd() {
+		Object frontEnd = directFrontEnd;
+		if (frontEnd != null && container.getCallContext() == null && container.getTracer().getSampleRate() == 0) {
+			return frontEnd;
 		}
-		//set last interceptor to point to the actual object
-		interceptors[interceptorsSize-1].setTarget(target);
+		return null;
+	}
+	
+	@Override
+	public void setDirectTarget(IConnectorManager target) {
+		//logger.debug(name+" wired directly to the target component");
+		directTarget = target;
+		//the front end of the connector may implement another formal interface of the component
+		Object frontEnd = target.getFrontEnd();
+		directFrontEnd = interfaces[0].isInstance(frontEnd) ? frontEnd : null;
 	}
-
 	
+	@Override
+	public void expand() {
+		directFrontEnd = null;
+		directTarget = null;
+	}
 	
 	@Override
-	public void addInterceptor(Interceptor interceptor) {
-		// TODO Implement
-		//setupInterceptors();
+	public synchronized void addInterceptor(Interceptor interceptor) {
+		//the interceptor is only part of the full chain. Calls already in progress on the direct wire complete without it
+		expand();
+		Interceptor[] current = chain.getInterceptors();
+		Interceptor[] interceptors = Arrays.copyOf(current, current.length+1);
+		interceptors[interceptors.length-1] = interceptor;
+		chain = new InterceptorChain(interceptors, target, interfaces, invokerTable, container);
+		//logger.debug(name+" added interceptor "+interceptor.getClass().getName());
 	}
 
 	@Override
-	public void removeInterceptor(Interceptor interceptor) {
-		// TODO Implement
-		//setupInterceptors();
+	public synchronized void removeInterceptor(Interceptor interceptor) {
+		Interceptor[] current = chain.getInterceptors();
+		for (int i=0 ; i<current.length ; i++) {
+			if (current[i] == interceptor) {
+				Interceptor[] interceptors = new Interceptor[current.length-1];
+				System.arraycopy(current, 0, interceptors, 0, i);
+				System.arraycopy(current, i+1, interceptors, i, current.length-i-1);
+				//the calls that are inside the removed interceptor continue on the links of the old chain
+				chain = new InterceptorChain(interceptors, target, interfaces, invokerTable, container);
+				//logger.debug(name+" removed interceptor "+interceptor.getClass().getName());
+				return;
+			}
+		}
+	}
+	
+	@Override
+	public Interceptor[] getInterceptors() {
+		return chain.getInterceptors();
 	}
 
 }
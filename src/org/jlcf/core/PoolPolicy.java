@@ -0,0 +1,62 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+/**
+ * The ways the calls to a pooled component are spread across its instances.
+ * The policy of a component is set with the poolPolicy attribute of the component description.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public enum PoolPolicy {
+	//the instances serve the calls in turn
+	ROUND_ROBIN("roundRobin"),
+	//a call is served by the instance with the fewest calls in progress
+	LEAST_IN_FLIGHT("leastInFlight"),
+	//the instances are shards, a call is served by the shard that owns the key of the call. 
+	//the calls of methods without a key are served in turn
+	CONSISTENT_HASH("consistentHash");
+	
+	//the name used in the application description
+	private final String name;
+	
+	private PoolPolicy(String name) {
+		this.name = name;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * returns the policy with a name of the application description
+	 * @param name the name, null for the default policy (round robin)
+	 * @return the policy
+	 * @throws Exception in case there is no policy with the name
+	 */
+	public static PoolPolicy fromName(String name) throws Exception {
+		if (name == null || name.trim().equals("")) {
+			return ROUND_ROBIN;
+		}
+		for (PoolPolicy policy : values()) {
+			if (policy.name.equalsIgnoreCase(name.trim())) {
+				return policy;
+			}
+		}
+		throw new Exception("unknown pool policy "+name);
+	}
+}
@@ -16,10 +16,14 @@
 package org.jlcf.core;
 
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.jlcf.core.trace.CallTracer;
+import org.jlcf.core.trace.TracePoint;
 
 
 /**
@@ -39,13 +43,17 @@ import org.apache.log4j.Logger;
  * When a component POJO wants to get a reference to a callback also an instance
  * of this object it returned. 
  * 
+ * The call context of each method is created once, when the target interface and the callback are set,
+ * and shared by all calls. Calls that inherit a deadline or are traced get their own context.
+ * Traced calls are recorded here, as the edge between the caller and the target interface.
+ * 
  * @author Petros Pissias
  *
  */
 public class ReceptacleContextManager implements
 		IContextManagerReceptacle, InvocationHandler {
 
-	private final Logger logger = Logger.getLogger(getClass());
+	private static final Logger logger = Logger.getLogger(ReceptacleContextManager.class);
 	
 	//the target context-aware interface
 	private volatile IContextManagerInterface target = null;
@@ -53,23 +61,67 @@ public class ReceptacleContextManager implements
 	//the target path
 	private volatile String targetPath;
 	
+	//the caller, for traces
+	private final String source;
+	
 	//the callback path of the caller component
 	private volatile String callbackPath; 
 	
 	//ref to the container
 	private final JLCFContainer container;
+	
+	//the interface that this handler implements
+	private final Class<?> targetInterface;
+	
+	//the call context of each method of the interface. Replaced when the callback changes
+	private volatile Map<Method, CallContextInformation> callContexts;
+	
+	//the trace point of each method of the interface. Replaced when the target changes
+	private volatile Map<Method, TracePoint> tracePoints;
 
 	/**
 	 * Constructs a new invocation handler. The handler will resolve the target 
 	 * component at runtime prior the call.
+	 * @param source the caller, the path of the receptacle or a name for references, used by the traces
 	 * @param targetPath the path of the target component
 	 * @param callbackPath the path of the caller component. "" if the component does not specify a callback.
+	 * @param targetInterface the interface that the handler implements
 	 */
-	public ReceptacleContextManager(String targetPath, String callbackPath, JLCFContainer container) {
+	public ReceptacleContextManager(String source, String targetPath, String callbackPath, Class<?> targetInterface, JLCFContainer container) {
 		//logger.debug("creating isntance of "+getClass().getName()+" with targetpath:"+targetPath+" cb:"+callbackPath);
 		this.targetPath = targetPath;
 		this.callbackPath = callbackPath;
 		this.container = container;
+		this.targetInterface = targetInterface;
+		this.source = source;
+		this.callContexts = createCallContexts(callbackPath);
+		this.tracePoints = createTracePoints(targetPath);
+	}
+	
+	/**
+	 * creates the call contexts of all methods of the target interface
+	 * @param cbPath the callback path
+	 * @return method -> call context
+	 */
+	private Map<Method, CallContextInformation> createCallContexts(String cbPath) {
+		Map<Method, CallContextInformation> contexts = new HashMap<Method, CallContextInformation>();
+		for (Method method : targetInterface.getMethods()) {
+			contexts.put(method, new CallContextInformation(method, cbPath));
+		}
+		return Collections.unmodifiableMap(contexts);
+	}
+	
+	/**
+	 * creates the trace points of all methods of the target interface
+	 * @param path the target path
+	 * @return method -> trace point
+	 */
+	private Map<Method, TracePoint> createTracePoints(String path) {
+		Map<Method, TracePoint> points = new HashMap<Method, TracePoint>();
+		for (Method method : targetInterface.getMethods()) {
+			points.put(method, new TracePoint(source, path, method.getName()));
+		}
+		return Collections.unmodifiableMap(points);
 	}
 	
 
@@ -87,20 +139,42 @@ public class ReceptacleContextManager implements
 			target = container.getTargetReference(targetPath);
 		}
 		
-		Object ret = null;
+		CallContextInformation context = callContexts.get(method);
+		if (context == null) {
+			//not a method of the target interface (methods of Object)
+			context = new CallContextInformation(method, callbackPath);
+		}
 		
-		//redirect the call to the context-aware "server"
-		try {
-			ret = target.serviceCall(args, new CallContextInformation(method, callbackPath));
-			return ret;
-		}catch (InvocationTargetException ex) {
-			if (ex.getCause() == null) {
-				throw (ex);
-			} else {
-				throw (ex.getCause()); //throw the actual exception of the target interface
-			}		
+		CallContextInformation current = container.getCallContext();
+		long parentTraceId = 0;
+		if (current != null) {
+			if (current.hasDeadline()) {
+				//the call inherits the deadline of the call that this thread is serving
+				context = context.withDeadline(current.getDeadline());
+			}
+			parentTraceId = current.getTraceId();
 		}
 		
+		CallTracer tracer = container.getTracer();
+		long traceId = tracer.sample(parentTraceId);
+		if (traceId == 0) {
+			//redirect the call to the context-aware "server".
+			//exceptions of the target are already unwrapped by the invokers of the chain
+			return target.serviceCall(args, context);
+		}
+		
+		//traced call, the calls made while it is served join the trace
+		TracePoint point = tracePoints.get(method);
+		if (point == null) {
+			point = new TracePoint(source, targetPath, method.getName());
+		}
+		long start = System.nanoTime();
+		try {
+			return target.serviceCall(args, context.withTraceId(traceId));
+		} finally {
+			tracer.record(point, traceId, start, System.nanoTime());
+		}
+
 	}
 
 	/* (non-Javadoc)
@@ -110,6 +184,7 @@ public class ReceptacleContextManager implements
 	public void setTarget(IContextManagerInterface targetComponent, String targetPath) {
 		//logger.debug("setting target to:"+targetPath);
 		this.targetPath = targetPath;
+		this.tracePoints = createTracePoints(targetPath);
 		
 		this.target = targetComponent;
 	}
@@ -117,6 +192,7 @@ public class ReceptacleContextManager implements
 	@Override
 	public void setCallback(String cbPath) {
 		this.callbackPath = cbPath;
+		this.callContexts = createCallContexts(cbPath);
 	}
 
 }
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jlcf.core.annotation.AnyShard;
+import org.jlcf.core.annotation.ShardKey;
+
+/**
+ * Routes the calls to the shards of a sharded component. 
+ * The key of a call is the argument annotated with {@link ShardKey} on the interface method. 
+ * The keys are mapped to the shards through a consistent hash ring in which every shard owns 
+ * several points, so the keys are spread evenly and most keys keep their shard when the number
+ * of shards changes.
+ * Methods without a key must be marked with {@link AnyShard}, they are served by the shards in turn.
+ * 
+ * @author Petros Pissias
+ *
+ */
+class ShardRouter {
+
+	//points of each shard on the ring
+	private static final int POINTS_PER_SHARD = 64;
+	
+	//the positions of the points on the ring, sorted
+	private final long[] ring;
+	
+	//the shard that owns each point of the ring
+	private final int[] owners;
+	
+	//the index of the key argument of each method, NO_KEY if the method has no key
+	private final ConcurrentMap<Method, Integer> keyArguments = new ConcurrentHashMap<Method, Integer>();
+	
+	private static final Integer NO_KEY = Integer.valueOf(-1);
+	
+	/**
+	 * creates a new router
+	 * @param shards the number of shards
+	 */
+	ShardRouter(int shards) {
+		int points = shards * POINTS_PER_SHARD;
+		long[] positions = new long[points];
+		for (int shard=0 ; shard<shards ; shard++) {
+			for (int i=0 ; i<POINTS_PER_SHARD ; i++) {
+				//the position depends only on the shard and the point, so it does not change with the number of shards
+				positions[shard * POINTS_PER_SHARD + i] = mix(((long)shard << 32) | i);
+			}
+		}
+		
+		//sort the points and keep their owners
+		long[] sorted = positions.clone();
+		Arrays.sort(sorted);
+		ring = sorted;
+		owners = new int[points];
+		for (int i=0 ; i<points ; i++) {
+			owners[Arrays.binarySearch(sorted, positions[i])] = i / POINTS_PER_SHARD;
+		}
+	}
+	
+	/**
+	 * returns the shard that owns the key of a call
+	 * @param m the interface method
+	 * @param arguments the arguments of the call
+	 * @return the index of the shard, -1 if the method has no key argument
+	 */
+	int route(Method m, Object[] arguments) {
+		int keyArgument = getKeyArgument(m);
+		if (keyArgument < 0) {
+			return -1;
+		}
+		Object key = arguments[keyArgument];
+		return getShard(key == null ? 0 : key.hashCode());
+	}
+	
+	/**
+	 * returns the shard that owns a key
+	 * @param keyHash the hash code of the key
+	 * @return the index of the shard
+	 */
+	int getShard(int keyHash) {
+		long position = mix(keyHash);
+		int point = Arrays.binarySearch(ring, position);
+		if (point < 0) {
+			//the first point after the position, wrapping around the ring
+			point = -point - 1;
+			if (point == ring.length) {
+				point = 0;
+			}
+		}
+		return owners[point];
+	}
+	
+	/**
+	 * checks that every method of the interfaces of a sharded component has a key argument, 
+	 * or is marked to be served by any shard
+	 * @param componentName the name of the component
+	 * @param interfaces the interfaces of the component
+	 * @throws Exception in case a method has no key argument and is not marked with {@link AnyShard}
+	 */
+	static void checkKeys(String componentName, Class<?>[] interfaces) throws Exception {
+		for (Class<?> intf : interfaces) {
+			for (Method m : intf.getMethods()) {
+				if (findKeyArgument(m) < 0 && m.getAnnotation(AnyShard.class) == null) {
+					throw new Exception("method "+m.getName()+" of "+intf.getName()+" of the sharded component "+componentName
+							+" has no ShardKey argument and is not marked with AnyShard");
+				}
+			}
+		}
+	}
+	
+	private int getKeyArgument(Method m) {
+		Integer keyArgument = keyArguments.get(m);
+		if (keyArgument == null) {
+			int index = findKeyArgument(m);
+			keyArgument = index < 0 ? NO_KEY : Integer.valueOf(index);
+			keyArguments.put(m, keyArgument);
+		}
+		return keyArgument.intValue();
+	}
+	
+	//the index of the argument annotated with ShardKey, -1 if there is none
+	private static int findKeyArgument(Method m) {
+		Annotation[][] annotations = m.getParameterAnnotations();
+		for (int i=0 ; i<annotations.length ; i++) {
+			for (Annotation annotation : annotations[i]) {
+				if (annotation.annotationType().equals(ShardKey.class)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+	
+	//spreads the bits of a value over the ring (the finalizer of murmur3)
+	private static long mix(long value) {
+		long h = value;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
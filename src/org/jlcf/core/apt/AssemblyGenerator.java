@@ -0,0 +1,541 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.apt;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import org.jlcf.core.annotation.ContainerRef;
+import org.jlcf.core.annotation.InitMethod;
+import org.jlcf.core.annotation.Property;
+import org.jlcf.core.annotation.Receptacle;
+import org.jlcf.core.types.xml.Application;
+import org.jlcf.core.types.xml.Component;
+import org.jlcf.core.types.xml.Interface;
+
+/**
+ * Generates the source of an application assembly.
+ * The rules for component constructors are the same as the ones the container
+ * applies at runtime with reflection, violations are reported as compilation errors.
+ * 
+ * @author Petros Pissias
+ *
+ */
+class AssemblyGenerator {
+
+	private final ProcessingEnvironment env;
+	
+	//the application description
+	private final Application application;
+	
+	//package and simple name of the generated class
+	private final String packageName;
+	private final String simpleName;
+	
+	//counter for local variable names
+	private int variables;
+	
+	private boolean errors;
+	
+	AssemblyGenerator(ProcessingEnvironment env, Application application, String assemblyName) {
+		this.env = env;
+		this.application = application;
+		int dot = assemblyName.lastIndexOf('.');
+		packageName = dot < 0 ? null : assemblyName.substring(0, dot);
+		simpleName = assemblyName.substring(dot+1);
+	}
+	
+	boolean hasErrors() {
+		return errors;
+	}
+	
+	/**
+	 * generates the source of the assembly class
+	 * @return the java source
+	 * @throws Exception in case the description cannot be read
+	 */
+	String generate() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		if (packageName != null) {
+			sb.append("package ").append(packageName).append(";\n\n");
+		}
+		sb.append("/**\n * Application assembly of '").append(application.getApplicationName())
+			.append("', generated by ").append(JLCFApplicationProcessor.class.getName()).append(".\n */\n");
+		sb.append("@SuppressWarnings(\"all\")\n");
+		sb.append("public final class ").append(simpleName).append(" implements org.jlcf.core.IApplicationAssembly {\n\n");
+		
+		writeDescription(sb);
+		Map<String, String> factories = writeFactories(sb);
+		List<TypeElement> interfaces = getInterfaces();
+		writeEngine(sb, interfaces);
+		
+		sb.append("\tpublic org.jlcf.core.IComponentFactory getComponentFactory(String implementationClass) {\n");
+		for (String implementationClass : factories.keySet()) {
+			sb.append("\t\tif (").append(literal(implementationClass)).append(".equals(implementationClass)) {\n");
+			sb.append("\t\t\treturn new ").append(factories.get(implementationClass)).append("();\n\t\t}\n");
+		}
+		sb.append("\t\treturn null;\n\t}\n\n");
+		
+		writeApplicationClasses(sb);
+		
+		sb.append("\tpublic org.jlcf.core.invoke.IInvocationEngine getInvocationEngine() {\n");
+		sb.append("\t\treturn new Engine();\n\t}\n\n");
+		
+		//helpers of the factories
+		sb.append("\tprivate static String property(java.util.Map<String, String> properties, String name) throws Exception {\n");
+		sb.append("\t\tString value = properties.get(name);\n");
+		sb.append("\t\tif (value == null) {\n\t\t\tthrow new Exception(\"cannot find Property with name \"+name);\n\t\t}\n");
+		sb.append("\t\treturn value;\n\t}\n\n");
+		sb.append("\tprivate static Object receptacle(java.util.Map<String, Object> receptacles, String name) throws Exception {\n");
+		sb.append("\t\tObject value = receptacles.get(name);\n");
+		sb.append("\t\tif (value == null) {\n\t\t\tthrow new Exception(\"cannot find Receptacle with name\"+name);\n\t\t}\n");
+		sb.append("\t\treturn value;\n\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+	
+	/**
+	 * writes the application description as code, one method per component
+	 */
+	private void writeDescription(StringBuilder sb) throws Exception {
+		StringBuilder methods = new StringBuilder();
+		sb.append("\tpublic org.jlcf.core.types.xml.Application getApplicationDescription() {\n");
+		String app = writeObject(application, sb, methods, "Component");
+		sb.append("\t\treturn ").append(app).append(";\n\t}\n\n");
+		sb.append(methods);
+	}
+	
+	/**
+	 * writes the statements that create a description object and returns the name of the variable.
+	 * Elements of the list property splitListName are created in separate methods.
+	 */
+	private String writeObject(Object o, StringBuilder sb, StringBuilder methods, String splitListName) throws Exception {
+		String type = o.getClass().getName();
+		String var = "o"+(variables++);
+		sb.append("\t\t").append(type).append(" ").append(var).append(" = new ").append(type).append("();\n");
+		for (Field field : o.getClass().getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			field.setAccessible(true);
+			Object value = field.get(o);
+			if (value == null) {
+				continue;
+			}
+			String property = field.getName().startsWith("_") ? field.getName().substring(1) : field.getName();
+			property = Character.toUpperCase(property.charAt(0))+property.substring(1);
+			
+			if (value instanceof List) {
+				int i = 0;
+				for (Object item : (List<?>)value) {
+					String itemValue;
+					if (property.equals(splitListName)) {
+						//separate method, keeps the generated methods small
+						String method = "create"+property+(i++);
+						StringBuilder body = new StringBuilder();
+						body.append("\tprivate static ").append(item.getClass().getName()).append(" ").append(method).append("() {\n");
+						String itemVar = writeObject(item, body, methods, null);
+						body.append("\t\treturn ").append(itemVar).append(";\n\t}\n\n");
+						methods.append(body);
+						itemValue = method+"()";
+					} else {
+						itemValue = isSimple(item) ? simpleValue(item) : writeObject(item, sb, methods, null);
+					}
+					sb.append("\t\t").append(var).append(".get").append(property).append("().add(").append(itemValue).append(");\n");
+				}
+			} else {
+				String fieldValue = isSimple(value) ? simpleValue(value) : writeObject(value, sb, methods, null);
+				sb.append("\t\t").append(var).append(".set").append(property).append("(").append(fieldValue).append(");\n");
+			}
+		}
+		return var;
+	}
+	
+	private static boolean isSimple(Object value) {
+		return value instanceof String || value instanceof Number || value instanceof Boolean;
+	}
+	
+	private static String simpleValue(Object value) {
+		if (value instanceof String) {
+			return literal((String)value);
+		} else if (value instanceof Long) {
+			return "Long.valueOf("+value+"L)";
+		} else {
+			return value.getClass().getSimpleName()+".valueOf("+literal(value.toString())+")";
+		}
+	}
+	
+	/**
+	 * writes one factory class per component implementation class.
+	 * Classes that the assembly cannot name, because they or the parameters of their constructor are not public,
+	 * have no factory, the container instantiates them with reflection.
+	 * @return implementation class -> factory class name
+	 */
+	private Map<String, String> writeFactories(StringBuilder sb) {
+		Map<String, String> factories = new LinkedHashMap<String, String>();
+		for (Component component : application.getComponent()) {
+			String implementationClass = component.getImplementationClass();
+			if (factories.containsKey(implementationClass)) {
+				continue;
+			}
+			TypeElement type = env.getElementUtils().getTypeElement(implementationClass.replace('$', '.'));
+			if (type == null) {
+				error("cannot find component implementation class "+implementationClass);
+				continue;
+			}
+			String arguments = getConstructorArguments(type);
+			if (!isAccessible(type) || !hasAccessibleConstructor(type)) {
+				continue;
+			}
+			String factory = "Factory"+factories.size();
+			factories.put(implementationClass, factory);
+			
+			String typeName = env.getTypeUtils().erasure(type.asType()).toString();
+			sb.append("\tprivate static final class ").append(factory).append(" implements org.jlcf.core.IComponentFactory {\n");
+			sb.append("\t\tpublic Object newInstance(java.util.Map<String, Object> receptacles, java.util.Map<String, String> properties, org.jlcf.core.IJLCFContainer container) throws Exception {\n");
+			sb.append("\t\t\treturn new ").append(typeName).append("(").append(arguments).append(");\n\t\t}\n");
+			sb.append("\t\tpublic void callInitMethod(Object pojo) {\n");
+			ExecutableElement initMethod = getInitMethod(type);
+			if (initMethod != null) {
+				sb.append("\t\t\ttry {\n");
+				sb.append("\t\t\t\t((").append(typeName).append(") pojo).").append(initMethod.getSimpleName()).append("();\n");
+				sb.append("\t\t\t} catch (Exception e) {\n");
+				sb.append("\t\t\t\t//same as the reflective init call, exceptions of the init method are ignored\n");
+				sb.append("\t\t\t}\n");
+			}
+			sb.append("\t\t}\n\t}\n\n");
+		}
+		return factories;
+	}
+	
+	/**
+	 * writes the lookup of the application classes by name, so that the container does not have to load them by name.
+	 * Only public classes are written, the container loads the others by name.
+	 */
+	private void writeApplicationClasses(StringBuilder sb) {
+		Set<String> names = new LinkedHashSet<String>();
+		for (Component component : application.getComponent()) {
+			names.add(component.getImplementationClass());
+			for (Interface intf : component.getInterface()) {
+				names.add(intf.getType());
+				addInterceptorTypes(names, intf.getInterceptor());
+			}
+			for (org.jlcf.core.types.xml.Receptacle receptacle : component.getReceptacle()) {
+				String type = receptacle.getReference().getType();
+				if (type != null && !type.equals("")) {
+					names.add(type);
+				}
+				addInterceptorTypes(names, receptacle.getInterceptor());
+			}
+		}
+		
+		sb.append("\tpublic Class<?> getApplicationClass(String className) {\n");
+		for (String name : names) {
+			TypeElement type = env.getElementUtils().getTypeElement(name.replace('$', '.'));
+			if (type == null || !isAccessible(type)) {
+				continue;
+			}
+			sb.append("\t\tif (").append(literal(env.getElementUtils().getBinaryName(type).toString())).append(".equals(className)) {\n");
+			sb.append("\t\t\treturn ").append(env.getTypeUtils().erasure(type.asType())).append(".class;\n\t\t}\n");
+		}
+		sb.append("\t\treturn null;\n\t}\n\n");
+	}
+	
+	private static void addInterceptorTypes(Set<String> names, List<org.jlcf.core.types.xml.Interceptor> interceptors) {
+		for (org.jlcf.core.types.xml.Interceptor interceptor : interceptors) {
+			names.add(interceptor.getType());
+		}
+	}
+	
+	/**
+	 * returns true if the type and all its enclosing types are public
+	 */
+	private static boolean isAccessible(TypeElement type) {
+		Element element = type;
+		while (element instanceof TypeElement) {
+			if (!element.getModifiers().contains(javax.lang.model.element.Modifier.PUBLIC)) {
+				return false;
+			}
+			element = element.getEnclosingElement();
+		}
+		return true;
+	}
+	
+	/**
+	 * returns true if the type can be named in the assembly, primitive types, public classes and arrays of them
+	 */
+	private boolean isAccessible(TypeMirror type) {
+		TypeMirror erased = env.getTypeUtils().erasure(type);
+		if (erased.getKind() == TypeKind.ARRAY) {
+			return isAccessible(((ArrayType)erased).getComponentType());
+		} else if (erased.getKind() == TypeKind.DECLARED) {
+			return isAccessible((TypeElement)((DeclaredType)erased).asElement());
+		}
+		return erased.getKind().isPrimitive();
+	}
+	
+	/**
+	 * returns true if the parameters of the public constructors of a component are accessible
+	 */
+	private boolean hasAccessibleConstructor(TypeElement type) {
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getModifiers().contains(javax.lang.model.element.Modifier.PUBLIC) && !hasAccessibleParameters(constructor)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * returns true if the types of all parameters of a method or constructor are accessible
+	 */
+	private boolean hasAccessibleParameters(ExecutableElement method) {
+		for (VariableElement param : method.getParameters()) {
+			if (!isAccessible(param.asType())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * returns the arguments of the single public constructor of a component
+	 */
+	private String getConstructorArguments(TypeElement type) {
+		List<ExecutableElement> constructors = new ArrayList<ExecutableElement>();
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getModifiers().contains(javax.lang.model.element.Modifier.PUBLIC)) {
+				constructors.add(constructor);
+			}
+		}
+		if (constructors.size() != 1) {
+			error(type.getQualifiedName()+" must have exactly one public constructor");
+			return "";
+		}
+		
+		StringBuilder args = new StringBuilder();
+		for (VariableElement param : constructors.get(0).getParameters()) {
+			if (args.length() > 0) {
+				args.append(", ");
+			}
+			String paramType = env.getTypeUtils().erasure(param.asType()).toString();
+			Property property = param.getAnnotation(Property.class);
+			Receptacle receptacle = param.getAnnotation(Receptacle.class);
+			if (property != null) {
+				String value = "property(properties, "+literal(property.name())+")";
+				if (paramType.equals("java.lang.String")) {
+					args.append(value);
+				} else if (paramType.equals("java.lang.Integer") || paramType.equals("java.lang.Float") 
+						|| paramType.equals("java.lang.Double") || paramType.equals("java.lang.Boolean")) {
+					args.append(paramType).append(".valueOf(").append(value).append(")");
+				} else {
+					error(type.getQualifiedName()+" cannot cast value to type:"+paramType);
+				}
+			} else if (receptacle != null) {
+				args.append("(").append(paramType).append(") receptacle(receptacles, ").append(literal(receptacle.name())).append(")");
+			} else if (param.getAnnotation(ContainerRef.class) != null) {
+				args.append("(").append(paramType).append(") container");
+			} else {
+				error(type.getQualifiedName()+" parameter "+param.getSimpleName()+" is not Annotated properly. All constructor args must be annotated with Receptcle or Property");
+			}
+		}
+		return args.toString();
+	}
+	
+	/**
+	 * returns the public method annotated as init method, if any
+	 */
+	private ExecutableElement getInitMethod(TypeElement type) {
+		for (ExecutableElement method : ElementFilter.methodsIn(env.getElementUtils().getAllMembers(type))) {
+			if (method.getAnnotation(InitMethod.class) != null && method.getModifiers().contains(javax.lang.model.element.Modifier.PUBLIC)) {
+				return method;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * returns all interfaces of the application and the interfaces they extend
+	 */
+	private List<TypeElement> getInterfaces() {
+		Set<String> names = new LinkedHashSet<String>();
+		for (Component component : application.getComponent()) {
+			for (Interface intf : component.getInterface()) {
+				names.add(intf.getType());
+			}
+			for (org.jlcf.core.types.xml.Receptacle receptacle : component.getReceptacle()) {
+				String type = receptacle.getReference().getType();
+				if (type != null && !type.equals("")) {
+					names.add(type);
+				}
+			}
+		}
+		
+		Set<TypeElement> interfaces = new LinkedHashSet<TypeElement>();
+		List<TypeElement> pending = new ArrayList<TypeElement>();
+		for (String name : names) {
+			TypeElement intf = env.getElementUtils().getTypeElement(name.replace('$', '.'));
+			if (intf == null) {
+				error("cannot find interface "+name);
+			} else {
+				pending.add(intf);
+			}
+		}
+		while (!pending.isEmpty()) {
+			TypeElement intf = pending.remove(0);
+			if (interfaces.add(intf)) {
+				for (TypeMirror superInterface : intf.getInterfaces()) {
+					pending.add((TypeElement)((DeclaredType)superInterface).asElement());
+				}
+			}
+		}
+		return new ArrayList<TypeElement>(interfaces);
+	}
+	
+	/**
+	 * writes the invocation engine, with one direct-dispatch invoker class per interface.
+	 * Interfaces that are not public and methods with parameters that are not public are not written,
+	 * the engine resolves them with reflection.
+	 */
+	private void writeEngine(StringBuilder sb, List<TypeElement> interfaces) {
+		StringBuilder invokers = new StringBuilder();
+		StringBuilder registrations = new StringBuilder();
+		sb.append("\tprivate static final class Engine implements org.jlcf.core.invoke.IInvocationEngine {\n");
+		sb.append("\t\tprivate final org.jlcf.core.invoke.IInvocationEngine fallback = new org.jlcf.core.invoke.ReflectionInvocationEngine();\n");
+		sb.append("\t\tprivate final java.util.Map<java.lang.reflect.Method, org.jlcf.core.invoke.IMethodInvoker> invokers = new java.util.HashMap<java.lang.reflect.Method, org.jlcf.core.invoke.IMethodInvoker>();\n");
+		for (int i=0; i<interfaces.size(); i++) {
+			TypeElement intf = interfaces.get(i);
+			if (!isAccessible(intf)) {
+				continue;
+			}
+			String intfName = env.getTypeUtils().erasure(intf.asType()).toString();
+			String invoker = "Invoker"+i;
+			List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+			for (ExecutableElement method : ElementFilter.methodsIn(intf.getEnclosedElements())) {
+				if (!method.getModifiers().contains(javax.lang.model.element.Modifier.STATIC)
+						&& !method.getModifiers().contains(javax.lang.model.element.Modifier.PRIVATE)
+						&& hasAccessibleParameters(method)) {
+					methods.add(method);
+				}
+			}
+			
+			invokers.append("\tprivate static final class ").append(invoker).append(" implements org.jlcf.core.invoke.IMethodInvoker {\n");
+			invokers.append("\t\tprivate final int index;\n");
+			invokers.append("\t\t").append(invoker).append("(int index) {\n\t\t\tthis.index = index;\n\t\t}\n");
+			invokers.append("\t\tpublic Object invoke(Object target, Object[] args) throws Throwable {\n");
+			invokers.append("\t\t\tswitch (index) {\n");
+			for (int m=0; m<methods.size(); m++) {
+				ExecutableElement method = methods.get(m);
+				StringBuilder paramTypes = new StringBuilder();
+				StringBuilder call = new StringBuilder();
+				call.append("((").append(intfName).append(") target).").append(method.getSimpleName()).append("(");
+				List<? extends VariableElement> params = method.getParameters();
+				for (int p=0; p<params.size(); p++) {
+					TypeMirror paramType = env.getTypeUtils().erasure(params.get(p).asType());
+					paramTypes.append(", ").append(paramType).append(".class");
+					if (p > 0) {
+						call.append(", ");
+					}
+					call.append(argument(paramType, "args["+p+"]"));
+				}
+				call.append(")");
+				
+				registrations.append("\t\t\t\tinvokers.put(").append(intfName).append(".class.getMethod(").append(literal(method.getSimpleName().toString()))
+					.append(paramTypes).append("), new ").append(invoker).append("(").append(m).append("));\n");
+				invokers.append("\t\t\tcase ").append(m).append(":\n\t\t\t\t");
+				if (method.getReturnType().getKind() == TypeKind.VOID) {
+					invokers.append(call).append(";\n\t\t\t\treturn null;\n");
+				} else {
+					invokers.append("return ").append(call).append(";\n");
+				}
+			}
+			invokers.append("\t\t\tdefault:\n\t\t\t\tthrow new IllegalStateException(\"unknown method index \"+index);\n");
+			invokers.append("\t\t\t}\n\t\t}\n\t}\n\n");
+		}
+		sb.append("\t\tEngine() {\n");
+		if (registrations.length() > 0) {
+			sb.append("\t\t\ttry {\n").append(registrations);
+			sb.append("\t\t\t} catch (NoSuchMethodException e) {\n");
+			sb.append("\t\t\t\tthrow new IllegalStateException(\"application interfaces changed after the assembly was generated\", e);\n");
+			sb.append("\t\t\t}\n");
+		}
+		sb.append("\t\t}\n");
+		sb.append("\t\tpublic void prepare(java.util.Collection<Class<?>> interfaces) {\n\t\t}\n");
+		sb.append("\t\tpublic org.jlcf.core.invoke.IMethodInvoker createInvoker(java.lang.reflect.Method m) {\n");
+		sb.append("\t\t\torg.jlcf.core.invoke.IMethodInvoker invoker = invokers.get(m);\n");
+		sb.append("\t\t\treturn invoker != null ? invoker : fallback.createInvoker(m);\n\t\t}\n\t}\n\n");
+		sb.append(invokers);
+	}
+	
+	/**
+	 * returns the expression that converts a call argument to the parameter type
+	 */
+	private String argument(TypeMirror type, String arg) {
+		if (type.getKind().isPrimitive()) {
+			TypeElement boxed = env.getTypeUtils().boxedClass((PrimitiveType)type);
+			return "(("+boxed.getQualifiedName()+") "+arg+")."+type.toString()+"Value()";
+		} else {
+			return "("+type+") "+arg;
+		}
+	}
+	
+	/**
+	 * returns a java string literal
+	 */
+	private static String literal(String value) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20 || c > 0x7e) {
+					sb.append(String.format("\\u%04x", (int)c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append("\"").toString();
+	}
+	
+	private void error(String message) {
+		errors = true;
+		env.getMessager().printMessage(Kind.ERROR, message);
+	}
+}
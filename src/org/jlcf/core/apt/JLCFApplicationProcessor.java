@@ -0,0 +1,115 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.apt;
+
+import java.io.File;
+import java.io.Writer;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import org.jlcf.core.types.xml.Application;
+
+/**
+ * Annotation processor that generates an {@link org.jlcf.core.IApplicationAssembly}
+ * for an application description file at build time.
+ * 
+ * The generated assembly contains the application description, a factory for each component
+ * implementation class that calls its annotated constructor and init method directly, 
+ * the class literals of the application classes and an invocation engine with direct-dispatch 
+ * invokers for all application interfaces.
+ * The container can then load the application without reading the description file, without
+ * loading the application classes by name and without reflection on the component classes.
+ * The wiring itself is not generated: the container still creates the interceptors reflectively
+ * and connects the components with dynamic proxies, so the call sites of the invocation handlers
+ * see the same proxy classes as in an application loaded from a description file.
+ * 
+ * The processor runs in the compilation rounds that contain JLCF annotations, the sources
+ * of the application are expected to contain at least one annotated component.
+ * 
+ * The processor is enabled with two options:
+ * -Ajlcf.application=path of the application description file
+ * -Ajlcf.assembly=fully qualified name of the generated assembly class
+ * 
+ * @author Petros Pissias
+ *
+ */
+@SupportedAnnotationTypes("org.jlcf.core.annotation.*")
+@SupportedOptions({JLCFApplicationProcessor.OPTION_APPLICATION, JLCFApplicationProcessor.OPTION_ASSEMBLY})
+public class JLCFApplicationProcessor extends AbstractProcessor {
+
+	//the application description file
+	public static final String OPTION_APPLICATION = "jlcf.application";
+	
+	//the name of the generated assembly class
+	public static final String OPTION_ASSEMBLY = "jlcf.assembly";
+	
+	//the assembly is generated once, in the first round
+	private boolean generated = false;
+	
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		String applicationFile = processingEnv.getOptions().get(OPTION_APPLICATION);
+		if (generated || applicationFile == null || roundEnv.processingOver()) {
+			return false;
+		}
+		generated = true;
+		
+		String assemblyName = processingEnv.getOptions().get(OPTION_ASSEMBLY);
+		if (assemblyName == null || assemblyName.equals("")) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "option "+OPTION_ASSEMBLY+" is required with "+OPTION_APPLICATION);
+			return false;
+		}
+		
+		try {
+			//read the application description
+			Unmarshaller um = JAXBContext.newInstance(Application.class).createUnmarshaller();
+			Application application = (Application) um.unmarshal(new File(applicationFile));
+			
+			//generate the assembly
+			AssemblyGenerator generator = new AssemblyGenerator(processingEnv, application, assemblyName);
+			String source = generator.generate();
+			if (generator.hasErrors()) {
+				return false;
+			}
+			Writer writer = processingEnv.getFiler().createSourceFile(assemblyName).openWriter();
+			try {
+				writer.write(source);
+			} finally {
+				writer.close();
+			}
+		} catch (Exception e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "cannot generate application assembly for "+applicationFile+": "+e.getMessage());
+		}
+		
+		//the annotations are not claimed, other processors may use them
+		return false;
+	}
+
+}
@@ -16,16 +16,22 @@
 package org.jlcf.core.dynrec;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
+import org.jlcf.core.util.StripedCounter;
 
 /**
  * Component reconfiguration manager used in coordination with the
  * connector reconfiguration managers.
- * All methods are accessed after obtaining a reentrant lock so no synchronization is necessary
+ * 
+ * The calls in progress are counted by the component proxy in a striped counter. 
+ * The state is an atomic reference that only changes during a reconfiguration, 
+ * the counter is only summed to detect quiescence while a reconfiguration is pending.
+ * When there is no reconfiguration the state is IDLE or WORKING depending on the calls in progress.
  * @author Petros Pissias
  *
  */
@@ -36,16 +42,20 @@ public class ComponentProxyReconfigurationManager {
 	//list of state observers. only used during reconfiguration
 	private final List<IComponentStateReceiver> observers;
 	
-	//component state
-	private ComponentState componentState;
+	//component state. IDLE, WAITING or QUIESCENT. WORKING is derived from the pending calls
+	private final AtomicReference<ComponentState> componentState;
 	
-	//number of pending calls (calls currently being served by the component).
-	private volatile int pendingCalls;
+	//number of pending calls (calls currently being served by the component). maintained by the component proxy
+	private final StripedCounter pendingCalls;
 	
-	public ComponentProxyReconfigurationManager() {
-		observers = new ArrayList<IComponentStateReceiver>();
-		componentState = ComponentState.IDLE;
-		pendingCalls = 0;
+	/**
+	 * creates a new manager
+	 * @param pendingCalls the counter of the calls in progress, maintained by the component proxy
+	 */
+	public ComponentProxyReconfigurationManager(StripedCounter pendingCalls) {
+		observers = new CopyOnWriteArrayList<IComponentStateReceiver>();
+		componentState = new AtomicReference<ComponentState>(ComponentState.IDLE);
+		this.pendingCalls = pendingCalls;
 	}
 	
 	/**
@@ -57,120 +67,57 @@ public class ComponentProxyReconfigurationManager {
 	 */
 	public void receiveEvent(ComponentStateEvent event, Method m, Object[] args) {
 		//logger.debug("received event:"+event+" current state:"+componentState);
-		ComponentState initialState = componentState;
 		switch (event) {
 			case CALLING : {
-				pendingCalls++;
-
-				switch (componentState) {
-					
-					case IDLE : {
-						componentState = ComponentState.WORKING;
-						break;
-					}
-					case QUIESCENT : {
-						//logger.log(Level.FATAL,"received "+event+" message while in "+componentState+" state", new Throwable());
-						break;
-					}				
-					case WAITING : {
-						break;
-					}
-					case WORKING : {
-						break;
-					}
-				}
+				//calls are counted by the component proxy
 				break;
 			}
 			case FINISHED_CALLING : {
-				pendingCalls--;
-				switch (componentState) {
-				
-					case IDLE : {
-						//logger.log(Level.FATAL,"received "+event+" message while in "+componentState+" state", new Throwable());
-						break;
-					}
-					case QUIESCENT : {
-						//logger.log(Level.FATAL,"received "+event+" message while in "+componentState+" state", new Throwable());
-						break;
-					}				
-					case WAITING : {
-						if (pendingCalls == 0) {
-							//reached quiscent state
-							componentState = ComponentState.QUIESCENT;
-						}
-						break;
-					}
-					case WORKING : {
-						if (pendingCalls == 0) {
-							//reached quiscent state
-							componentState = ComponentState.IDLE;
-						}
-						break;
-					}
-				}					
+				//only relevant while waiting for the pending calls of a reconfiguration
+				if (componentState.get() == ComponentState.WAITING && pendingCalls.sum() == 0) {
+					//reached quiscent state
+					transit(ComponentState.WAITING, ComponentState.QUIESCENT);
+				}
 				break;
 			}
 			
 			case RECONFIGURATION_START : {
-				switch (componentState) {
-				
-					case IDLE : {
-						componentState = ComponentState.QUIESCENT;
-						break;
-					}
-					case QUIESCENT : {
-						//logger.log(Level.FATAL,"received "+event+" message while in "+componentState+" state", new Throwable());
-						break;
-					}				
-					case WAITING : {
-						//logger.log(Level.FATAL,"received "+event+" message while in "+componentState+" state", new Throwable());
-						break;
-					}
-					case WORKING : {
-						componentState = ComponentState.WAITING;
-						break;
-					}
-				}				
+				if (pendingCalls.sum() == 0) {
+					transit(ComponentState.IDLE, ComponentState.QUIESCENT);
+				} else {
+					transit(ComponentState.IDLE, ComponentState.WAITING);
+				}
 				break;
 			}
 			
 			case RECONFIGURATION_END : {
 				//clear the observers queue
 				//logger.debug("clearing observers list. currently contains:"+observers.toString());
-
 				observers.clear();
-				switch (componentState) {
-				
-					case IDLE : {
-						//logger.log(Level.FATAL,"received "+event+" message while in "+componentState+" state", new Throwable());
-						break;
-					}
-					case QUIESCENT : {
-						componentState = ComponentState.IDLE;
-						break;
-					}				
-					case WAITING : {
-						componentState = ComponentState.WORKING;
-						break;
-					}
-					case WORKING : {
-						//logger.log(Level.FATAL,"received "+event+" message while in "+componentState+" state", new Throwable());
-
-						break;
-					}
-				}				
+				if (!transit(ComponentState.QUIESCENT, ComponentState.IDLE)) {
+					transit(ComponentState.WAITING, ComponentState.IDLE);
+				}
 				break;
 			}			
 		}
-		
-		//inform observers (if any) of the new component state
-		if (initialState != componentState) {
-			for (IComponentStateReceiver manager : observers) {
-				//logger.debug("informing observer about state change :"+componentState+" observer:"+manager);
-				manager.receiveComponentExternalState(componentState);
-			}
+	}
+	
+	/**
+	 * changes the state if it is the expected one, and informs the observers (if any) of the new state
+	 * @param expected the expected state
+	 * @param newState the new state
+	 * @return true if the state changed
+	 */
+	private boolean transit(ComponentState expected, ComponentState newState) {
+		if (!componentState.compareAndSet(expected, newState)) {
+			//logger.log(Level.FATAL,"cannot change state from "+expected+" to "+newState+" while in "+componentState.get()+" state", new Throwable());
+			return false;
+		}
+		for (IComponentStateReceiver manager : observers) {
+			//logger.debug("informing observer about state change :"+newState+" observer:"+manager);
+			manager.receiveComponentExternalState(newState);
 		}
-		
+		return true;
 	}
 
 
@@ -189,6 +136,18 @@ public class ComponentProxyReconfigurationManager {
 	 */
 	public ComponentState getState() {
 		//logger.debug("returning external state of the component:"+componentState);
-		return componentState;
+		ComponentState state = componentState.get();
+		if (state == ComponentState.IDLE && pendingCalls.sum() > 0) {
+			return ComponentState.WORKING;
+		}
+		return state;
+	}
+	
+	/**
+	 * returns the number of calls currently served by the component
+	 * @return the number of pending calls
+	 */
+	public long getPendingCalls() {
+		return pendingCalls.sum();
 	}
 }
@@ -17,17 +17,24 @@ package org.jlcf.core.dynrec;
 
 import java.lang.reflect.Method;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.jlcf.core.IComponentProxy;
+import org.jlcf.core.util.LatencyHistogram;
 
 /**
  * connector that implements a timing based algorithm in 
  * order to selectively block calls.
+ * It is only used by calls that arrive while a reconfiguration is in progress,
+ * other calls only record their duration.
+ * 
+ * The durations are kept in a latency histogram per method. During a reconfiguration a call is blocked 
+ * when the latency of its method at the blocking percentile is larger than the time left.
  * @author Petros Pissias
  *
  */
@@ -35,13 +42,16 @@ public class ConnectorTimingBasedReconfigurationManager {
 
 	private final Logger logger = Logger.getLogger(getClass());
 	
-	//thread local data that hold accounting information about call times
-	private final ThreadLocal<Long> callInitTime;
+	//the default percentile of the method latencies that is used to decide if a call can finish in time
+	public static final double DEFAULT_BLOCKING_PERCENTILE = 99;
 	
-	//the average time for each method
-	private final Map <Method, Long> methodTimes;
+	//the latencies of each method
+	private final ConcurrentMap <Method, LatencyHistogram> methodTimes;
 	
-	//reconfiguration flag and timeframe and system time when the reconfiguration started
+	//the percentile of the method latencies that is used to decide if a call can finish in time
+	private final double blockingPercentile;
+	
+	//reconfiguration flag and timeframe and system time (nanoseconds) when the reconfiguration started
 	private volatile boolean reconfiguring;
 	private volatile long millis, reconfigurationStartTime;
 	
@@ -53,12 +63,17 @@ public class ConnectorTimingBasedReconfigurationManager {
 	private final ReentrantLock callBlocker;
 	
 	public ConnectorTimingBasedReconfigurationManager() {
-		callInitTime = new ThreadLocal<Long>() {
-			@Override
-			protected Long initialValue() {return Long.valueOf(0);};
-		};
-		//create map that maps average method times
-		methodTimes = Collections.synchronizedMap(new HashMap<Method, Long>());
+		this(DEFAULT_BLOCKING_PERCENTILE);
+	}
+	
+	/**
+	 * creates a new manager
+	 * @param blockingPercentile the percentile of the method latencies that is used to decide if a call can finish in time
+	 */
+	public ConnectorTimingBasedReconfigurationManager(double blockingPercentile) {
+		//create map that maps method latencies
+		methodTimes = new ConcurrentHashMap<Method, LatencyHistogram>();
+		this.blockingPercentile = blockingPercentile;
 		callBlocker = new ReentrantLock();
 	}
 	
@@ -66,21 +81,32 @@ public class ConnectorTimingBasedReconfigurationManager {
 	 * called before a call starts by the connector
 	 * @param m the method
 	 * @param args the method arguments
+	 * @return the component proxy handler that admitted the call. The caller holds its lock
 	 */
-	public void startCall(Method m, Object[] args) {
+	public IComponentProxy startCall(Method m, Object[] args) {
 		//logger.debug("connector reconfiguration manager procedding call to method:"+m.getName()+" previous statistics time:"+(methodTimes.get(m)==null?"no data":methodTimes.get(m)));
 		//get the lock. This will be released on the component proxy.
 		//the only other lock holder is the framework reconfiguration manager
 		//this is needed in order to register the call at the component proxy
 		//before the framework starts a reconfiguration, otherwise we might call a quiescent component
 		//logger.debug(" thread:"+Thread.currentThread().getName()+" obtaining lock");
-		componentProxyHandler.lock();
+		IComponentProxy proxyHandler = componentProxyHandler;
+		proxyHandler.lock();
+		
+		//the flag is read before checking the component proxy. The component proxy is replaced before 
+		//the flag is reset, so a component proxy that is still current cannot have been replaced in the meantime
+		boolean reconfiguringNow = reconfiguring;
+		if (proxyHandler != componentProxyHandler) {
+			//replaced by a reconfiguration while obtaining the lock
+			proxyHandler.unlock();
+			return startCall( m, args);
+		}
 		
-		if (reconfiguring) {
+		if (reconfiguringNow) {
 			//logger.debug("component reconfiguring");
 			//reconf algorithm. electively block calls based on the time it will take to complete the call
 			//get component state, we already have the component proxy lock
-			ComponentState externalState = componentProxyHandler.getExternalState();
+			ComponentState externalState = proxyHandler.getExternalState();
 			switch (externalState) {
 				case IDLE : {
 					//should never happen as component is reconfiguring
@@ -92,34 +118,34 @@ public class ConnectorTimingBasedReconfigurationManager {
 					//block the call
 					//first release the lock to the component proxy
 					//logger.debug(" thread:"+Thread.currentThread().getName()+" releasing lock");
-					componentProxyHandler.unlock();
+					proxyHandler.unlock();
 					callBlocker.lock();
 					//By now the reconfiguration has ended. release the call and proceed normally.
 					callBlocker.unlock();
 					//go back to the beginning in order to get the lock and the component state
-					startCall( m, args);
-					return;
+					return startCall( m, args);
 				}
 				case WAITING : {
 					//judge if we will release the lock
-					Long time = methodTimes.get(m);
-					if (time != null) {
+					LatencyHistogram latencies = methodTimes.get(m);
+					long time = latencies == null ? -1 : latencies.getPercentile(blockingPercentile);
+					if (time >= 0) {
 						//we have data
-						//logger.debug("method statistic time:"+time+" time left:"+(millis - (System.currentTimeMillis() - reconfigurationStartTime)));
-						if (time > (millis - (System.currentTimeMillis() - reconfigurationStartTime)) ) { //call does not have time to finish
+						long timeLeft = millis * 1000000 - (System.nanoTime() - reconfigurationStartTime);
+						//logger.debug("method statistic time:"+time+" time left:"+timeLeft);
+						if (time > timeLeft) { //call does not have time to finish
 							//logger.debug("component in "+externalState.toString()+" state, blocking because there is no time to complete the call");
 
 							//greater the time we have left
 							//block the call
 							//first release the lock to the component proxy
 							//logger.debug(" thread:"+Thread.currentThread().getName()+" releasing lock");
-							componentProxyHandler.unlock();
+							proxyHandler.unlock();
 							callBlocker.lock();
 							//By now the reconfiguration has ended. release the call and proceed normally.
 							callBlocker.unlock();
 							//go back to the beginning in order to get the lock and the component state
-							startCall( m, args);
-							return;
+							return startCall( m, args);
 						}else {
 							//logger.debug("component in "+externalState.toString()+" state, alowing call because there is time to complete the call");
 						}
@@ -133,19 +159,34 @@ public class ConnectorTimingBasedReconfigurationManager {
 				}				
 			}
 		}
-		callInitTime.set(System.currentTimeMillis());
+		return proxyHandler;
 	}
 
 	/**
 	 * called after a call has finished by the connector
 	 * @param m the method
-	 * @param args the method arguments
+	 * @param startTime the time the call started, from System.nanoTime()
+	 */
+	public void finishCall(Method m, long startTime) {
+		long now = System.nanoTime();
+		long callTime = now - startTime;
+		LatencyHistogram latencies = methodTimes.get(m);
+		if (latencies == null) {
+			LatencyHistogram newLatencies = new LatencyHistogram();
+			latencies = methodTimes.putIfAbsent(m, newLatencies);
+			if (latencies == null) {
+				latencies = newLatencies;
+			}
+		}
+		latencies.record(callTime, now);
+	}
+	
+	/**
+	 * returns the latency histograms of the methods called through this connector
+	 * @return method -> latencies in nanoseconds
 	 */
-	public void finishCall(Method m, Object[] args) {
-		long currTime = System.currentTimeMillis();
-		long startTime = callInitTime.get();
-		long callTime = currTime - startTime;
-		methodTimes.put(m, callTime);
+	public Map<Method, LatencyHistogram> getMethodLatencies() {
+		return Collections.unmodifiableMap(methodTimes);
 	}
 
 	/**
@@ -161,7 +202,7 @@ public class ConnectorTimingBasedReconfigurationManager {
 			
 		if (reconfiguring) { //reconfiguration starts. lock the lock so that we can block methods
 			//set the time when reconfiguration started
-			this.reconfigurationStartTime = System.currentTimeMillis();
+			this.reconfigurationStartTime = System.nanoTime();
 
 			//logger.debug("obtaining callblocker lock");
 			callBlocker.lock();
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.exception;
+
+/**
+ * Thrown to the caller when an interceptor refuses a call, for example because the 
+ * concurrency limit of the target interface has been reached.
+ * It is unchecked, as it may be thrown from any method of a receptacle.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class CallRejectedException extends RuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3871645301874026815L;
+
+	public CallRejectedException(String cause) {
+		super(cause);
+	}
+}
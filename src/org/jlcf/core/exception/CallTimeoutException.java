@@ -0,0 +1,36 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.exception;
+
+/**
+ * Thrown to the caller when a call does not complete before its deadline.
+ * The call may still be running in the target component.
+ * It is unchecked, as it may be thrown from any method of a receptacle.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class CallTimeoutException extends RuntimeException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 2215896043587210334L;
+
+	public CallTimeoutException(String cause) {
+		super(cause);
+	}
+}
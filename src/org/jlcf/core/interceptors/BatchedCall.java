@@ -0,0 +1,88 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+
+import org.jlcf.core.CallContextInformation;
+
+/**
+ * A void call that was buffered by a {@link BatchingInterceptor}.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public final class BatchedCall implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	//the method name and parameter types, Method is not serializable
+	private final String methodName;
+	private final Class<?>[] parameterTypes;
+	
+	//the arguments of the call
+	private final Object[] arguments;
+	
+	//the method, not kept when the call is serialized
+	private final transient Method method;
+	
+	//the call context of the caller, not kept when the call is serialized
+	private final transient CallContextInformation callContext;
+	
+	/**
+	 * creates a new call
+	 * @param method the method
+	 * @param arguments the arguments, null if the method has no arguments
+	 * @param callContext the call context of the caller, null for none
+	 */
+	BatchedCall(Method method, Object[] arguments, CallContextInformation callContext) {
+		this.method = method;
+		this.callContext = callContext;
+		this.methodName = method.getName();
+		this.parameterTypes = method.getParameterTypes();
+		this.arguments = arguments == null ? new Object[0] : arguments.clone();
+	}
+
+	/**
+	 * @return the method, null if the call was serialized
+	 */
+	public Method getMethod() {
+		return method;
+	}
+	
+	/**
+	 * @return the call context of the caller, null if the call has none or was serialized
+	 */
+	public CallContextInformation getCallContext() {
+		return callContext;
+	}
+	
+	public String getMethodName() {
+		return methodName;
+	}
+
+	public Class<?>[] getParameterTypes() {
+		return parameterTypes.clone();
+	}
+
+	/**
+	 * @return a copy of the arguments of the call
+	 */
+	public Object[] getArguments() {
+		return arguments.clone();
+	}
+}
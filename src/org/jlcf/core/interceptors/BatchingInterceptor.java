@@ -0,0 +1,305 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import org.jlcf.core.AroundInterceptor;
+import org.jlcf.core.CallContextInformation;
+import org.jlcf.core.Invocation;
+import org.jlcf.core.util.StripedCounter;
+
+/**
+ * Interceptor that batches calls of void methods.
+ * Calls of void methods return immediately to the caller and are buffered by the interceptor, 
+ * the buffered calls are delivered to the rest of the chain when the batch reaches batchSize calls 
+ * or flushMillis after the first buffered call, whichever comes first. The calls of a receptacle 
+ * are delivered in the order they were made.
+ * 
+ * If the receptacle interface extends {@link IBatchSink}, a batch is delivered with a single call 
+ * of {@link IBatchSink#deliverBatch(List)}, so that the cost of the rest of the chain, the connector 
+ * and the reconfiguration accounting is paid once per batch. Otherwise the buffered calls are 
+ * replayed to the rest of the chain one after the other.
+ * 
+ * Buffered calls are delivered with the call context (callback, deadline and trace) of their caller.
+ * Calls of methods that return a value are forwarded directly and are not ordered with the buffered calls.
+ * Exceptions of buffered calls cannot reach the caller, they are logged and counted and the last one is kept.
+ * Each interceptor has its own flusher thread, which terminates when no batch has been waiting for a while, 
+ * so an interceptor that is removed from its chain leaves no thread behind.
+ * The batched methods are selected with the methods attribute of the interceptor.
+ * 
+ * Properties:
+ * - batchSize: number of buffered calls that triggers a delivery (default 64)
+ * - flushMillis: maximum time in milliseconds that a call stays in the buffer (default 10)
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class BatchingInterceptor extends AroundInterceptor {
+
+	//property names
+	public static final String BATCH_SIZE = "batchSize";
+	public static final String FLUSH_MILLIS = "flushMillis";
+	
+	//default values
+	public static final int DEFAULT_BATCH_SIZE = 64;
+	public static final int DEFAULT_FLUSH_MILLIS = 10;
+	
+	private static final Logger logger = Logger.getLogger(BatchingInterceptor.class);
+	
+	//seconds after which an idle flusher thread terminates
+	private static final long FLUSHER_KEEP_ALIVE_SECONDS = 10;
+	
+	//numbers the flusher threads
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+	
+	//the deliverBatch method
+	private static final Method deliverBatchMethod;
+	
+	static {
+		try {
+			deliverBatchMethod = IBatchSink.class.getMethod("deliverBatch", List.class);
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	//the thresholds
+	private volatile int batchSize;
+	private volatile long flushMillis;
+	
+	//the buffered calls and the timed flush of the buffer, guarded by bufferLock
+	private final Object bufferLock = new Object();
+	private List<BatchedCall> buffer;
+	private ScheduledFuture<?> pendingFlush;
+	
+	//held while a batch is delivered, so that batches are delivered in order
+	private final Object deliveryLock = new Object();
+	
+	//delivers the buffer when the time threshold passes
+	private final Runnable timedFlush;
+	
+	//runs the timed flushes of this interceptor
+	private final ScheduledThreadPoolExecutor flusher;
+	
+	//statistics
+	private final StripedCounter bufferedCalls;
+	private final StripedCounter deliveredBatches;
+	private final AtomicLong failedCalls;
+	private volatile Throwable lastFailure;
+	
+	public BatchingInterceptor() {
+		batchSize = DEFAULT_BATCH_SIZE;
+		flushMillis = DEFAULT_FLUSH_MILLIS;
+		buffer = new ArrayList<BatchedCall>(batchSize);
+		bufferedCalls = new StripedCounter();
+		deliveredBatches = new StripedCounter();
+		failedCalls = new AtomicLong();
+		timedFlush = new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		};
+		flusher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JLCF batch flusher "+threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		flusher.setKeepAliveTime(FLUSHER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+		flusher.allowCoreThreadTimeOut(true);
+		//the timed flush of a batch that is delivered by size does not stay in the queue
+		flusher.setRemoveOnCancelPolicy(true);
+		pendingFlush = null;
+	}
+	
+	@Override
+	public void configure(Map<String, String> properties) throws Exception {
+		int size = InterceptorProperties.getIntProperty(properties, BATCH_SIZE, DEFAULT_BATCH_SIZE);
+		long millis = InterceptorProperties.getLongProperty(properties, FLUSH_MILLIS, DEFAULT_FLUSH_MILLIS);
+		if (size <= 0 || millis <= 0) {
+			throw new Exception("invalid batching properties "+properties);
+		}
+		batchSize = size;
+		flushMillis = millis;
+	}
+	
+	@Override
+	public Object around(Invocation invocation) throws Throwable {
+		Method method = invocation.getMethod();
+		if (method.getReturnType() != void.class || method.equals(deliverBatchMethod)) {
+			return invocation.proceed();
+		}
+		
+		BatchedCall call = new BatchedCall(method, invocation.getArguments(), invocation.getCallContext());
+		bufferedCalls.increment();
+		boolean full;
+		synchronized (bufferLock) {
+			buffer.add(call);
+			if (buffer.size() == 1) {
+				//first call of the batch, deliver it at the latest after flushMillis
+				pendingFlush = flusher.schedule(timedFlush, flushMillis, TimeUnit.MILLISECONDS);
+			}
+			full = buffer.size() >= batchSize;
+		}
+		if (full) {
+			//the caller that fills the batch delivers it
+			flush();
+		}
+		return null;
+	}
+	
+	/**
+	 * delivers the buffered calls to the rest of the chain. 
+	 * It can be called by the application, for example before it is stopped.
+	 */
+	public void flush() {
+		synchronized (deliveryLock) {
+			List<BatchedCall> batch;
+			synchronized (bufferLock) {
+				if (buffer.isEmpty()) {
+					return;
+				}
+				batch = buffer;
+				buffer = new ArrayList<BatchedCall>(batchSize);
+				//the timed flush belongs to the delivered batch, the next batch schedules its own
+				if (pendingFlush != null) {
+					pendingFlush.cancel(false);
+					pendingFlush = null;
+				}
+			}
+			deliver(batch);
+		}
+	}
+	
+	/**
+	 * delivers a batch, with a single call if the receptacle interface is an {@link IBatchSink}
+	 * @param batch the batch
+	 */
+	private void deliver(List<BatchedCall> batch) {
+		deliveredBatches.increment();
+		if (isBatchSink()) {
+			try {
+				proceed(getBatchContext(batch), deliverBatchMethod, new Object[] {Collections.unmodifiableList(batch)});
+			} catch (Throwable t) {
+				failed(t, batch.size());
+			}
+		} else {
+			for (BatchedCall call : batch) {
+				try {
+					proceed(call.getCallContext(), call.getMethod(), call.getArguments());
+				} catch (Throwable t) {
+					failed(t, 1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * returns the call context of a batch delivered with a single call. It is the context of the calls if they 
+	 * all have the same one, otherwise the batch carries only the earliest deadline of its calls.
+	 * @param batch the batch
+	 * @return the call context, null for none
+	 */
+	private static CallContextInformation getBatchContext(List<BatchedCall> batch) {
+		CallContextInformation first = batch.get(0).getCallContext();
+		boolean same = true;
+		long deadline = 0;
+		for (BatchedCall call : batch) {
+			CallContextInformation context = call.getCallContext();
+			same = same && context == first;
+			if (context != null && context.hasDeadline() 
+					&& (deadline == 0 || context.getDeadline() - deadline < 0)) {
+				deadline = context.getDeadline();
+			}
+		}
+		if (same) {
+			return first;
+		}
+		return deadline == 0 ? null : new CallContextInformation(deliverBatchMethod, null, deadline, 0);
+	}
+	
+	private boolean isBatchSink() {
+		Class<?>[] interfaces = getInterfaces();
+		if (interfaces != null) {
+			for (Class<?> intf : interfaces) {
+				if (IBatchSink.class.isAssignableFrom(intf)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private void failed(Throwable t, int calls) {
+		logger.log(Level.ERROR, calls+" batched call(s) failed", t);
+		lastFailure = t;
+		failedCalls.addAndGet(calls);
+	}
+	
+	/**
+	 * @return the number of calls that were buffered
+	 */
+	public long getBufferedCalls() {
+		return bufferedCalls.sum();
+	}
+	
+	/**
+	 * @return the number of batches that were delivered
+	 */
+	public long getDeliveredBatches() {
+		return deliveredBatches.sum();
+	}
+	
+	/**
+	 * @return the number of buffered calls that failed when they were delivered
+	 */
+	public long getFailedCalls() {
+		return failedCalls.get();
+	}
+	
+	/**
+	 * @return the exception of the last buffered call that failed, null if no call failed
+	 */
+	public Throwable getLastFailure() {
+		return lastFailure;
+	}
+	
+	/**
+	 * @return the number of calls that are waiting in the buffer
+	 */
+	public int getPendingCalls() {
+		synchronized (bufferLock) {
+			return buffer.size();
+		}
+	}
+}
@@ -0,0 +1,467 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jlcf.core.AroundInterceptor;
+import org.jlcf.core.Invocation;
+import org.jlcf.core.util.StripedCounter;
+
+/**
+ * Interceptor that caches the results of calls, for receptacles to components that answer pure lookups.
+ * Results are cached per method and argument values (compared with equals), calls that throw are not cached,
+ * and neither are void methods. The cached methods are selected with the methods attribute of the interceptor.
+ * 
+ * The cache is divided in segments, each one a small LRU map with its own lock. 
+ * Entries are evicted when a segment is full (least recently used first) or when they expire.
+ * The cache is flushed when the target component is replaced at runtime.
+ * 
+ * Optionally the cache has a second, off-heap tier: serializable results that are evicted from the heap tier 
+ * are serialized into slabs of direct memory ({@link OffHeapStore}). Results that are read again from the 
+ * off-heap tier are moved back to the heap tier.
+ * Evicted results are serialized by a demotion thread of the interceptor, not by the calling thread, 
+ * and the off-heap tier is striped like the heap tier. A result that is evicted while the demotion queue 
+ * is full is dropped. The demotion thread terminates when there is nothing to demote for a while.
+ * 
+ * Properties:
+ * - maxEntries: maximum number of cached results on the heap (default 1024)
+ * - ttlMillis: time to live of a cached result in milliseconds, 0 for no expiry (default 0)
+ * - segments: number of segments (default 16)
+ * - offHeapBytes: size of the off-heap tier in bytes, 0 for no off-heap tier (default 0)
+ * - slabBytes: size of the slabs of the off-heap tier in bytes (default 1048576)
+ * - promoteHits: reads of an off-heap result after which it is moved to the heap (default 2)
+ * 
+ * Cached results are returned to all callers, they should not be modified.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class CachingInterceptor extends AroundInterceptor {
+
+	//property names
+	public static final String MAX_ENTRIES = "maxEntries";
+	public static final String TTL_MILLIS = "ttlMillis";
+	public static final String SEGMENTS = "segments";
+	public static final String OFF_HEAP_BYTES = "offHeapBytes";
+	public static final String SLAB_BYTES = "slabBytes";
+	public static final String PROMOTE_HITS = "promoteHits";
+	
+	//default values
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+	public static final int DEFAULT_SEGMENTS = 16;
+	public static final int DEFAULT_SLAB_BYTES = 1024 * 1024;
+	public static final int DEFAULT_PROMOTE_HITS = 2;
+	
+	//evicted results waiting to be moved to the off-heap tier, further evicted results are dropped
+	private static final int MAX_PENDING_DEMOTIONS = 1024;
+	
+	//seconds after which an idle demotion thread terminates
+	private static final long DEMOTER_KEEP_ALIVE_SECONDS = 10;
+	
+	//numbers the demotion threads
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+	
+	//largest time to live whose expiry time can be compared with System.nanoTime(), about 146 years
+	private static final long MAX_TTL_MILLIS = Long.MAX_VALUE / 2 / 1000000L;
+	
+	//the segments of the cache, the length is a power of 2
+	private volatile CacheSegment[] segments;
+	
+	//time to live of the cached results in nanoseconds, 0 for no expiry
+	private volatile long ttlNanos;
+	
+	//the off-heap tier, null if the cache has no off-heap tier
+	private volatile OffHeapStore offHeap;
+	
+	//reads of an off-heap result after which it is moved to the heap
+	private volatile int promoteHits;
+	
+	//incremented when the cache is flushed. Results read or computed before a flush are not cached.
+	private final AtomicLong generation;
+	
+	//statistics
+	private final StripedCounter hits;
+	private final StripedCounter offHeapHits;
+	private final StripedCounter misses;
+	private final StripedCounter evictions;
+	
+	//serialized results moved to the off-heap tier and their total size, used to estimate the size of the heap tier
+	private final AtomicLong serializedValues;
+	private final AtomicLong serializedBytes;
+	
+	//moves evicted results to the off-heap tier
+	private final ThreadPoolExecutor demoter;
+	
+	public CachingInterceptor() {
+		generation = new AtomicLong();
+		hits = new StripedCounter();
+		offHeapHits = new StripedCounter();
+		misses = new StripedCounter();
+		evictions = new StripedCounter();
+		serializedValues = new AtomicLong();
+		serializedBytes = new AtomicLong();
+		demoter = new ThreadPoolExecutor(1, 1, DEMOTER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, 
+				new ArrayBlockingQueue<Runnable>(MAX_PENDING_DEMOTIONS), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JLCF cache demoter "+threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, new ThreadPoolExecutor.DiscardPolicy());
+		demoter.allowCoreThreadTimeOut(true);
+		ttlNanos = 0;
+		offHeap = null;
+		promoteHits = DEFAULT_PROMOTE_HITS;
+		segments = createSegments(DEFAULT_SEGMENTS, DEFAULT_MAX_ENTRIES);
+	}
+	
+	@Override
+	public void configure(Map<String, String> properties) throws Exception {
+		int maxEntries = InterceptorProperties.getIntProperty(properties, MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+		int segmentCount = InterceptorProperties.getIntProperty(properties, SEGMENTS, DEFAULT_SEGMENTS);
+		long ttlMillis = InterceptorProperties.getLongProperty(properties, TTL_MILLIS, 0);
+		long offHeapBytes = InterceptorProperties.getLongProperty(properties, OFF_HEAP_BYTES, 0);
+		int slabBytes = InterceptorProperties.getIntProperty(properties, SLAB_BYTES, DEFAULT_SLAB_BYTES);
+		int promote = InterceptorProperties.getIntProperty(properties, PROMOTE_HITS, DEFAULT_PROMOTE_HITS);
+		if (maxEntries <= 0 || segmentCount <= 0 || ttlMillis < 0 || offHeapBytes < 0 || slabBytes <= 0 || promote <= 0) {
+			throw new Exception("invalid cache properties "+properties);
+		}
+		//expiry times are compared with System.nanoTime() differences, longer times to live do not expire in practice
+		ttlNanos = Math.min(ttlMillis, MAX_TTL_MILLIS) * 1000000L;
+		promoteHits = promote;
+		CacheSegment[] newSegments = createSegments(segmentCount, maxEntries);
+		offHeap = offHeapBytes == 0 ? null : new OffHeapStore(offHeapBytes, (int)Math.min(slabBytes, offHeapBytes), newSegments.length, generation);
+		segments = newSegments;
+	}
+
+	@Override
+	public Object around(Invocation invocation) throws Throwable {
+		Method method = invocation.getMethod();
+		if (method.getReturnType() == void.class) {
+			return invocation.proceed();
+		}
+		
+		CallKey key = new CallKey(method, invocation.getArguments());
+		CacheSegment[] currentSegments = segments;
+		CacheSegment segment = currentSegments[key.hashCode() & (currentSegments.length - 1)];
+		
+		long now = System.nanoTime();
+		long callGeneration = generation.get();
+		CacheEntry entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+			if (entry != null && entry.expires != 0 && now - entry.expires >= 0) {
+				//expired
+				segment.remove(key);
+				evictions.increment();
+				entry = null;
+			}
+		}
+		if (entry != null) {
+			hits.increment();
+			return entry.value;
+		}
+		
+		OffHeapStore store = offHeap;
+		if (store != null) {
+			OffHeapStore.StoredValue stored = store.get(key, now, promoteHits);
+			if (stored != null) {
+				Object value = null;
+				boolean valid = true;
+				try {
+					value = deserialize(stored.data);
+				} catch (Exception e) {
+					//the class of the result changed, it is computed again
+					valid = false;
+				}
+				if (valid) {
+					offHeapHits.increment();
+					if (stored.promote) {
+						put(segment, key, new CacheEntry(value, stored.expires, callGeneration));
+					}
+					return value;
+				}
+			}
+		}
+		
+		misses.increment();
+		Object result = invocation.proceed();
+		
+		long ttl = ttlNanos;
+		//the expiry time of an expiring entry is odd, never 0
+		put(segment, key, new CacheEntry(result, ttl == 0 ? 0 : (System.nanoTime() + ttl) | 1, callGeneration));
+		return result;
+	}
+	
+	/**
+	 * puts an entry to the heap tier, if the cache was not flushed since the entry was read or computed.
+	 * The entry that is evicted, if any, is handed to the demotion thread.
+	 */
+	private void put(CacheSegment segment, CallKey key, CacheEntry entry) {
+		Map.Entry<CallKey, CacheEntry> evicted;
+		synchronized (segment) {
+			//checked under the lock, a flush increments the generation before it clears the segments
+			if (generation.get() != entry.generation) {
+				return;
+			}
+			segment.put(key, entry);
+			evicted = segment.evicted;
+			segment.evicted = null;
+		}
+		final OffHeapStore store = offHeap;
+		if (evicted != null && store != null && isSerializable(evicted.getValue().value)) {
+			final CallKey evictedKey = evicted.getKey();
+			final CacheEntry evictedEntry = evicted.getValue();
+			//dropped if the queue is full, it stays counted as evicted
+			demoter.execute(new Runnable() {
+				@Override
+				public void run() {
+					demote(store, evictedKey, evictedEntry);
+				}
+			});
+		}
+	}
+	
+	/**
+	 * serializes an evicted entry to the off-heap tier, called by the demotion thread
+	 */
+	private void demote(OffHeapStore store, CallKey key, CacheEntry entry) {
+		if (generation.get() != entry.generation) {
+			return;
+		}
+		byte[] data;
+		try {
+			data = serialize(entry.value);
+		} catch (Exception e) {
+			//the result holds objects that cannot be serialized, it is evicted
+			return;
+		}
+		serializedValues.incrementAndGet();
+		serializedBytes.addAndGet(data.length);
+		//the store checks the generation again under the lock of the stripe
+		if (store.put(key, data, entry.expires, entry.generation)) {
+			//moved, not evicted from the cache
+			evictions.decrement();
+		}
+	}
+	
+	private static boolean isSerializable(Object value) {
+		return value == null || value instanceof Serializable;
+	}
+	
+	private static byte[] serialize(Object value) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(value);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+	private static Object deserialize(byte[] data) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+	
+	@Override
+	public void targetReplaced() {
+		flush();
+	}
+	
+	/**
+	 * removes all cached results
+	 */
+	public void flush() {
+		generation.incrementAndGet();
+		for (CacheSegment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+		OffHeapStore store = offHeap;
+		if (store != null) {
+			store.clear();
+		}
+	}
+	
+	/**
+	 * @return the number of calls answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * @return the number of calls answered from the off-heap tier
+	 */
+	public long getOffHeapHits() {
+		return offHeapHits.sum();
+	}
+	
+	/**
+	 * @return the number of calls that were forwarded to the target
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * @return the number of results removed because the cache was full or they expired
+	 */
+	public long getEvictions() {
+		OffHeapStore store = offHeap;
+		return evictions.sum() + (store == null ? 0 : store.getEvictions());
+	}
+	
+	/**
+	 * @return the number of results in the off-heap tier
+	 */
+	public int getOffHeapSize() {
+		OffHeapStore store = offHeap;
+		return store == null ? 0 : store.getSize();
+	}
+	
+	/**
+	 * @return the bytes of the results in the off-heap tier
+	 */
+	public long getOffHeapBytes() {
+		OffHeapStore store = offHeap;
+		return store == null ? 0 : store.getUsedBytes();
+	}
+	
+	/**
+	 * @return the bytes of direct memory allocated by the off-heap tier
+	 */
+	public long getOffHeapAllocatedBytes() {
+		OffHeapStore store = offHeap;
+		return store == null ? 0 : store.getAllocatedBytes();
+	}
+	
+	/**
+	 * Estimates the bytes of the results in the heap tier, from the serialized size of the 
+	 * results that were moved to the off-heap tier.
+	 * @return the estimated bytes, 0 if no result was serialized yet
+	 */
+	public long getHeapBytesEstimate() {
+		long values = serializedValues.get();
+		return values == 0 ? 0 : getSize() * (serializedBytes.get() / values);
+	}
+	
+	/**
+	 * @return the number of results in the heap tier
+	 */
+	public int getSize() {
+		int size = 0;
+		for (CacheSegment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * creates the segments of the cache
+	 * @param segmentCount the requested number of segments, rounded up to a power of 2
+	 * @param maxEntries the maximum number of entries of the cache
+	 * @return the segments
+	 */
+	private CacheSegment[] createSegments(int segmentCount, int maxEntries) {
+		int count = 1;
+		while (count < segmentCount && count < maxEntries) {
+			count <<= 1;
+		}
+		CacheSegment[] newSegments = new CacheSegment[count];
+		for (int i=0 ; i<count ; i++) {
+			//the capacity is spread over the segments
+			newSegments[i] = new CacheSegment(Math.max(1, (maxEntries + count - 1 - i) / count), evictions);
+		}
+		return newSegments;
+	}
+	
+	/**
+	 * a cached result
+	 */
+	private static final class CacheEntry {
+		
+		//the result
+		private final Object value;
+		
+		//System.nanoTime() at which the entry expires, 0 if it does not expire
+		private final long expires;
+		
+		//generation of the cache when the result was read or computed
+		private final long generation;
+		
+		CacheEntry(Object value, long expires, long generation) {
+			this.value = value;
+			this.expires = expires;
+			this.generation = generation;
+		}
+	}
+	
+	/**
+	 * a segment of the cache, a LRU map. Accessed under its own lock.
+	 */
+	private static final class CacheSegment extends LinkedHashMap<CallKey, CacheEntry> {
+		
+		private static final long serialVersionUID = 1L;
+
+		//maximum entries of this segment
+		private final int capacity;
+		
+		//eviction counter of the cache
+		private final StripedCounter evictions;
+		
+		//the entry evicted by the last put, taken by the caller of put in order to move it to the off-heap tier
+		private Map.Entry<CallKey, CacheEntry> evicted;
+		
+		CacheSegment(int capacity, StripedCounter evictions) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+			this.evictions = evictions;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CallKey, CacheEntry> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				evicted = new AbstractMap.SimpleImmutableEntry<CallKey, CacheEntry>(eldest);
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Identifies a call by its method and argument values (compared with equals, arrays by their elements).
+ * Used as key by the interceptors that answer equal calls with the same result.
+ * 
+ * @author Petros Pissias
+ *
+ */
+final class CallKey {
+	
+	private final Method method;
+	private final Object[] arguments;
+	private final int hash;
+	
+	/**
+	 * creates a new key
+	 * @param method the method
+	 * @param arguments the arguments, copied as the rest of the chain may modify the array
+	 */
+	CallKey(Method method, Object[] arguments) {
+		this.method = method;
+		this.arguments = arguments.clone();
+		int h = method.hashCode() * 31 + Arrays.deepHashCode(this.arguments);
+		//spread the bits, the low bits select segments
+		this.hash = h ^ (h >>> 16);
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof CallKey)) {
+			return false;
+		}
+		CallKey other = (CallKey)o;
+		return hash == other.hash && method.equals(other.method) && Arrays.deepEquals(arguments, other.arguments);
+	}
+}
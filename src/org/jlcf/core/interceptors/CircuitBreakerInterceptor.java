@@ -0,0 +1,427 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jlcf.core.AroundInterceptor;
+import org.jlcf.core.CircuitBreakerState;
+import org.jlcf.core.Invocation;
+import org.jlcf.core.exception.CallRejectedException;
+import org.jlcf.core.util.StripedCounter;
+
+/**
+ * Circuit breaker interceptor. It stops calling a target that fails or is slow, so that the 
+ * threads of the callers do not pile up on it.
+ * 
+ * The outcomes of the last windowSize calls are kept in a ring buffer. When at least minimumCalls 
+ * outcomes are recorded and the rate of failed calls or the rate of slow calls reaches its threshold 
+ * the circuit opens: calls do not reach the target and return the fallback. After openMillis the 
+ * circuit becomes half-open and lets halfOpenCalls calls through as probes. If all the probes succeed 
+ * the circuit closes, if a probe fails the circuit opens again. If the probes have not decided within openMillis,
+ * for example because a probe hangs in the target, the circuit opens again and the probes of that half-open 
+ * period no longer count.
+ * A call fails when it throws an exception, and is slow when it takes at least slowCallMillis.
+ * The circuit is closed when the target component is replaced at runtime.
+ * 
+ * The state is changed with compare and set operations, calls are never blocked by the breaker.
+ * The state of the breaker of a receptacle or component interface is available through 
+ * {@link org.jlcf.core.IJLCFContainer#getCircuitBreakerState(String)}.
+ * 
+ * Properties:
+ * - windowSize: number of recorded outcomes (default 100)
+ * - minimumCalls: number of outcomes needed before the circuit can open (default 20)
+ * - failureRateThreshold: percentage of failed calls that opens the circuit (default 50)
+ * - slowCallMillis: duration of a slow call in milliseconds, 0 to not track slow calls (default 0)
+ * - slowCallRateThreshold: percentage of slow calls that opens the circuit (default 100)
+ * - openMillis: time in milliseconds that the circuit stays open (default 5000)
+ * - halfOpenCalls: number of probe calls in the half-open state (default 5)
+ * - fallback: throw to throw a {@link CallRejectedException}, default to return the default value of the 
+ *   return type, or the name of a class implementing the receptacle interface that serves the calls (default throw).
+ *   The class needs a public constructor without arguments, and an interceptor whose fallback class does not 
+ *   implement the interface of its receptacle is rejected when it is configured.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class CircuitBreakerInterceptor extends AroundInterceptor {
+
+	//property names
+	public static final String WINDOW_SIZE = "windowSize";
+	public static final String MINIMUM_CALLS = "minimumCalls";
+	public static final String FAILURE_RATE_THRESHOLD = "failureRateThreshold";
+	public static final String SLOW_CALL_MILLIS = "slowCallMillis";
+	public static final String SLOW_CALL_RATE_THRESHOLD = "slowCallRateThreshold";
+	public static final String OPEN_MILLIS = "openMillis";
+	public static final String HALF_OPEN_CALLS = "halfOpenCalls";
+	public static final String FALLBACK = "fallback";
+	
+	//values of the fallback property
+	public static final String FALLBACK_THROW = "throw";
+	public static final String FALLBACK_DEFAULT = "default";
+	
+	//default values
+	public static final int DEFAULT_WINDOW_SIZE = 100;
+	public static final int DEFAULT_MINIMUM_CALLS = 20;
+	public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+	public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 100;
+	public static final int DEFAULT_OPEN_MILLIS = 5000;
+	public static final int DEFAULT_HALF_OPEN_CALLS = 5;
+	
+	//the states, indexed by ordinal
+	private static final CircuitBreakerState[] states = CircuitBreakerState.values();
+	
+	//flags of the recorded outcomes, 0 is an empty slot
+	private static final int RECORDED = 1;
+	private static final int FAILED = 2;
+	private static final int SLOW = 4;
+	
+	//the configuration
+	private volatile int minimumCalls;
+	private volatile int failureRateThreshold;
+	private volatile long slowCallNanos;
+	private volatile int slowCallRateThreshold;
+	private volatile long openNanos;
+	private volatile int halfOpenCalls;
+	
+	//the fallback object, null to throw or return the default value
+	private volatile Object fallback;
+	private volatile boolean fallbackDefault;
+	
+	//the outcomes of the last calls, and the number of recorded, failed and slow outcomes in the buffer
+	private volatile AtomicIntegerArray outcomes;
+	private final AtomicLong nextOutcome;
+	private final AtomicInteger recordedCalls;
+	private final AtomicInteger failedCalls;
+	private final AtomicInteger slowCalls;
+	
+	//the state of the circuit, the ordinal of a CircuitBreakerState
+	private final AtomicInteger state;
+	
+	//the time the circuit opened
+	private volatile long openedAt;
+	
+	//the time the circuit became half-open, it also identifies the half-open period of a probe
+	private volatile long halfOpenedAt;
+	
+	//the probes of the half-open state that can still start and the ones that succeeded
+	private final AtomicInteger probePermits;
+	private final AtomicInteger probeSuccesses;
+	
+	//statistics
+	private final StripedCounter rejected;
+	private final AtomicLong stateChanges;
+	private volatile long lastStateChange;
+	
+	public CircuitBreakerInterceptor() {
+		nextOutcome = new AtomicLong();
+		recordedCalls = new AtomicInteger();
+		failedCalls = new AtomicInteger();
+		slowCalls = new AtomicInteger();
+		state = new AtomicInteger(CircuitBreakerState.CLOSED.ordinal());
+		probePermits = new AtomicInteger();
+		probeSuccesses = new AtomicInteger();
+		rejected = new StripedCounter();
+		stateChanges = new AtomicLong();
+		lastStateChange = System.currentTimeMillis();
+		outcomes = new AtomicIntegerArray(DEFAULT_WINDOW_SIZE);
+		minimumCalls = DEFAULT_MINIMUM_CALLS;
+		failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+		slowCallNanos = 0;
+		slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+		openNanos = DEFAULT_OPEN_MILLIS * 1000000L;
+		halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+		fallback = null;
+		fallbackDefault = false;
+	}
+	
+	@Override
+	public void configure(Map<String, String> properties) throws Exception {
+		int windowSize = InterceptorProperties.getIntProperty(properties, WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
+		int minimum = InterceptorProperties.getIntProperty(properties, MINIMUM_CALLS, DEFAULT_MINIMUM_CALLS);
+		int failureRate = InterceptorProperties.getIntProperty(properties, FAILURE_RATE_THRESHOLD, DEFAULT_FAILURE_RATE_THRESHOLD);
+		long slowMillis = InterceptorProperties.getLongProperty(properties, SLOW_CALL_MILLIS, 0);
+		int slowRate = InterceptorProperties.getIntProperty(properties, SLOW_CALL_RATE_THRESHOLD, DEFAULT_SLOW_CALL_RATE_THRESHOLD);
+		long openMillis = InterceptorProperties.getLongProperty(properties, OPEN_MILLIS, DEFAULT_OPEN_MILLIS);
+		int probes = InterceptorProperties.getIntProperty(properties, HALF_OPEN_CALLS, DEFAULT_HALF_OPEN_CALLS);
+		String fallbackName = InterceptorProperties.getStringProperty(properties, FALLBACK, FALLBACK_THROW);
+		if (windowSize <= 0 || minimum <= 0 || minimum > windowSize || failureRate <= 0 || failureRate > 100 
+				|| slowMillis < 0 || slowRate <= 0 || slowRate > 100 || openMillis < 0 || probes <= 0) {
+			throw new Exception("invalid circuit breaker properties "+properties);
+		}
+		
+		Object fallbackObject = null;
+		if (!fallbackName.equals(FALLBACK_THROW) && !fallbackName.equals(FALLBACK_DEFAULT)) {
+			fallbackObject = Class.forName(fallbackName).getDeclaredConstructor().newInstance();
+			checkFallback(fallbackObject, getInterfaces());
+		}
+		
+		minimumCalls = minimum;
+		failureRateThreshold = failureRate;
+		slowCallNanos = slowMillis * 1000000L;
+		slowCallRateThreshold = slowRate;
+		openNanos = openMillis * 1000000L;
+		halfOpenCalls = probes;
+		fallback = fallbackObject;
+		fallbackDefault = fallbackName.equals(FALLBACK_DEFAULT);
+		outcomes = new AtomicIntegerArray(windowSize);
+		recordedCalls.set(0);
+		failedCalls.set(0);
+		slowCalls.set(0);
+	}
+	
+	@Override
+	public Object around(Invocation invocation) throws Throwable {
+		CircuitBreakerState current = getState();
+		if (current == CircuitBreakerState.OPEN) {
+			if (System.nanoTime() - openedAt < openNanos || !transition(CircuitBreakerState.OPEN, CircuitBreakerState.HALF_OPEN)) {
+				return reject(invocation);
+			}
+			current = CircuitBreakerState.HALF_OPEN;
+		}
+		if (current == CircuitBreakerState.HALF_OPEN) {
+			return probe(invocation);
+		}
+		
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Object result = invocation.proceed();
+			failed = false;
+			return result;
+		} finally {
+			record(failed, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * forwards a call in the half-open state if it can be a probe
+	 * @param invocation the call
+	 * @return the return of the call
+	 * @throws Throwable the exception of the call
+	 */
+	private Object probe(Invocation invocation) throws Throwable {
+		if (probePermits.decrementAndGet() < 0) {
+			//all probes are running, they must decide in time
+			if (System.nanoTime() - halfOpenedAt >= openNanos) {
+				transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.OPEN);
+			}
+			return reject(invocation);
+		}
+		//read after the permit, the permits are set after the start of the period
+		long period = halfOpenedAt;
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Object result = invocation.proceed();
+			failed = false;
+			return result;
+		} finally {
+			//a probe that outlived its period does not count
+			if (halfOpenedAt == period) {
+				if (failed || isSlow(System.nanoTime() - start)) {
+					transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.OPEN);
+				} else if (probeSuccesses.incrementAndGet() == halfOpenCalls) {
+					transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.CLOSED);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * records the outcome of a call in the closed state, and opens the circuit if a threshold is reached
+	 * @param failed true if the call threw an exception
+	 * @param nanos the duration of the call
+	 */
+	private void record(boolean failed, long nanos) {
+		int outcome = RECORDED;
+		if (failed) {
+			outcome |= FAILED;
+		}
+		if (isSlow(nanos)) {
+			outcome |= SLOW;
+		}
+		AtomicIntegerArray buffer = outcomes;
+		int index = (int)(nextOutcome.getAndIncrement() % buffer.length());
+		int replaced = buffer.getAndSet(index, outcome);
+		
+		//only the difference with the replaced outcome changes the counts
+		int recorded = (replaced & RECORDED) == 0 ? recordedCalls.incrementAndGet() : recordedCalls.get();
+		int failures = count(failedCalls, replaced, outcome, FAILED);
+		int slow = count(slowCalls, replaced, outcome, SLOW);
+		
+		if (recorded >= minimumCalls && (failed || (outcome & SLOW) != 0)
+				&& (failures * 100 >= failureRateThreshold * recorded || slow * 100 >= slowCallRateThreshold * recorded)) {
+			transition(CircuitBreakerState.CLOSED, CircuitBreakerState.OPEN);
+		}
+	}
+	
+	private static int count(AtomicInteger counter, int replaced, int outcome, int flag) {
+		int delta = ((outcome & flag) == 0 ? 0 : 1) - ((replaced & flag) == 0 ? 0 : 1);
+		return delta == 0 ? counter.get() : counter.addAndGet(delta);
+	}
+	
+	private boolean isSlow(long nanos) {
+		long limit = slowCallNanos;
+		return limit > 0 && nanos >= limit;
+	}
+	
+	/**
+	 * changes the state of the circuit
+	 * @param from the expected state
+	 * @param to the new state
+	 * @return true if the state was changed by this call
+	 */
+	private boolean transition(CircuitBreakerState from, CircuitBreakerState to) {
+		if (!state.compareAndSet(from.ordinal(), to.ordinal())) {
+			return false;
+		}
+		switch (to) {
+			case OPEN:
+				openedAt = System.nanoTime();
+				probePermits.set(0);
+				break;
+			case HALF_OPEN:
+				halfOpenedAt = System.nanoTime();
+				probeSuccesses.set(0);
+				probePermits.set(halfOpenCalls);
+				break;
+			default:
+				clearOutcomes();
+				break;
+		}
+		stateChanges.incrementAndGet();
+		lastStateChange = System.currentTimeMillis();
+		return true;
+	}
+	
+	/**
+	 * empties the ring buffer
+	 */
+	private void clearOutcomes() {
+		AtomicIntegerArray buffer = outcomes;
+		for (int i=0 ; i<buffer.length() ; i++) {
+			int replaced = buffer.getAndSet(i, 0);
+			if (replaced != 0) {
+				recordedCalls.decrementAndGet();
+				count(failedCalls, replaced, 0, FAILED);
+				count(slowCalls, replaced, 0, SLOW);
+			}
+		}
+	}
+	
+	/**
+	 * returns the fallback of a call that does not reach the target
+	 * @param invocation the call
+	 * @return the return of the fallback
+	 * @throws Throwable the exception of the fallback, or a {@link CallRejectedException}
+	 */
+	private Object reject(Invocation invocation) throws Throwable {
+		rejected.increment();
+		Object fallbackObject = fallback;
+		Method method = invocation.getMethod();
+		if (fallbackObject != null && method.getDeclaringClass().isInstance(fallbackObject)) {
+			try {
+				return method.invoke(fallbackObject, invocation.getArguments());
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+		if (fallbackDefault) {
+			return ReturnValues.defaultValue(method);
+		}
+		throw new CallRejectedException("circuit "+getState()+", call to "+method.getName()+" rejected");
+	}
+	
+	@Override
+	public void checkInterfaces(Class<?>[] interfaces) throws Exception {
+		checkFallback(fallback, interfaces);
+	}
+	
+	/**
+	 * checks that a fallback object implements the interfaces that the interceptor intercepts
+	 * @param fallbackObject the fallback object, null if the fallback is not an object
+	 * @param interfaces the interfaces, null if they are not known yet
+	 * @throws Exception in case the fallback does not implement an interface
+	 */
+	private static void checkFallback(Object fallbackObject, Class<?>[] interfaces) throws Exception {
+		if (fallbackObject == null || interfaces == null) {
+			return;
+		}
+		for (Class<?> intf : interfaces) {
+			if (!intf.isInstance(fallbackObject)) {
+				throw new Exception("circuit breaker fallback "+fallbackObject.getClass().getName()+" does not implement "+intf.getName());
+			}
+		}
+	}
+	
+	@Override
+	public void targetReplaced() {
+		//the new target starts with a closed circuit
+		transition(CircuitBreakerState.OPEN, CircuitBreakerState.CLOSED);
+		transition(CircuitBreakerState.HALF_OPEN, CircuitBreakerState.CLOSED);
+		clearOutcomes();
+	}
+	
+	/**
+	 * @return the state of the circuit
+	 */
+	public CircuitBreakerState getState() {
+		return states[state.get()];
+	}
+	
+	/**
+	 * @return the percentage of failed calls in the ring buffer
+	 */
+	public double getFailureRate() {
+		int recorded = recordedCalls.get();
+		return recorded == 0 ? 0 : 100.0 * failedCalls.get() / recorded;
+	}
+	
+	/**
+	 * @return the percentage of slow calls in the ring buffer
+	 */
+	public double getSlowCallRate() {
+		int recorded = recordedCalls.get();
+		return recorded == 0 ? 0 : 100.0 * slowCalls.get() / recorded;
+	}
+	
+	/**
+	 * @return the number of calls that did not reach the target
+	 */
+	public long getRejectedCalls() {
+		return rejected.sum();
+	}
+	
+	/**
+	 * @return the number of state changes of the circuit
+	 */
+	public long getStateChanges() {
+		return stateChanges.get();
+	}
+	
+	/**
+	 * @return the time of the last state change, in milliseconds since the epoch
+	 */
+	public long getLastStateChange() {
+		return lastStateChange;
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jlcf.core.AroundInterceptor;
+import org.jlcf.core.CallContextInformation;
+import org.jlcf.core.Invocation;
+import org.jlcf.core.exception.CallTimeoutException;
+import org.jlcf.core.util.StripedCounter;
+
+/**
+ * Interceptor that coalesces concurrent identical calls (single-flight).
+ * The first call of a method with some argument values is forwarded to the target, calls with equal 
+ * arguments that arrive while it is in progress wait for it and receive its result or exception.
+ * This protects expensive providers from bursts of identical calls, for example when a popular cached 
+ * value expires.
+ * 
+ * A waiting call does not wait beyond the deadline of its own call context, it then throws a 
+ * {@link CallTimeoutException} while the call it joined continues. An equal call made by the thread 
+ * of the call in progress (re-entrant call) is forwarded, as it cannot wait for itself.
+ * 
+ * Void methods are never coalesced, as each call may be expected to have an effect.
+ * The coalesced methods are selected with the methods attribute of the interceptor.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class CoalescingInterceptor extends AroundInterceptor {
+
+	//the calls in progress
+	private final ConcurrentHashMap<CallKey, InFlightCall> inFlight;
+	
+	//statistics
+	private final StripedCounter forwarded;
+	private final StripedCounter collapsed;
+	
+	public CoalescingInterceptor() {
+		inFlight = new ConcurrentHashMap<CallKey, InFlightCall>();
+		forwarded = new StripedCounter();
+		collapsed = new StripedCounter();
+	}
+	
+	@Override
+	public Object around(Invocation invocation) throws Throwable {
+		if (invocation.getMethod().getReturnType() == void.class) {
+			return invocation.proceed();
+		}
+		
+		CallKey key = new CallKey(invocation.getMethod(), invocation.getArguments());
+		InFlightCall call = new InFlightCall();
+		InFlightCall existing = inFlight.putIfAbsent(key, call);
+		if (existing != null && existing.leader != Thread.currentThread()) {
+			//an equal call is in progress, wait for its result
+			collapsed.increment();
+			CallContextInformation context = invocation.getCallContext();
+			return existing.getResult(context == null ? Long.MAX_VALUE : context.getRemainingNanos(), invocation.getMethod().getName());
+		}
+		if (existing != null) {
+			//re-entrant call of the thread of the call in progress
+			forwarded.increment();
+			return invocation.proceed();
+		}
+		
+		forwarded.increment();
+		try {
+			Object result = invocation.proceed();
+			call.result = result;
+			return result;
+		} catch (Throwable t) {
+			call.exception = t;
+			throw t;
+		} finally {
+			//later calls are forwarded again
+			inFlight.remove(key, call);
+			call.done.countDown();
+		}
+	}
+	
+	/**
+	 * @return the number of calls that were forwarded to the target
+	 */
+	public long getForwardedCalls() {
+		return forwarded.sum();
+	}
+	
+	/**
+	 * @return the number of calls that received the result of an equal call in progress
+	 */
+	public long getCollapsedCalls() {
+		return collapsed.sum();
+	}
+	
+	/**
+	 * @return the number of calls in progress that other calls may join
+	 */
+	public int getInFlightCalls() {
+		return inFlight.size();
+	}
+	
+	/**
+	 * a forwarded call, joined by the equal calls that arrive while it is in progress
+	 */
+	private static final class InFlightCall {
+		
+		//released when the call completes
+		private final CountDownLatch done = new CountDownLatch(1);
+		
+		//the thread that forwards the call
+		private final Thread leader = Thread.currentThread();
+		
+		//the result or the exception of the call, published by the latch
+		private Object result;
+		private Throwable exception;
+		
+		/**
+		 * waits for the call to complete. The wait is not interrupted, the interrupt status of the thread is kept.
+		 * @param timeoutNanos the maximum time to wait, Long.MAX_VALUE to wait until the call completes
+		 * @param methodName the name of the called method
+		 * @return the result of the call
+		 * @throws Throwable the exception of the call
+		 * @throws CallTimeoutException in case the call does not complete in time
+		 */
+		Object getResult(long timeoutNanos, String methodName) throws Throwable {
+			long deadline = System.nanoTime() + timeoutNanos;
+			boolean interrupted = false;
+			boolean completed = false;
+			while (true) {
+				try {
+					if (timeoutNanos == Long.MAX_VALUE) {
+						done.await();
+						completed = true;
+					} else {
+						completed = done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					}
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (!completed) {
+				throw new CallTimeoutException("deadline of call to "+methodName+" passed while waiting for an equal call");
+			}
+			if (exception != null) {
+				throw exception;
+			}
+			return result;
+		}
+	}
+}
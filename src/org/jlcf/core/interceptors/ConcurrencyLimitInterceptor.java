@@ -0,0 +1,357 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jlcf.core.AroundInterceptor;
+import org.jlcf.core.Invocation;
+import org.jlcf.core.exception.CallRejectedException;
+import org.jlcf.core.util.StripedCounter;
+
+/**
+ * Interceptor that limits the number of concurrent calls (bulkhead), so that a slow provider cannot 
+ * hold all the threads of its callers. 
+ * When it is declared on a component interface the limit applies to all the calls of the interface, 
+ * when it is declared on a receptacle it applies to the calls of that receptacle.
+ * 
+ * When the limit is reached a call is handled according to the policy:
+ * - reject: a {@link CallRejectedException} is thrown
+ * - queue: the call waits up to queueTimeoutMillis for a call to complete, and is rejected if none completes
+ * - shed: the call is dropped and returns the default value of its return type (null, 0 or false)
+ * 
+ * In adaptive mode the limit is adjusted from the observed latency of the calls (gradient algorithm): 
+ * every sampleWindow calls the average latency of the window is compared to a long term average. 
+ * The limit grows while the latency stays close to the long term average and shrinks when it increases, 
+ * which keeps the queueing in the provider and the tail latency low.
+ * 
+ * Properties:
+ * - maxConcurrent: the limit, or the initial limit in adaptive mode (default 16)
+ * - policy: reject, queue or shed (default reject)
+ * - queueTimeoutMillis: maximum waiting time of the queue policy (default 100)
+ * - adaptive: true to adjust the limit from the latency (default false)
+ * - minLimit, maxLimit: bounds of the adaptive limit (default 1 and 1024)
+ * - sampleWindow: number of calls of a latency sample of the adaptive mode (default 100)
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class ConcurrencyLimitInterceptor extends AroundInterceptor {
+
+	//property names
+	public static final String MAX_CONCURRENT = "maxConcurrent";
+	public static final String POLICY = "policy";
+	public static final String QUEUE_TIMEOUT_MILLIS = "queueTimeoutMillis";
+	public static final String ADAPTIVE = "adaptive";
+	public static final String MIN_LIMIT = "minLimit";
+	public static final String MAX_LIMIT = "maxLimit";
+	public static final String SAMPLE_WINDOW = "sampleWindow";
+	
+	//default values
+	public static final int DEFAULT_MAX_CONCURRENT = 16;
+	public static final int DEFAULT_QUEUE_TIMEOUT_MILLIS = 100;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 1024;
+	public static final int DEFAULT_SAMPLE_WINDOW = 100;
+	
+	//weight of a new limit in the adaptive limit
+	private static final double SMOOTHING = 0.2;
+	
+	//number of windows of the long term average latency
+	private static final int LONG_WINDOWS = 20;
+	
+	//latency increase that is tolerated before the limit shrinks
+	private static final double TOLERANCE = 1.5;
+	
+	/**
+	 * what happens to a call when the limit is reached
+	 */
+	public enum Policy {
+		REJECT,
+		QUEUE,
+		SHED
+	}
+	
+	//the configuration
+	private volatile Policy policy;
+	private volatile long queueTimeoutNanos;
+	private volatile boolean adaptive;
+	private volatile int minLimit;
+	private volatile int maxLimit;
+	private volatile int sampleWindow;
+	
+	//the current limit
+	private volatile int limit;
+	
+	//the calls in progress
+	private final AtomicInteger inFlight;
+	
+	//calls waiting for the limit, they are notified on the monitor of waitLock
+	private final AtomicInteger waiting;
+	private final Object waitLock = new Object();
+	
+	//latency samples of the current window of the adaptive mode
+	private final AtomicLong windowNanos;
+	private final AtomicInteger windowCalls;
+	
+	//held by the thread that updates the adaptive limit
+	private final AtomicBoolean updating;
+	
+	//state of the adaptive limit, accessed by the thread that holds updating
+	private double estimatedLimit;
+	private double longLatency;
+	
+	//statistics
+	private final StripedCounter rejected;
+	private final StripedCounter shed;
+	private final StripedCounter queued;
+	
+	public ConcurrencyLimitInterceptor() {
+		inFlight = new AtomicInteger();
+		waiting = new AtomicInteger();
+		windowNanos = new AtomicLong();
+		windowCalls = new AtomicInteger();
+		updating = new AtomicBoolean();
+		rejected = new StripedCounter();
+		shed = new StripedCounter();
+		queued = new StripedCounter();
+		policy = Policy.REJECT;
+		queueTimeoutNanos = DEFAULT_QUEUE_TIMEOUT_MILLIS * 1000000L;
+		adaptive = false;
+		minLimit = DEFAULT_MIN_LIMIT;
+		maxLimit = DEFAULT_MAX_LIMIT;
+		sampleWindow = DEFAULT_SAMPLE_WINDOW;
+		limit = DEFAULT_MAX_CONCURRENT;
+		estimatedLimit = limit;
+		longLatency = 0;
+	}
+	
+	@Override
+	public void configure(Map<String, String> properties) throws Exception {
+		int maxConcurrent = InterceptorProperties.getIntProperty(properties, MAX_CONCURRENT, DEFAULT_MAX_CONCURRENT);
+		long timeoutMillis = InterceptorProperties.getLongProperty(properties, QUEUE_TIMEOUT_MILLIS, DEFAULT_QUEUE_TIMEOUT_MILLIS);
+		int min = InterceptorProperties.getIntProperty(properties, MIN_LIMIT, DEFAULT_MIN_LIMIT);
+		int max = InterceptorProperties.getIntProperty(properties, MAX_LIMIT, DEFAULT_MAX_LIMIT);
+		int window = InterceptorProperties.getIntProperty(properties, SAMPLE_WINDOW, DEFAULT_SAMPLE_WINDOW);
+		String policyName = InterceptorProperties.getStringProperty(properties, POLICY, Policy.REJECT.name());
+		String adaptiveValue = InterceptorProperties.getStringProperty(properties, ADAPTIVE, "false");
+		
+		Policy newPolicy;
+		try {
+			newPolicy = Policy.valueOf(policyName.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new Exception("invalid value of property "+POLICY+": "+policyName);
+		}
+		if (maxConcurrent <= 0 || timeoutMillis < 0 || min <= 0 || max < min || window <= 0) {
+			throw new Exception("invalid concurrency limit properties "+properties);
+		}
+		
+		policy = newPolicy;
+		queueTimeoutNanos = timeoutMillis * 1000000L;
+		adaptive = Boolean.parseBoolean(adaptiveValue);
+		minLimit = min;
+		maxLimit = max;
+		sampleWindow = window;
+		limit = adaptive ? Math.max(min, Math.min(max, maxConcurrent)) : maxConcurrent;
+		estimatedLimit = limit;
+	}
+	
+	@Override
+	public Object around(Invocation invocation) throws Throwable {
+		if (!tryAcquire()) {
+			switch (policy) {
+				case QUEUE:
+					if (!acquire()) {
+						rejected.increment();
+						throw new CallRejectedException("concurrency limit "+limit+" reached, no call completed in time");
+					}
+					break;
+				case SHED:
+					shed.increment();
+					return ReturnValues.defaultValue(invocation.getMethod());
+				default:
+					rejected.increment();
+					throw new CallRejectedException("concurrency limit "+limit+" reached");
+			}
+		}
+		
+		long start = adaptive ? System.nanoTime() : 0;
+		try {
+			return invocation.proceed();
+		} finally {
+			if (adaptive) {
+				sample(System.nanoTime() - start);
+			}
+			release();
+		}
+	}
+	
+	/**
+	 * takes a place if the limit has not been reached
+	 * @return true if a place was taken
+	 */
+	private boolean tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * waits for a place, up to the queue timeout
+	 * @return true if a place was taken
+	 */
+	private boolean acquire() {
+		queued.increment();
+		//registered before trying again, so that a completing call cannot miss it
+		waiting.incrementAndGet();
+		try {
+			long deadline = System.nanoTime() + queueTimeoutNanos;
+			synchronized (waitLock) {
+				while (!tryAcquire()) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return false;
+					}
+					try {
+						waitLock.wait(remaining / 1000000L, (int)(remaining % 1000000L));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				return true;
+			}
+		} finally {
+			waiting.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * releases a place, and wakes up a waiting call
+	 */
+	private void release() {
+		inFlight.decrementAndGet();
+		if (waiting.get() > 0) {
+			synchronized (waitLock) {
+				waitLock.notify();
+			}
+		}
+	}
+	
+	/**
+	 * records the latency of a call, and updates the limit at the end of a window
+	 * @param nanos the latency
+	 */
+	private void sample(long nanos) {
+		windowNanos.addAndGet(nanos);
+		if (windowCalls.incrementAndGet() < sampleWindow || !updating.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			int calls = windowCalls.getAndSet(0);
+			long total = windowNanos.getAndSet(0);
+			if (calls > 0) {
+				updateLimit((double)total / calls);
+			}
+		} finally {
+			updating.set(false);
+		}
+	}
+	
+	/**
+	 * adjusts the limit from the average latency of a window
+	 * @param latency the average latency of the window
+	 */
+	private void updateLimit(double latency) {
+		if (longLatency == 0) {
+			longLatency = latency;
+		} else {
+			longLatency = longLatency + (latency - longLatency) / LONG_WINDOWS;
+		}
+		if (longLatency > 2 * latency) {
+			//the latency has recovered, let the long term average follow faster
+			longLatency = longLatency * 0.95;
+		}
+		
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / latency));
+		double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+		if (inFlight.get() < estimatedLimit / 2) {
+			//the limit is not used, do not let it grow
+			newLimit = Math.min(newLimit, estimatedLimit);
+		}
+		newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+		
+		int previous = limit;
+		limit = (int)estimatedLimit;
+		if (limit > previous && waiting.get() > 0) {
+			synchronized (waitLock) {
+				waitLock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * @return the current limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+	
+	/**
+	 * @return the number of calls in progress
+	 */
+	public int getInFlightCalls() {
+		return inFlight.get();
+	}
+	
+	/**
+	 * @return the number of calls that were rejected
+	 */
+	public long getRejectedCalls() {
+		return rejected.sum();
+	}
+	
+	/**
+	 * @return the number of calls that were shed
+	 */
+	public long getShedCalls() {
+		return shed.sum();
+	}
+	
+	/**
+	 * @return the number of calls that waited for the limit
+	 */
+	public long getQueuedCalls() {
+		return queued.sum();
+	}
+	
+	/**
+	 * @return the number of calls that are waiting for the limit
+	 */
+	public int getWaitingCalls() {
+		return waiting.get();
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.util.List;
+
+/**
+ * Companion interface of components that receive batches of void calls from a {@link BatchingInterceptor}.
+ * The receptacle interface (and the component interface it is connected to) extends this interface, 
+ * so that a batch is delivered to the component with a single call.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface IBatchSink {
+
+	/**
+	 * receives a batch of calls, in the order they were made
+	 * @param calls the calls
+	 */
+	public void deliverBatch(List<BatchedCall> calls);
+}
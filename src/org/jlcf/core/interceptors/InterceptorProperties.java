@@ -0,0 +1,62 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.util.Map;
+
+/**
+ * Parsing of the properties of the built-in interceptors
+ * 
+ * @author Petros Pissias
+ *
+ */
+final class InterceptorProperties {
+
+	private InterceptorProperties() {
+	}
+	
+	static long getLongProperty(Map<String, String> properties, String name, long defaultValue) throws Exception {
+		String value = properties.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new Exception("invalid value of property "+name+": "+value);
+		}
+	}
+	
+	static int getIntProperty(Map<String, String> properties, String name, int defaultValue) throws Exception {
+		String value = properties.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new Exception("invalid value of property "+name+": "+value);
+		}
+	}
+	
+	static String getStringProperty(Map<String, String> properties, String name, String defaultValue) {
+		String value = properties.get(name);
+		if (value == null) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+}
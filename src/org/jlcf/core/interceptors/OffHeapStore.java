@@ -0,0 +1,340 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap store of serialized values, the second tier of the {@link CachingInterceptor}.
+ * Values are written one after the other in slabs of direct memory, which are allocated when first used.
+ * When the last slab is full the store wraps around and the oldest slab is recycled, 
+ * evicting all the entries that it holds. Only the index of the entries is on the heap.
+ * 
+ * The store is divided in stripes by key, each one with its own slabs, index and lock, 
+ * so that calls for different keys do not wait for each other.
+ * 
+ * @author Petros Pissias
+ *
+ */
+class OffHeapStore {
+
+	//the stripes, the length is a power of 2
+	private final Stripe[] stripes;
+	
+	//generation of the cache, values of an older generation are not stored
+	private final AtomicLong generation;
+	
+	/**
+	 * creates a new store
+	 * @param capacityBytes the maximum size of the store in bytes
+	 * @param slabBytes the size of a slab in bytes
+	 * @param stripeCount the requested number of stripes, rounded down to a power of 2 so that each stripe has a slab
+	 * @param generation the generation of the cache, incremented before the store is cleared
+	 */
+	OffHeapStore(long capacityBytes, int slabBytes, int stripeCount, AtomicLong generation) {
+		this.generation = generation;
+		long slabCount = Math.max(1, capacityBytes / slabBytes);
+		int count = 1;
+		while (count * 2 <= stripeCount && count * 2 <= slabCount) {
+			count <<= 1;
+		}
+		stripes = new Stripe[count];
+		for (int i=0 ; i<count ; i++) {
+			//the slabs are spread over the stripes
+			stripes[i] = new Stripe((int)((slabCount + count - 1 - i) / count), slabBytes);
+		}
+	}
+	
+	private Stripe getStripe(Object key) {
+		int h = key.hashCode();
+		return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+	}
+	
+	/**
+	 * stores a value, if the cache was not flushed since the value was read or computed. 
+	 * Values larger than a slab are not stored.
+	 * @param key the key
+	 * @param data the serialized value
+	 * @param expires System.nanoTime() at which the value expires, 0 if it does not expire
+	 * @param valueGeneration the generation of the cache when the value was read or computed
+	 * @return true if the value was stored
+	 */
+	boolean put(Object key, byte[] data, long expires, long valueGeneration) {
+		Stripe stripe = getStripe(key);
+		synchronized (stripe) {
+			//checked under the lock, a flush increments the generation before it clears the stripes
+			if (generation.get() != valueGeneration) {
+				return false;
+			}
+			return stripe.put(key, data, expires);
+		}
+	}
+	
+	/**
+	 * reads a value. The value is removed from the store when it has been read promoteHits times, 
+	 * so that the caller moves it to the heap tier.
+	 * @param key the key
+	 * @param now the current System.nanoTime()
+	 * @param promoteHits the number of reads after which a value is removed
+	 * @return the value or null if there is no (valid) value for the key
+	 */
+	StoredValue get(Object key, long now, int promoteHits) {
+		Stripe stripe = getStripe(key);
+		synchronized (stripe) {
+			return stripe.get(key, now, promoteHits);
+		}
+	}
+	
+	/**
+	 * removes all values. The slabs are kept for reuse.
+	 */
+	void clear() {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+	
+	/**
+	 * @return the bytes of the stored values
+	 */
+	long getUsedBytes() {
+		long used = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				used += stripe.usedBytes;
+			}
+		}
+		return used;
+	}
+	
+	/**
+	 * @return the bytes of direct memory allocated by the store
+	 */
+	long getAllocatedBytes() {
+		long allocated = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				allocated += stripe.getAllocatedBytes();
+			}
+		}
+		return allocated;
+	}
+	
+	/**
+	 * @return the number of stored values
+	 */
+	int getSize() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.index.size();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * @return the number of values removed because their slab was recycled or they expired
+	 */
+	long getEvictions() {
+		long evictions = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				evictions += stripe.evictions;
+			}
+		}
+		return evictions;
+	}
+	
+	/**
+	 * a stripe of the store. All operations are performed under the lock of the stripe.
+	 */
+	private static final class Stripe {
+		
+		//the slabs, null until first used
+		private final ByteBuffer[] slabs;
+		
+		//the keys written in each slab, used to evict the entries of a recycled slab
+		private final List<List<Object>> slabKeys;
+		
+		//size of a slab in bytes
+		private final int slabBytes;
+		
+		//key -> location of the value
+		private final Map<Object, Location> index;
+		
+		//the slab that is written and the write position in it
+		private int currentSlab;
+		private int writeOffset;
+		
+		//bytes of the live entries
+		private long usedBytes;
+		
+		//entries removed because their slab was recycled or they expired
+		private long evictions;
+		
+		Stripe(int slabCount, int slabBytes) {
+			this.slabBytes = slabBytes;
+			slabs = new ByteBuffer[slabCount];
+			slabKeys = new ArrayList<List<Object>>(slabCount);
+			for (int i=0 ; i<slabCount ; i++) {
+				slabKeys.add(new ArrayList<Object>());
+			}
+			index = new HashMap<Object, Location>();
+			currentSlab = 0;
+			writeOffset = 0;
+		}
+		
+		boolean put(Object key, byte[] data, long expires) {
+			if (data.length > slabBytes) {
+				return false;
+			}
+			remove(key);
+			if (writeOffset + data.length > slabBytes) {
+				//next slab, recycle it if it was used before
+				currentSlab = (currentSlab + 1) % slabs.length;
+				writeOffset = 0;
+				evictSlab(currentSlab);
+			}
+			if (slabs[currentSlab] == null) {
+				slabs[currentSlab] = ByteBuffer.allocateDirect(slabBytes);
+			}
+			ByteBuffer slab = slabs[currentSlab];
+			slab.position(writeOffset);
+			slab.put(data);
+			
+			index.put(key, new Location(currentSlab, writeOffset, data.length, expires));
+			slabKeys.get(currentSlab).add(key);
+			writeOffset += data.length;
+			usedBytes += data.length;
+			return true;
+		}
+		
+		StoredValue get(Object key, long now, int promoteHits) {
+			Location location = index.get(key);
+			if (location == null) {
+				return null;
+			}
+			if (location.expires != 0 && now - location.expires >= 0) {
+				remove(key);
+				evictions++;
+				return null;
+			}
+			byte[] data = new byte[location.length];
+			ByteBuffer slab = slabs[location.slab];
+			slab.position(location.offset);
+			slab.get(data);
+			
+			location.hits++;
+			boolean promote = location.hits >= promoteHits;
+			if (promote) {
+				remove(key);
+			}
+			return new StoredValue(data, location.expires, promote);
+		}
+		
+		void clear() {
+			index.clear();
+			for (List<Object> keys : slabKeys) {
+				keys.clear();
+			}
+			currentSlab = 0;
+			writeOffset = 0;
+			usedBytes = 0;
+		}
+		
+		long getAllocatedBytes() {
+			long allocated = 0;
+			for (ByteBuffer slab : slabs) {
+				if (slab != null) {
+					allocated += slabBytes;
+				}
+			}
+			return allocated;
+		}
+		
+		private void remove(Object key) {
+			Location location = index.remove(key);
+			if (location != null) {
+				//the space is reclaimed when the slab is recycled
+				usedBytes -= location.length;
+			}
+		}
+		
+		private void evictSlab(int slab) {
+			List<Object> keys = slabKeys.get(slab);
+			for (Object key : keys) {
+				Location location = index.get(key);
+				//the key may have been written again in another slab
+				if (location != null && location.slab == slab) {
+					remove(key);
+					evictions++;
+				}
+			}
+			keys.clear();
+		}
+	}
+	
+	/**
+	 * location of a value in the slabs
+	 */
+	private static final class Location {
+		
+		private final int slab;
+		private final int offset;
+		private final int length;
+		private final long expires;
+		
+		//reads of the value
+		private int hits;
+		
+		Location(int slab, int offset, int length, long expires) {
+			this.slab = slab;
+			this.offset = offset;
+			this.length = length;
+			this.expires = expires;
+			this.hits = 0;
+		}
+	}
+	
+	/**
+	 * a value read from the store
+	 */
+	static final class StoredValue {
+		
+		//the serialized value
+		final byte[] data;
+		
+		//System.nanoTime() at which the value expires, 0 if it does not expire
+		final long expires;
+		
+		//true if the value was removed from the store and should be moved to the heap tier
+		final boolean promote;
+		
+		StoredValue(byte[] data, long expires, boolean promote) {
+			this.data = data;
+			this.expires = expires;
+			this.promote = promote;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.lang.reflect.Method;
+
+/**
+ * Values returned by the built-in interceptors for calls that do not reach the target
+ * 
+ * @author Petros Pissias
+ *
+ */
+final class ReturnValues {
+
+	private ReturnValues() {
+	}
+	
+	/**
+	 * @param m a method
+	 * @return the default value of the return type of the method
+	 */
+	static Object defaultValue(Method m) {
+		Class<?> type = m.getReturnType();
+		if (!type.isPrimitive() || type == void.class) {
+			return null;
+		}
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		}
+		if (type == char.class) {
+			return Character.valueOf((char)0);
+		}
+		if (type == byte.class) {
+			return Byte.valueOf((byte)0);
+		}
+		if (type == short.class) {
+			return Short.valueOf((short)0);
+		}
+		if (type == int.class) {
+			return Integer.valueOf(0);
+		}
+		if (type == long.class) {
+			return Long.valueOf(0);
+		}
+		if (type == float.class) {
+			return Float.valueOf(0);
+		}
+		return Double.valueOf(0);
+	}
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.interceptors;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jlcf.core.AroundInterceptor;
+import org.jlcf.core.CallContextInformation;
+import org.jlcf.core.Invocation;
+import org.jlcf.core.exception.CallRejectedException;
+import org.jlcf.core.exception.CallTimeoutException;
+import org.jlcf.core.util.LatencyHistogram;
+import org.jlcf.core.util.StripedCounter;
+
+/**
+ * Interceptor that bounds the duration of calls. 
+ * A call is run by a thread of the interceptor while the caller waits for it up to timeoutMillis, or up to 
+ * the deadline of the call if it is earlier. The thread serves the call with the call context of the caller
+ * (callback, deadline and trace). If the call does not complete in time the caller receives a {@link CallTimeoutException} and the 
+ * call is abandoned: its thread is interrupted, and the call may still complete in the target component.
+ * 
+ * Methods that are idempotent can be hedged: if a call of such a method has not completed after the 
+ * hedgePercentile latency of the previous calls of the same method, a second identical call is sent 
+ * and the caller receives the first successful result. The other call is abandoned. If all threads 
+ * are busy the call is not hedged, and the caller keeps waiting for the first call.
+ * 
+ * The calls are run by at most maxThreads threads, calls that find all threads busy are rejected 
+ * with a {@link CallRejectedException}, so that hung calls cannot exhaust the memory.
+ * 
+ * Properties:
+ * - timeoutMillis: the deadline of a call in milliseconds (default 1000)
+ * - hedgeMethods: the names of the idempotent methods that are hedged, separated by commas (default none)
+ * - hedgePercentile: the latency percentile after which a call is hedged (default 95)
+ * - hedgeMinCalls: number of completed calls needed before calls are hedged (default 100)
+ * - maxThreads: maximum number of threads that run calls (default 64)
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class TimeoutInterceptor extends AroundInterceptor {
+
+	//property names
+	public static final String TIMEOUT_MILLIS = "timeoutMillis";
+	public static final String HEDGE_METHODS = "hedgeMethods";
+	public static final String HEDGE_PERCENTILE = "hedgePercentile";
+	public static final String HEDGE_MIN_CALLS = "hedgeMinCalls";
+	public static final String MAX_THREADS = "maxThreads";
+	
+	//default values
+	public static final int DEFAULT_TIMEOUT_MILLIS = 1000;
+	public static final int DEFAULT_HEDGE_PERCENTILE = 95;
+	public static final int DEFAULT_HEDGE_MIN_CALLS = 100;
+	public static final int DEFAULT_MAX_THREADS = 64;
+	
+	//completed calls after which the hedging delay is computed again
+	private static final int HEDGE_UPDATE_CALLS = 128;
+	
+	//numbers the threads of the interceptors
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+	
+	//the configuration
+	private volatile long timeoutNanos;
+	private volatile Set<String> hedgeMethods;
+	private volatile double hedgePercentile;
+	private volatile int hedgeMinCalls;
+	
+	//runs the calls
+	private volatile ThreadPoolExecutor executor;
+	
+	//latency of the completed calls and hedging delay of each hedged method
+	private final ConcurrentMap<Method, HedgeStatistics> hedgeStatistics;
+	
+	//statistics
+	private final StripedCounter timedOut;
+	private final StripedCounter hedged;
+	private final StripedCounter hedgeWins;
+	private final StripedCounter rejected;
+	
+	public TimeoutInterceptor() {
+		timeoutNanos = DEFAULT_TIMEOUT_MILLIS * 1000000L;
+		hedgeMethods = new HashSet<String>();
+		hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+		hedgeMinCalls = DEFAULT_HEDGE_MIN_CALLS;
+		executor = createExecutor(DEFAULT_MAX_THREADS);
+		hedgeStatistics = new ConcurrentHashMap<Method, HedgeStatistics>();
+		timedOut = new StripedCounter();
+		hedged = new StripedCounter();
+		hedgeWins = new StripedCounter();
+		rejected = new StripedCounter();
+	}
+	
+	@Override
+	public void configure(Map<String, String> properties) throws Exception {
+		long timeoutMillis = InterceptorProperties.getLongProperty(properties, TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+		int percentile = InterceptorProperties.getIntProperty(properties, HEDGE_PERCENTILE, DEFAULT_HEDGE_PERCENTILE);
+		int minCalls = InterceptorProperties.getIntProperty(properties, HEDGE_MIN_CALLS, DEFAULT_HEDGE_MIN_CALLS);
+		int maxThreads = InterceptorProperties.getIntProperty(properties, MAX_THREADS, DEFAULT_MAX_THREADS);
+		String methods = InterceptorProperties.getStringProperty(properties, HEDGE_METHODS, "");
+		if (timeoutMillis <= 0 || percentile <= 0 || percentile >= 100 || minCalls <= 0 || maxThreads <= 0) {
+			throw new Exception("invalid timeout properties "+properties);
+		}
+		
+		Set<String> methodNames = new HashSet<String>();
+		for (String name : methods.split(",")) {
+			if (!name.trim().equals("")) {
+				methodNames.add(name.trim());
+			}
+		}
+		
+		timeoutNanos = timeoutMillis * 1000000L;
+		hedgeMethods = methodNames;
+		hedgePercentile = percentile;
+		hedgeMinCalls = minCalls;
+		ThreadPoolExecutor previous = executor;
+		executor = createExecutor(maxThreads);
+		previous.shutdown();
+		hedgeStatistics.clear();
+	}
+	
+	/**
+	 * creates the executor of the calls. It has no queue, and its idle threads terminate.
+	 * @param maxThreads the maximum number of threads
+	 * @return the executor
+	 */
+	private static ThreadPoolExecutor createExecutor(int maxThreads) {
+		return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JLCF timeout call "+threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	@Override
+	public Object around(Invocation invocation) throws Throwable {
+		final Method method = invocation.getMethod();
+		long start = System.nanoTime();
+		long timeout = timeoutNanos;
+		
+		//the invocation belongs to the caller thread, the call is forwarded by a detached copy that keeps the call context
+		final Invocation detached = invocation.detach();
+		CallContextInformation context = detached.getCallContext();
+		if (context != null && context.hasDeadline()) {
+			//the caller does not wait beyond its own deadline
+			long remaining = context.getRemainingNanos();
+			if (remaining <= 0) {
+				timedOut.increment();
+				throw new CallTimeoutException("deadline of call to "+method.getName()+" has passed");
+			}
+			timeout = Math.min(timeout, remaining);
+		}
+		long deadline = start + timeout;
+		
+		CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor);
+		Future<Object> first = submit(completion, newCall(detached));
+		Future<Object> second = null;
+		HedgeStatistics statistics = hedgeMethods.contains(method.getName()) ? getHedgeStatistics(method) : null;
+		try {
+			Future<Object> done = null;
+			long hedgeDelay = statistics == null ? 0 : statistics.hedgeDelayNanos;
+			if (hedgeDelay > 0 && hedgeDelay < timeout) {
+				done = completion.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+				if (done == null) {
+					//the hedge is optional, if all threads are busy the first call is still awaited.
+					//It has its own copy of the invocation, the first call may still change the arguments of its copy
+					try {
+						second = completion.submit(newCall(invocation.detach()));
+						hedged.increment();
+					} catch (RejectedExecutionException e) {
+						second = null;
+					}
+				}
+			}
+			
+			Throwable failure = null;
+			int pending = second == null ? 1 : 2;
+			while (true) {
+				if (done == null) {
+					done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (done == null) {
+						timedOut.increment();
+						throw new CallTimeoutException("call to "+method.getName()+" did not complete in "+(timeout / 1000000L)+" ms");
+					}
+				}
+				pending--;
+				try {
+					Object result = done.get();
+					if (done == second) {
+						hedgeWins.increment();
+					}
+					if (statistics != null) {
+						completed(statistics, System.nanoTime() - start);
+					}
+					return result;
+				} catch (ExecutionException e) {
+					//the first failure is reported if the other call fails too
+					if (failure == null) {
+						failure = e.getCause() instanceof WrappedThrowable ? e.getCause().getCause() : e.getCause();
+					}
+					if (pending == 0) {
+						throw failure;
+					}
+					done = null;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CallTimeoutException("interrupted while waiting for call to "+method.getName());
+		} finally {
+			//abandon the calls that did not complete
+			first.cancel(true);
+			if (second != null) {
+				second.cancel(true);
+			}
+		}
+	}
+	
+	/**
+	 * creates the task of a call
+	 * @param detached the detached invocation that the task proceeds, used by this task only
+	 * @return the task
+	 */
+	private static Callable<Object> newCall(final Invocation detached) {
+		return new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				try {
+					return detached.proceed();
+				} catch (Exception e) {
+					throw e;
+				} catch (Error e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new WrappedThrowable(t);
+				}
+			}
+		};
+	}
+	
+	private Future<Object> submit(CompletionService<Object> completion, Callable<Object> call) {
+		try {
+			return completion.submit(call);
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw new CallRejectedException("all "+executor.getMaximumPoolSize()+" call threads are busy");
+		}
+	}
+	
+	/**
+	 * returns the statistics of a hedged method, creating them on its first call
+	 * @param method the method
+	 * @return the statistics of the method
+	 */
+	private HedgeStatistics getHedgeStatistics(Method method) {
+		HedgeStatistics statistics = hedgeStatistics.get(method);
+		if (statistics == null) {
+			HedgeStatistics newStatistics = new HedgeStatistics();
+			statistics = hedgeStatistics.putIfAbsent(method, newStatistics);
+			if (statistics == null) {
+				statistics = newStatistics;
+			}
+		}
+		return statistics;
+	}
+	
+	/**
+	 * records the latency of a successful call of a hedged method, and computes the hedging delay of the method periodically
+	 * @param statistics the statistics of the method
+	 * @param nanos the latency
+	 */
+	private void completed(HedgeStatistics statistics, long nanos) {
+		statistics.latencies.record(nanos);
+		int calls = statistics.completedCalls.incrementAndGet();
+		if (calls >= hedgeMinCalls && (calls % HEDGE_UPDATE_CALLS == 0 || statistics.hedgeDelayNanos == 0)) {
+			statistics.hedgeDelayNanos = statistics.latencies.getPercentile(hedgePercentile);
+		}
+	}
+	
+	/**
+	 * @param method the hedged method
+	 * @return the current hedging delay of the method in nanoseconds, 0 if its calls are not hedged yet
+	 */
+	public long getHedgeDelayNanos(Method method) {
+		HedgeStatistics statistics = hedgeStatistics.get(method);
+		return statistics == null ? 0 : statistics.hedgeDelayNanos;
+	}
+	
+	/**
+	 * @return the number of calls that did not complete before their deadline
+	 */
+	public long getTimedOutCalls() {
+		return timedOut.sum();
+	}
+	
+	/**
+	 * @return the number of calls that were hedged
+	 */
+	public long getHedgedCalls() {
+		return hedged.sum();
+	}
+	
+	/**
+	 * @return the number of hedged calls whose second call completed first
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.sum();
+	}
+	
+	/**
+	 * @return the number of calls that were rejected because all threads were busy
+	 */
+	public long getRejectedCalls() {
+		return rejected.sum();
+	}
+	
+	/**
+	 * @return the number of threads that run calls or are running abandoned calls
+	 */
+	public int getActiveThreads() {
+		return executor.getActiveCount();
+	}
+	
+	/**
+	 * latency of the completed calls of a hedged method, and the hedging delay computed from it
+	 */
+	private static final class HedgeStatistics {
+		
+		final LatencyHistogram latencies = new LatencyHistogram();
+		final AtomicInteger completedCalls = new AtomicInteger();
+		
+		//0 when the calls are not hedged yet
+		volatile long hedgeDelayNanos;
+	}
+	
+	/**
+	 * carries a throwable that is neither an exception nor an error out of a call
+	 */
+	private static final class WrappedThrowable extends Exception {
+		
+		private static final long serialVersionUID = 1L;
+		
+		WrappedThrowable(Throwable cause) {
+			super(cause);
+		}
+	}
+}
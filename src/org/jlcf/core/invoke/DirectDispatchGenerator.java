@@ -0,0 +1,736 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.apache.log4j.Logger;
+import org.jlcf.core.ConnectorHandler;
+import org.jlcf.core.JLCFReceptacle;
+
+/**
+ * Generates the classes of the direct-dispatch wiring mode for component interfaces.
+ * The classes are compiled in memory at application load time.
+ * 
+ * Two front ends are generated per interface, concrete classes that implement the interface and replace 
+ * the java.lang.reflect.Proxy objects of the receptacles and the connectors:
+ * - the connector front end registers the call at the component proxy handler and calls the component pojo
+ * as a plain interface call, with the arguments of the call.
+ * - the receptacle front end calls the connector front end, as a plain interface call, when the receptacle is 
+ * wired directly to the connector and the call can skip the context managers.
+ * A call between two components that are wired directly is then pojo -> receptacle front end -> connector front end 
+ * -> pojo, without a Method, an argument array or an invoker lookup, and the JIT can inline the chain. 
+ * Calls that need the full chain (interceptors, callbacks, call context and tracing) or that are made during a 
+ * reconfiguration are forwarded by the front ends to the invocation handlers, as the proxies do. So are the calls 
+ * to a sharded component, as its instance is selected by the arguments of the call.
+ * 
+ * For every method an invoker is also generated, a concrete {@link IMethodInvoker} that casts the target to the 
+ * interface and calls the method. The handlers of the full chain use them to call the next stage.
+ * 
+ * Generation needs the java compiler (a JDK), public interfaces and interfaces that are loaded from a 
+ * directory or a jar file. When an interface cannot be generated the framework uses proxies and the 
+ * {@link ReflectionInvocationEngine}, the fallback is logged once per interface.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class DirectDispatchGenerator {
+
+	private static final Logger logger = Logger.getLogger(DirectDispatchGenerator.class);
+	
+	//package of all generated classes
+	private static final String GENERATED_PACKAGE = "org.jlcf.core.invoke.generated";
+
+	//interface -> constructors of the generated invoker of each method. Accessed only while holding the class lock
+	private static final Map<Class<?>, Map<Method, Constructor<?>>> generated = new HashMap<Class<?>, Map<Method, Constructor<?>>>();
+	
+	//interface -> constructors of the generated front ends and the methods they implement, in the order of the method indexes
+	private static final Map<Class<?>, Constructor<?>> receptacleFrontEnds = new HashMap<Class<?>, Constructor<?>>();
+	private static final Map<Class<?>, Constructor<?>> connectorFrontEnds = new HashMap<Class<?>, Constructor<?>>();
+	private static final Map<Class<?>, Method[]> frontEndMethods = new HashMap<Class<?>, Method[]>();
+	
+	//interfaces that could not be generated, not retried
+	private static final Set<Class<?>> failed = new HashSet<Class<?>>();
+	
+	//number of generated classes, makes the names of the generated classes unique
+	private static int generatedClasses = 0;
+
+	/**
+	 * returns a direct invoker for the method, generating the invoker of its interface if necessary.
+	 * @param m the interface method
+	 * @return the direct invoker or null if one cannot be generated
+	 */
+	public static synchronized IMethodInvoker getInvoker(Method m) {
+		Class<?> intf = m.getDeclaringClass();
+		if (!intf.isInterface() || Modifier.isStatic(m.getModifiers())) {
+			return null;
+		}
+		if (!generated.containsKey(intf) && !failed.contains(intf)) {
+			generate(Collections.<Class<?>>singleton(intf));
+		}
+		Map<Method, Constructor<?>> invokers = generated.get(intf);
+		Constructor<?> constructor = invokers == null ? null : invokers.get(m);
+		if (constructor == null) {
+			return null;
+		}
+		try {
+			return (IMethodInvoker)constructor.newInstance();
+		} catch (Exception e) {
+			logger.warn("cannot create direct invoker for "+m+", using reflection", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * returns a new front end for a receptacle, generating the classes of its interface if necessary.
+	 * @param intf the interface of the receptacle
+	 * @param receptacle the receptacle, it receives the calls that take the full chain
+	 * @return the front end implementing the interface, or null if one cannot be generated
+	 */
+	public static synchronized Object newReceptacleFrontEnd(Class<?> intf, JLCFReceptacle receptacle) {
+		return newFrontEnd(intf, receptacleFrontEnds, receptacle);
+	}
+	
+	/**
+	 * returns a new front end for a connector, generating the classes of its interface if necessary.
+	 * @param intf the interface of the connector
+	 * @param connector the connector, it registers the calls and receives the calls that cannot be made directly
+	 * @return the front end implementing the interface, or null if one cannot be generated
+	 */
+	public static synchronized Object newConnectorFrontEnd(Class<?> intf, ConnectorHandler connector) {
+		return newFrontEnd(intf, connectorFrontEnds, connector);
+	}
+	
+	private static Object newFrontEnd(Class<?> intf, Map<Class<?>, Constructor<?>> frontEnds, Object handler) {
+		if (!generated.containsKey(intf) && !failed.contains(intf)) {
+			generate(Collections.<Class<?>>singleton(intf));
+		}
+		Constructor<?> constructor = frontEnds.get(intf);
+		if (constructor == null) {
+			return null;
+		}
+		try {
+			return constructor.newInstance(handler, frontEndMethods.get(intf));
+		} catch (Exception e) {
+			logger.warn("cannot create front end for "+intf.getName()+", using a proxy", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * generates the invokers and front ends of all provided interfaces (and the invokers of the interfaces they extend)
+	 * in as few compilation runs as possible.
+	 * Interfaces that have already been processed are skipped.
+	 * @param interfaces the interfaces
+	 */
+	public static synchronized void generate(Collection<Class<?>> interfaces) {
+		//group the interfaces by class loader, each group is compiled once
+		Map<ClassLoader, List<Class<?>>> groups = new HashMap<ClassLoader, List<Class<?>>>();
+		for (Class<?> intf : collectInterfaces(interfaces)) {
+			if (generated.containsKey(intf) || failed.contains(intf)) {
+				continue;
+			}
+			if (!isAccessible(intf)) {
+				logger.warn("cannot generate direct invokers for non public interface "+intf.getName()+", using reflection");
+				failed.add(intf);
+				continue;
+			}
+			ClassLoader loader = intf.getClassLoader() == null ? DirectDispatchGenerator.class.getClassLoader() : intf.getClassLoader();
+			List<Class<?>> group = groups.get(loader);
+			if (group == null) {
+				group = new ArrayList<Class<?>>();
+				groups.put(loader, group);
+			}
+			group.add(intf);
+		}
+		
+		for (ClassLoader loader : groups.keySet()) {
+			compile(loader, groups.get(loader));
+		}
+	}
+	
+	/**
+	 * returns the interfaces and all their super interfaces, as methods
+	 * are resolved by the interface that declares them
+	 */
+	private static Set<Class<?>> collectInterfaces(Collection<Class<?>> interfaces) {
+		Set<Class<?>> all = new HashSet<Class<?>>();
+		List<Class<?>> pending = new ArrayList<Class<?>>(interfaces);
+		while (!pending.isEmpty()) {
+			Class<?> intf = pending.remove(pending.size()-1);
+			if (intf.isInterface() && all.add(intf)) {
+				pending.addAll(Arrays.asList(intf.getInterfaces()));
+			}
+		}
+		return all;
+	}
+	
+	/**
+	 * compiles the invokers and front ends of a group of interfaces that share the same class loader.
+	 * On any failure the interfaces are marked as failed so that the reflective invoker and proxies are used.
+	 */
+	private static void compile(ClassLoader parent, List<Class<?>> interfaces) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			logger.warn("no java compiler available, cannot generate direct invokers for "+interfaces+", using reflection");
+			failed.addAll(interfaces);
+			return;
+		}
+		
+		//create the sources, one class per method and two front ends per interface. 
+		//Methods with types that cannot be referenced are not generated
+		Map<Method, String> invokerNames = new HashMap<Method, String>();
+		Map<Class<?>, String[]> frontEndNames = new HashMap<Class<?>, String[]>();
+		Map<Class<?>, Method[]> methods = new HashMap<Class<?>, Method[]>();
+		List<JavaFileObject> sources = new ArrayList<JavaFileObject>();
+		List<JavaFileObject> frontEndSources = new ArrayList<JavaFileObject>();
+		for (Class<?> intf : interfaces) {
+			Method[] intfMethods = getMethods(intf);
+			methods.put(intf, intfMethods);
+			for (Method m : intfMethods) {
+				if (isGenerated(m)) {
+					String name = getGeneratedName(intf, "DirectInvoker");
+					invokerNames.put(m, name);
+					sources.add(new SourceFile(name, getSource(intf, m, name)));
+				} else {
+					logger.warn("cannot generate direct invoker for "+m+", using reflection");
+				}
+			}
+			
+			Method[] implemented = getFrontEndMethods(intf);
+			if (implemented == null) {
+				logger.warn("cannot generate front ends for "+intf.getName()+", using proxies");
+			} else {
+				String receptacleName = getGeneratedName(intf, "Receptacle");
+				String connectorName = getGeneratedName(intf, "Connector");
+				frontEndNames.put(intf, new String[]{receptacleName, connectorName});
+				frontEndMethods.put(intf, implemented);
+				frontEndSources.add(new SourceFile(receptacleName, getFrontEndSource(intf, implemented, receptacleName, false)));
+				frontEndSources.add(new SourceFile(connectorName, getFrontEndSource(intf, implemented, connectorName, true)));
+			}
+		}
+		
+		//compile in memory, against the locations of the interfaces and the framework
+		List<String> options = Arrays.asList("-classpath", getClassPath(parent, interfaces));
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		ClassFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+		List<JavaFileObject> allSources = new ArrayList<JavaFileObject>(sources);
+		allSources.addAll(frontEndSources);
+		boolean success = allSources.isEmpty() || compiler.getTask(null, fileManager, diagnostics, options, null, allSources).call();
+		if (!success && !frontEndSources.isEmpty()) {
+			//the front ends must not cost the interfaces their invokers, compile again without them
+			logger.warn("cannot compile front ends for "+interfaces+", using proxies:"+diagnostics.getDiagnostics());
+			frontEndMethods.keySet().removeAll(frontEndNames.keySet());
+			frontEndNames.clear();
+			diagnostics = new DiagnosticCollector<JavaFileObject>();
+			fileManager = new ClassFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+			success = sources.isEmpty() || compiler.getTask(null, fileManager, diagnostics, options, null, sources).call();
+		}
+		if (!success) {
+			logger.warn("cannot compile direct invokers for "+interfaces+", using reflection:"+diagnostics.getDiagnostics());
+			failed.addAll(interfaces);
+			return;
+		}
+		
+		//load the generated classes
+		GeneratedClassLoader loader = new GeneratedClassLoader(parent, fileManager.getClasses());
+		for (Class<?> intf : interfaces) {
+			Map<Method, Constructor<?>> invokers = new HashMap<Method, Constructor<?>>();
+			try {
+				for (Method m : methods.get(intf)) {
+					if (invokerNames.containsKey(m)) {
+						invokers.put(m, loader.loadClass(invokerNames.get(m)).getConstructor());
+					}
+				}
+				String[] names = frontEndNames.get(intf);
+				if (names != null) {
+					receptacleFrontEnds.put(intf, loader.loadClass(names[0]).getConstructor(JLCFReceptacle.class, Method[].class));
+					connectorFrontEnds.put(intf, loader.loadClass(names[1]).getConstructor(ConnectorHandler.class, Method[].class));
+				}
+				generated.put(intf, invokers);
+			} catch (Exception e) {
+				logger.warn("cannot load direct invokers for "+intf.getName()+", using reflection", e);
+				receptacleFrontEnds.remove(intf);
+				connectorFrontEnds.remove(intf);
+				failed.add(intf);
+			}
+		}
+	}
+	
+	/**
+	 * returns the methods of an interface that the generated invoker dispatches, with a fixed order.
+	 */
+	private static Method[] getMethods(Class<?> intf) {
+		List<Method> methods = new ArrayList<Method>();
+		for (Method m : intf.getDeclaredMethods()) {
+			if (Modifier.isPublic(m.getModifiers()) && !Modifier.isStatic(m.getModifiers())) {
+				methods.add(m);
+			}
+		}
+		return methods.toArray(new Method[methods.size()]);
+	}
+	
+	/**
+	 * returns the methods that the front ends of an interface implement: all methods of the interface and the 
+	 * interfaces it extends, and the methods of Object that a proxy forwards to its invocation handler. 
+	 * @return the methods, null if the front ends cannot be generated because a type cannot be referenced, 
+	 * a method uses a type variable or a method is inherited from more than one interface
+	 */
+	private static Method[] getFrontEndMethods(Class<?> intf) {
+		List<Method> methods = new ArrayList<Method>();
+		Set<String> signatures = new HashSet<String>();
+		for (Method m : intf.getMethods()) {
+			if (Modifier.isStatic(m.getModifiers())) {
+				continue;
+			}
+			if (!isGenerated(m) || !allAccessible(m.getExceptionTypes()) || usesTypeVariables(m) || !signatures.add(getSignature(m))) {
+				return null;
+			}
+			methods.add(m);
+		}
+		try {
+			Method[] objectMethods = new Method[] {Object.class.getMethod("hashCode"), 
+					Object.class.getMethod("equals", Object.class), Object.class.getMethod("toString")};
+			for (Method m : objectMethods) {
+				if (signatures.add(getSignature(m))) {
+					methods.add(m);
+				}
+			}
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		return methods.toArray(new Method[methods.size()]);
+	}
+	
+	/**
+	 * checks if a method is generic or has a parameter, return or exception type that is a type variable.
+	 * The front ends implement the erased interface, so such a method does not compile when the interface 
+	 * extends a parameterized interface.
+	 */
+	private static boolean usesTypeVariables(Method m) {
+		if (m.getTypeParameters().length > 0) {
+			return true;
+		}
+		List<Type> types = new ArrayList<Type>(Arrays.asList(m.getGenericParameterTypes()));
+		types.addAll(Arrays.asList(m.getGenericExceptionTypes()));
+		types.add(m.getGenericReturnType());
+		for (Type type : types) {
+			if (type instanceof TypeVariable || type instanceof GenericArrayType) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static String getSignature(Method m) {
+		return m.getName()+Arrays.toString(m.getParameterTypes());
+	}
+	
+	/**
+	 * checks if the type can be referenced from the generated package 
+	 */
+	private static boolean isAccessible(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive()) {
+			return true;
+		}
+		if (type.getCanonicalName() == null) {
+			return false;
+		}
+		for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+			if (!Modifier.isPublic(c.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * returns a new name for a generated class of an interface. Interfaces with the same simple name 
+	 * are told apart by the number of the class.
+	 */
+	private static String getGeneratedName(Class<?> intf, String kind) {
+		return GENERATED_PACKAGE+"."+intf.getSimpleName()+"$$"+kind+(generatedClasses++);
+	}
+	
+	/**
+	 * @return true if the types of the method can be referenced by a generated invoker
+	 */
+	private static boolean isGenerated(Method m) {
+		return isAccessible(m.getReturnType()) && allAccessible(m.getParameterTypes());
+	}
+	
+	/**
+	 * returns the class path of the compilation: the locations of the framework, of the interfaces and of the 
+	 * types of their methods, the URLs of the class loaders of the interfaces and the class path of the application.
+	 */
+	private static String getClassPath(ClassLoader loader, List<Class<?>> interfaces) {
+		Set<String> entries = new LinkedHashSet<String>();
+		addLocation(entries, DirectDispatchGenerator.class);
+		for (Class<?> intf : interfaces) {
+			addLocation(entries, intf);
+			for (Method m : intf.getMethods()) {
+				addLocation(entries, m.getReturnType());
+				for (Class<?> type : m.getParameterTypes()) {
+					addLocation(entries, type);
+				}
+				for (Class<?> type : m.getExceptionTypes()) {
+					addLocation(entries, type);
+				}
+			}
+		}
+		for (ClassLoader l = loader ; l != null ; l = l.getParent()) {
+			if (l instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader)l).getURLs()) {
+					addLocation(entries, url);
+				}
+			}
+		}
+		String applicationClassPath = System.getProperty("java.class.path");
+		if (applicationClassPath != null && !applicationClassPath.equals("")) {
+			entries.add(applicationClassPath);
+		}
+		
+		StringBuilder classPath = new StringBuilder();
+		for (String entry : entries) {
+			if (classPath.length() > 0) {
+				classPath.append(File.pathSeparator);
+			}
+			classPath.append(entry);
+		}
+		return classPath.toString();
+	}
+	
+	/**
+	 * adds the directory or jar file that a class was loaded from, if any
+	 */
+	private static void addLocation(Set<String> entries, Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		if (type.isPrimitive() || type.getProtectionDomain() == null) {
+			return;
+		}
+		CodeSource codeSource = type.getProtectionDomain().getCodeSource();
+		if (codeSource != null && codeSource.getLocation() != null) {
+			addLocation(entries, codeSource.getLocation());
+		}
+	}
+	
+	private static void addLocation(Set<String> entries, URL location) {
+		if (!location.getProtocol().equals("file")) {
+			return;
+		}
+		try {
+			entries.add(new File(location.toURI()).getPath());
+		} catch (Exception e) {
+			//logger.debug("ignoring class path location "+location);
+		}
+	}
+	
+	/**
+	 * generates the source of the invoker of a method. 
+	 */
+	private static String getSource(Class<?> intf, Method m, String generatedName) {
+		String intfName = intf.getCanonicalName();
+		String simpleName = generatedName.substring(GENERATED_PACKAGE.length()+1);
+		
+		StringBuilder call = new StringBuilder();
+		call.append("((").append(intfName).append(") target).").append(m.getName()).append("(");
+		Class<?>[] params = m.getParameterTypes();
+		for (int p=0; p<params.length; p++) {
+			if (p > 0) {
+				call.append(", ");
+			}
+			call.append(unbox(params[p], "args["+p+"]"));
+		}
+		call.append(")");
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(GENERATED_PACKAGE).append(";\n");
+		sb.append("@SuppressWarnings(\"all\")\n");
+		sb.append("public final class ").append(simpleName).append(" implements ").append(IMethodInvoker.class.getName()).append(" {\n");
+		sb.append("\tpublic Object invoke(Object target, Object[] args) throws Throwable {\n");
+		if (m.getReturnType() == void.class) {
+			sb.append("\t\t").append(call).append(";\n\t\treturn null;\n");
+		} else {
+			sb.append("\t\treturn ").append(call).append(";\n");
+		}
+		sb.append("\t}\n}\n");
+		return sb.toString();
+	}
+	
+	/**
+	 * generates the source of a front end of an interface.
+	 * @param intf the interface
+	 * @param methods the implemented methods, the index of a method in the array of the front end is its index here
+	 * @param generatedName the name of the class
+	 * @param connector true for the front end of a connector, false for the front end of a receptacle
+	 */
+	private static String getFrontEndSource(Class<?> intf, Method[] methods, String generatedName, boolean connector) {
+		String intfName = intf.getCanonicalName();
+		String simpleName = generatedName.substring(GENERATED_PACKAGE.length()+1);
+		String handlerName = connector ? ConnectorHandler.class.getName() : JLCFReceptacle.class.getName();
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(GENERATED_PACKAGE).append(";\n");
+		sb.append("@SuppressWarnings(\"all\")\n");
+		sb.append("public final class ").append(simpleName).append(" implements ").append(intfName).append(" {\n");
+		sb.append("\tprivate final ").append(handlerName).append(" handler;\n");
+		sb.append("\tprivate final java.lang.reflect.Method[] methods;\n");
+		sb.append("\tpublic ").append(simpleName).append("(").append(handlerName).append(" handler, java.lang.reflect.Method[] methods) {\n");
+		sb.append("\t\tthis.handler = handler;\n\t\tthis.methods = methods;\n\t}\n");
+		
+		for (int i=0 ; i<methods.length ; i++) {
+			Method m = methods[i];
+			Class<?>[] params = m.getParameterTypes();
+			StringBuilder declaration = new StringBuilder();
+			StringBuilder arguments = new StringBuilder();
+			for (int p=0 ; p<params.length ; p++) {
+				if (p > 0) {
+					declaration.append(", ");
+					arguments.append(", ");
+				}
+				declaration.append(params[p].getCanonicalName()).append(" a").append(p);
+				arguments.append("a").append(p);
+			}
+			boolean isVoid = m.getReturnType() == void.class;
+			String ret = isVoid ? "" : "return ";
+			String call = m.getName()+"("+arguments+")";
+			
+			sb.append("\tpublic ").append(m.getReturnType().getCanonicalName()).append(" ").append(m.getName()).append("(").append(declaration).append(")");
+			Class<?>[] exceptions = m.getExceptionTypes();
+			for (int e=0 ; e<exceptions.length ; e++) {
+				sb.append(e == 0 ? " throws " : ", ").append(exceptions[e].getCanonicalName());
+			}
+			sb.append(" {\n");
+			
+			//the direct call. The methods of Object always go to the handler, as with a proxy
+			if (m.getDeclaringClass() != Object.class) {
+				if (connector) {
+					sb.append("\t\torg.jlcf.core.IComponentProxy proxy = handler.enterDirectCall();\n");
+					sb.append("\t\tif (proxy != null) {\n");
+					sb.append("\t\t\tlong startTime = System.nanoTime();\n");
+					sb.append("\t\t\tint instance = proxy.acquireInstance(methods[").append(i).append("], null);\n");
+					sb.append("\t\t\ttry {\n");
+					sb.append("\t\t\t\t").append(ret).append("((").append(intfName).append(") proxy.getComponentPojo(instance)).").append(call).append(";\n");
+					if (isVoid) {
+						sb.append("\t\t\t\treturn;\n");
+					}
+					sb.append("\t\t\t} finally {\n");
+					sb.append("\t\t\t\thandler.exitDirectCall(proxy, instance, methods[").append(i).append("], startTime);\n");
+					sb.append("\t\t\t}\n\t\t}\n");
+				} else {
+					sb.append("\t\tObject direct = handler.getDirectFrontEnd();\n");
+					sb.append("\t\tif (direct != null) {\n");
+					sb.append("\t\t\t").append(ret).append("((").append(intfName).append(") direct).").append(call).append(";\n");
+					if (isVoid) {
+						sb.append("\t\t\treturn;\n");
+					}
+					sb.append("\t\t}\n");
+				}
+			}
+			
+			//the call through the handler, with the exceptions of the handler thrown as a proxy throws them
+			String args = params.length == 0 ? "null" : "new Object[]{"+arguments+"}";
+			String forward = connector ? "handler.forwardCall(methods["+i+"], "+args+")" 
+					: "handler.invoke(this, methods["+i+"], "+args+")";
+			sb.append("\t\ttry {\n");
+			if (isVoid) {
+				sb.append("\t\t\t").append(forward).append(";\n");
+			} else {
+				sb.append("\t\t\treturn ").append(unbox(m.getReturnType(), forward)).append(";\n");
+			}
+			boolean undeclared = true;
+			for (Class<?> exception : getRethrownExceptions(exceptions)) {
+				sb.append("\t\t} catch (").append(exception.getCanonicalName()).append(" e) {\n\t\t\tthrow e;\n");
+				undeclared &= exception != Throwable.class;
+			}
+			if (undeclared) {
+				sb.append("\t\t} catch (Throwable e) {\n\t\t\tthrow new java.lang.reflect.UndeclaredThrowableException(e);\n");
+			}
+			sb.append("\t\t}\n\t}\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+	
+	/**
+	 * returns the exceptions that a front end method throws as they are: unchecked exceptions and the declared exceptions.
+	 * Exceptions that are subclasses of another one are left out, so that each can be caught in any order.
+	 */
+	private static List<Class<?>> getRethrownExceptions(Class<?>[] declared) {
+		Set<Class<?>> candidates = new LinkedHashSet<Class<?>>();
+		candidates.add(RuntimeException.class);
+		candidates.add(Error.class);
+		candidates.addAll(Arrays.asList(declared));
+		List<Class<?>> exceptions = new ArrayList<Class<?>>();
+		for (Class<?> exception : candidates) {
+			boolean covered = false;
+			for (Class<?> other : candidates) {
+				covered |= other != exception && other.isAssignableFrom(exception);
+			}
+			if (!covered) {
+				exceptions.add(exception);
+			}
+		}
+		return exceptions;
+	}
+	
+	private static boolean allAccessible(Class<?>[] types) {
+		for (Class<?> type : types) {
+			if (!isAccessible(type)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * returns the expression that converts an argument or a return value to its type.
+	 * Primitives are unboxed, the arguments of the generated calls are boxed automatically by the compiler.
+	 */
+	private static String unbox(Class<?> type, String arg) {
+		if (type.isPrimitive()) {
+			String wrapper;
+			if (type == int.class) {
+				wrapper = "Integer";
+			} else if (type == char.class) {
+				wrapper = "Character";
+			} else {
+				String name = type.getName();
+				wrapper = Character.toUpperCase(name.charAt(0))+name.substring(1);
+			}
+			return "(("+wrapper+") "+arg+")."+type.getName()+"Value()";
+		} else {
+			return "("+type.getCanonicalName()+") "+arg;
+		}
+	}
+
+	/**
+	 * in memory java source
+	 */
+	private static class SourceFile extends SimpleJavaFileObject {
+		private final String source;
+		
+		SourceFile(String className, String source) {
+			super(URI.create("string:///"+className.replace('.', '/')+Kind.SOURCE.extension), Kind.SOURCE);
+			this.source = source;
+		}
+		
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return source;
+		}
+	}
+	
+	/**
+	 * in memory class file
+	 */
+	private static class ClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		ClassFile(String className) {
+			super(URI.create("bytes:///"+className.replace('.', '/')+Kind.CLASS.extension), Kind.CLASS);
+		}
+		
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+	}
+	
+	/**
+	 * file manager that keeps the compiled classes in memory
+	 */
+	private static class ClassFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+		private final Map<String, ClassFile> classes = new HashMap<String, ClassFile>();
+		
+		ClassFileManager(JavaFileManager fileManager) {
+			super(fileManager);
+		}
+		
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, Kind kind, FileObject sibling) {
+			ClassFile file = new ClassFile(className);
+			classes.put(className, file);
+			return file;
+		}
+		
+		Map<String, byte[]> getClasses() {
+			Map<String, byte[]> ret = new HashMap<String, byte[]>();
+			for (String name : classes.keySet()) {
+				ret.put(name, classes.get(name).bytes.toByteArray());
+			}
+			return ret;
+		}
+	}
+	
+	/**
+	 * class loader of the generated classes
+	 */
+	private static class GeneratedClassLoader extends ClassLoader {
+		private final Map<String, byte[]> classes;
+		
+		GeneratedClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+			super(parent);
+			this.classes = classes;
+		}
+		
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] b = classes.get(name);
+			if (b == null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, b, 0, b.length);
+		}
+	}
+}
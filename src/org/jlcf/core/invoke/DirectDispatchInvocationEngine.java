@@ -0,0 +1,48 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * Invocation engine of the direct-dispatch wiring mode, uses the invokers generated by the {@link DirectDispatchGenerator}.
+ * With this engine the framework also creates generated front ends for the receptacles and connectors.
+ * Methods that cannot be generated are resolved by the reflection engine.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class DirectDispatchInvocationEngine implements IInvocationEngine {
+
+	//engine used for methods without a generated invoker
+	private final IInvocationEngine fallback = new ReflectionInvocationEngine();
+	
+	@Override
+	public void prepare(Collection<Class<?>> interfaces) {
+		DirectDispatchGenerator.generate(interfaces);
+	}
+
+	@Override
+	public IMethodInvoker createInvoker(Method m) {
+		IMethodInvoker invoker = DirectDispatchGenerator.getInvoker(m);
+		if (invoker == null) {
+			invoker = fallback.createInvoker(m);
+		}
+		return invoker;
+	}
+
+}
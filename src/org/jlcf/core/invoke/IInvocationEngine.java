@@ -0,0 +1,48 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * Interface of the pluggable invocation engines of the framework.
+ * An invocation engine decides how the invocation handlers of the call chain
+ * forward a call to the next object of the chain. Each method is resolved once
+ * into an {@link IMethodInvoker} that is then reused for all calls.
+ * 
+ * Custom engines can be selected with their class name in the invocation attribute
+ * of the application description, they need a public no-arg constructor.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface IInvocationEngine {
+
+	/**
+	 * called at application load time with all interfaces that will be called through the
+	 * container, before any call is made.
+	 * @param interfaces the component and receptacle interfaces of the application
+	 */
+	public void prepare(Collection<Class<?>> interfaces);
+	
+	/**
+	 * resolves a method into an invoker
+	 * @param m the interface method
+	 * @return the invoker, never null
+	 */
+	public IMethodInvoker createInvoker(Method m);
+}
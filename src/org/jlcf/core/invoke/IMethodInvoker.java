@@ -0,0 +1,37 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+/**
+ * A resolved call to a single interface method.
+ * Invokers are resolved once per method and then used by the
+ * framework invocation handlers in order to forward calls to the next
+ * object of the call chain.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public interface IMethodInvoker {
+
+	/**
+	 * invokes the method on the target object.
+	 * @param target the object implementing the interface of the method
+	 * @param args the arguments of the call, null if the method has no arguments
+	 * @return the return of the method, null for void methods
+	 * @throws Throwable the actual exception thrown by the target, never wrapped
+	 */
+	public Object invoke(Object target, Object[] args) throws Throwable;
+}
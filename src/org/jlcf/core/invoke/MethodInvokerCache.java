@@ -0,0 +1,114 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+import java.lang.reflect.Method;
+
+/**
+ * The invokers of the methods called through one invocation handler.
+ * Each framework handler keeps its own cache, so a call finds its invoker with an identity 
+ * lookup in a small table that only holds the methods of the handler, without going to the 
+ * shared {@link MethodInvokerTable}. The methods that reach a handler are the method objects of 
+ * its proxy, they are the same objects for all calls.
+ * 
+ * Lookups do not lock. A method that is not cached yet is resolved by the table and the cache 
+ * is replaced by a copy that contains it.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public final class MethodInvokerCache {
+
+	//the table that resolves the methods
+	private final MethodInvokerTable table;
+	
+	//open addressing table, the method of slot i is at 2*i and its invoker at 2*i+1. Never modified after it is published
+	private volatile Object[] entries;
+	
+	//number of cached methods, accessed while holding the lock of the cache
+	private int size;
+	
+	/**
+	 * creates a new, empty cache
+	 * @param table the table that resolves the methods
+	 */
+	MethodInvokerCache(MethodInvokerTable table) {
+		this.table = table;
+		this.entries = new Object[16];
+		this.size = 0;
+	}
+	
+	/**
+	 * returns the invoker of a method, resolving it if necessary
+	 * @param m the method
+	 * @return the invoker of the method
+	 */
+	public IMethodInvoker getInvoker(Method m) {
+		Object[] current = entries;
+		int mask = (current.length >> 1) - 1;
+		int slot = System.identityHashCode(m) & mask;
+		while (true) {
+			Object key = current[slot << 1];
+			if (key == m) {
+				return (IMethodInvoker)current[(slot << 1) + 1];
+			}
+			if (key == null) {
+				return add(m);
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+	
+	/**
+	 * resolves a method and publishes a copy of the cache that contains it
+	 */
+	private synchronized IMethodInvoker add(Method m) {
+		IMethodInvoker invoker = table.getInvoker(m);
+		Object[] current = entries;
+		//another thread may have added the method
+		for (int i=0 ; i<current.length ; i+=2) {
+			if (current[i] == m) {
+				return (IMethodInvoker)current[i+1];
+			}
+		}
+		
+		//keep the table at most half full
+		int slots = current.length >> 1;
+		if ((size + 1) * 2 > slots) {
+			slots *= 2;
+		}
+		Object[] copy = new Object[slots << 1];
+		for (int i=0 ; i<current.length ; i+=2) {
+			if (current[i] != null) {
+				put(copy, (Method)current[i], (IMethodInvoker)current[i+1]);
+			}
+		}
+		put(copy, m, invoker);
+		size++;
+		entries = copy;
+		return invoker;
+	}
+	
+	private static void put(Object[] table, Method m, IMethodInvoker invoker) {
+		int mask = (table.length >> 1) - 1;
+		int slot = System.identityHashCode(m) & mask;
+		while (table[slot << 1] != null) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot << 1] = m;
+		table[(slot << 1) + 1] = invoker;
+	}
+}
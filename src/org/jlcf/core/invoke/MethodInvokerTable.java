@@ -0,0 +1,115 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the resolved invokers of all interface methods called through a container.
+ * The invokers are created by the invocation engine of the application once, on the first call
+ * of each method, and shared by all framework invocation handlers. The handlers look them up 
+ * through their own {@link MethodInvokerCache}.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class MethodInvokerTable {
+
+	//values of the invocation attribute of the application description.
+	//any other value is the class name of an IInvocationEngine implementation
+	public static final String INVOCATION_REFLECTION = "reflection";
+	public static final String INVOCATION_METHOD_HANDLE = "methodhandle";
+	public static final String INVOCATION_STUB = "stub";
+	
+	//resolved invokers
+	private final ConcurrentHashMap<Method, IMethodInvoker> invokers;
+	
+	//the engine that resolves the invokers
+	private final IInvocationEngine engine;
+	
+	/**
+	 * creates a new table
+	 * @param engine the invocation engine
+	 */
+	public MethodInvokerTable(IInvocationEngine engine) {
+		this.engine = engine;
+		invokers = new ConcurrentHashMap<Method, IMethodInvoker>();
+	}
+	
+	/**
+	 * creates the invocation engine for the invocation attribute of an application description
+	 * @param invocation the invocation mode or the class name of an engine. null or empty for the default engine
+	 * @return the invocation engine
+	 * @throws Exception in case the engine class cannot be loaded or instantiated
+	 */
+	public static IInvocationEngine getEngine(String invocation) throws Exception {
+		if (invocation == null || invocation.equals("") || invocation.equals(INVOCATION_REFLECTION)) {
+			return new ReflectionInvocationEngine();
+		} else if (invocation.equals(INVOCATION_METHOD_HANDLE)) {
+			return new MethodHandleInvocationEngine();
+		} else if (invocation.equals(INVOCATION_STUB)) {
+			return new DirectDispatchInvocationEngine();
+		} else {
+			return (IInvocationEngine)Class.forName(invocation).getDeclaredConstructor().newInstance();
+		}
+	}
+	
+	/**
+	 * returns the invoker of a method, resolving it if necessary
+	 * @param m the method
+	 * @return the invoker of the method
+	 */
+	public IMethodInvoker getInvoker(Method m) {
+		IMethodInvoker invoker = invokers.get(m);
+		if (invoker == null) {
+			invoker = engine.createInvoker(m);
+			IMethodInvoker existing = invokers.putIfAbsent(m, invoker);
+			if (existing != null) {
+				invoker = existing;
+			}
+		}
+		return invoker;
+	}
+	
+	/**
+	 * returns true if the receptacles and connectors get generated front ends instead of proxies, 
+	 * see {@link DirectDispatchGenerator}
+	 * @return true for the direct-dispatch engine
+	 */
+	public boolean generatesFrontEnds() {
+		return engine instanceof DirectDispatchInvocationEngine;
+	}
+	
+	/**
+	 * returns a new cache of invokers for an invocation handler. 
+	 * Handlers resolve the invokers of their calls through their own cache.
+	 * @return the cache
+	 */
+	public MethodInvokerCache newCache() {
+		return new MethodInvokerCache(this);
+	}
+	
+	/**
+	 * called at application load time with all interfaces that will be called through the
+	 * container, so that the engine can prepare before the first call.
+	 * @param interfaces the component and receptacle interfaces of the application
+	 */
+	public void prepare(Collection<Class<?>> interfaces) {
+		engine.prepare(interfaces);
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * Invocation engine that uses java reflection.
+ * This is the default engine of the framework.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class ReflectionInvocationEngine implements IInvocationEngine {
+
+	@Override
+	public void prepare(Collection<Class<?>> interfaces) {
+		//nothing to prepare
+	}
+
+	@Override
+	public IMethodInvoker createInvoker(Method m) {
+		return new ReflectiveMethodInvoker(m);
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.invoke;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Method invoker that uses java reflection.
+ * Used by the reflection invocation engine and whenever a method handle
+ * cannot be created for a method.
+ * Methods of interfaces that are not public are made accessible, as the method handle engine does.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class ReflectiveMethodInvoker implements IMethodInvoker {
+
+	//the method that is invoked
+	private final Method method;
+	
+	public ReflectiveMethodInvoker(Method method) {
+		if (!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+			method.setAccessible(true);
+		}
+		this.method = method;
+	}
+	
+	@Override
+	public Object invoke(Object target, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		}catch (InvocationTargetException ex) {
+			if (ex.getCause() == null) {
+				throw (ex);
+			} else {
+				throw (ex.getCause()); //throw the actual exception of the target interface
+			}		
+		}
+	}
+
+}
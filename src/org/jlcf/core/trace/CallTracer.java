@@ -0,0 +1,249 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.trace;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampled tracing of the calls between components.
+ * 
+ * One call out of sampleRate calls that are not part of a trace starts a new trace. The calls that 
+ * the called components make while they serve a traced call (including callbacks) carry the trace 
+ * id in their call context and are traced too, so a trace shows the whole tree of calls of a request.
+ * 
+ * Traced calls are recorded in a pre-allocated ring buffer per thread, recording does not lock or allocate. 
+ * The buffers of threads that have terminated are dropped after the next dump, and when a thread creates 
+ * its buffer while more than MAX_TERMINATED_BUFFERS buffers of terminated threads are kept.
+ * When the sampling is disabled the cost of a call is a single volatile read.
+ * The recorded calls can be written to a file in the Chrome trace event format (chrome://tracing).
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class CallTracer {
+
+	//default number of entries of the buffer of a thread
+	public static final int DEFAULT_BUFFER_CAPACITY = 4096;
+	
+	//number of buffers of terminated threads that are kept until they are dumped
+	public static final int MAX_TERMINATED_BUFFERS = 16;
+	
+	//one out of sampleRate calls starts a trace, 0 if tracing is disabled
+	private volatile int sampleRate;
+	
+	//number of entries of the buffer of a thread
+	private final int bufferCapacity;
+	
+	//the buffer of each thread
+	private final ThreadLocal<TraceBuffer> buffers;
+	
+	//all buffers, for the dump
+	private final CopyOnWriteArrayList<TraceBuffer> allBuffers;
+	
+	//generates trace ids
+	private final AtomicLong traceIds;
+	
+	//the times of the dump are relative to the creation of the tracer
+	private final long origin;
+	
+	public CallTracer() {
+		this(DEFAULT_BUFFER_CAPACITY);
+	}
+	
+	/**
+	 * constructor
+	 * @param bufferCapacity the number of entries of the buffer of a thread
+	 */
+	public CallTracer(int bufferCapacity) {
+		this.bufferCapacity = bufferCapacity;
+		this.sampleRate = 0;
+		this.allBuffers = new CopyOnWriteArrayList<TraceBuffer>();
+		this.traceIds = new AtomicLong();
+		this.origin = System.nanoTime();
+		this.buffers = new ThreadLocal<TraceBuffer>() {
+			@Override protected TraceBuffer initialValue() {
+				TraceBuffer buffer = new TraceBuffer(CallTracer.this.bufferCapacity);
+				pruneBuffers(MAX_TERMINATED_BUFFERS);
+				allBuffers.add(buffer);
+				return buffer;
+			}
+		};
+	}
+	
+	/**
+	 * removes the buffers of terminated threads, the oldest ones first
+	 * @param keep the number of buffers of terminated threads that are kept
+	 */
+	private void pruneBuffers(int keep) {
+		int terminated = 0;
+		for (TraceBuffer buffer : allBuffers) {
+			if (buffer.isOwnerTerminated()) {
+				terminated++;
+			}
+		}
+		for (TraceBuffer buffer : allBuffers) {
+			if (terminated <= keep) {
+				return;
+			}
+			if (buffer.isOwnerTerminated() && allBuffers.remove(buffer)) {
+				terminated--;
+			}
+		}
+	}
+	
+	/**
+	 * sets the sampling rate, it can be changed while the application runs
+	 * @param rate one out of rate calls starts a trace, 0 to disable tracing
+	 */
+	public void setSampleRate(int rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("invalid sample rate "+rate);
+		}
+		sampleRate = rate;
+	}
+	
+	public int getSampleRate() {
+		return sampleRate;
+	}
+	
+	/**
+	 * decides if a call is traced
+	 * @param parentTraceId the trace id of the call that the current thread serves, 0 if none
+	 * @return the trace id of the call, 0 if the call is not traced
+	 */
+	public long sample(long parentTraceId) {
+		int rate = sampleRate;
+		if (rate == 0) {
+			return 0;
+		}
+		if (parentTraceId != 0) {
+			return parentTraceId;
+		}
+		if (!buffers.get().sample(rate)) {
+			return 0;
+		}
+		return traceIds.incrementAndGet();
+	}
+	
+	/**
+	 * records a traced call in the buffer of the current thread
+	 * @param point the edge of the call
+	 * @param traceId the trace id
+	 * @param start the start of the call, in System.nanoTime() time
+	 * @param end the end of the call, in System.nanoTime() time
+	 */
+	public void record(TracePoint point, long traceId, long start, long end) {
+		buffers.get().record(point, traceId, start, end);
+	}
+	
+	/**
+	 * writes the recorded calls of all threads to a file in the Chrome trace event JSON format.
+	 * The buffers are not cleared, the threads keep recording during the dump. 
+	 * The buffers of the threads that have terminated are dropped after they are written.
+	 * @param fileName the file
+	 * @return the number of calls written
+	 * @throws IOException in case the file cannot be written
+	 */
+	public int dump(String fileName) throws IOException {
+		//the buffers of the threads that terminated before the dump are written one last time
+		List<TraceBuffer> terminated = new ArrayList<TraceBuffer>();
+		for (TraceBuffer buffer : allBuffers) {
+			if (buffer.isOwnerTerminated()) {
+				terminated.add(buffer);
+			}
+		}
+		final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"));
+		try {
+			out.write("{\"traceEvents\":[");
+			final boolean[] first = new boolean[] {true};
+			for (TraceBuffer buffer : allBuffers) {
+				out.write(first[0] ? "\n" : ",\n");
+				first[0] = false;
+				out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"+buffer.getThreadId()
+						+",\"args\":{\"name\":\""+escape(buffer.getThreadName())+"\"}}");
+			}
+			
+			final IOException[] failure = new IOException[1];
+			int count = 0;
+			for (TraceBuffer buffer : allBuffers) {
+				count += buffer.read(new TraceBuffer.TraceVisitor() {
+					@Override
+					public void visit(TracePoint point, long traceId, long start, long end, long threadId) {
+						if (failure[0] != null) {
+							return;
+						}
+						long relativeStart = start - origin;
+						long duration = end - start;
+						try {
+							//complete event, times in microseconds
+							out.write(first[0] ? "\n" : ",\n");
+							first[0] = false;
+							out.write("{\"name\":\""+escape(point.getTarget())+"\",\"cat\":\""+escape(point.getSource())
+									+"\",\"ph\":\"X\",\"ts\":"+toMicros(relativeStart)+",\"dur\":"+toMicros(duration)
+									+",\"pid\":1,\"tid\":"+threadId+",\"args\":{\"traceId\":"+traceId+"}}");
+						} catch (IOException e) {
+							failure[0] = e;
+						}
+					}
+				});
+			}
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+			out.write("\n]}\n");
+			allBuffers.removeAll(terminated);
+			return count;
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * @param nanos a positive time in nanoseconds
+	 * @return the time in microseconds, with 3 decimals
+	 */
+	private static String toMicros(long nanos) {
+		long fraction = nanos % 1000;
+		return (nanos / 1000)+(fraction < 10 ? ".00" : fraction < 100 ? ".0" : ".")+fraction;
+	}
+	
+	/**
+	 * @param value a string
+	 * @return the string escaped for a JSON string literal
+	 */
+	private static String escape(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i=0 ; i<value.length() ; i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int)c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
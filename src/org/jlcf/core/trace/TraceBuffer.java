@@ -0,0 +1,156 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.trace;
+
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-allocated ring buffer of the traced calls of one thread.
+ * Only the owner thread records calls. The buffer can be read by other threads at any time: 
+ * entries that are overwritten while they are read are discarded.
+ * 
+ * @author Petros Pissias
+ *
+ */
+final class TraceBuffer {
+
+	//the thread of the buffer. The buffer does not keep the thread alive
+	private final long threadId;
+	private final String threadName;
+	private final WeakReference<Thread> owner;
+	
+	//the entries, capacity is a power of 2
+	private final TracePoint[] points;
+	private final long[] traceIds;
+	private final long[] starts;
+	private final long[] ends;
+	private final int mask;
+	
+	//number of entries written, published after an entry is complete
+	private final AtomicLong written;
+	
+	//calls left until the next sampled call, only used by the owner thread
+	private int countdown;
+	
+	/**
+	 * creates the buffer of the current thread
+	 * @param capacity the number of entries, rounded up to a power of 2
+	 */
+	TraceBuffer(int capacity) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		points = new TracePoint[size];
+		traceIds = new long[size];
+		starts = new long[size];
+		ends = new long[size];
+		mask = size - 1;
+		written = new AtomicLong();
+		threadId = Thread.currentThread().getId();
+		threadName = Thread.currentThread().getName();
+		owner = new WeakReference<Thread>(Thread.currentThread());
+		countdown = 0;
+	}
+	
+	/**
+	 * counts a call that is not part of a trace
+	 * @param sampleRate one call out of sampleRate is sampled
+	 * @return true if the call is sampled
+	 */
+	boolean sample(int sampleRate) {
+		if (--countdown > 0) {
+			return false;
+		}
+		countdown = sampleRate;
+		return true;
+	}
+	
+	/**
+	 * records a call, called by the owner thread
+	 */
+	void record(TracePoint point, long traceId, long start, long end) {
+		long index = written.get();
+		int slot = (int)(index & mask);
+		points[slot] = point;
+		traceIds[slot] = traceId;
+		starts[slot] = start;
+		ends[slot] = end;
+		//publishes the entry to the readers
+		written.lazySet(index + 1);
+	}
+	
+	/**
+	 * copies the entries of the buffer
+	 * @param visitor receives the entries, oldest first
+	 * @return the number of entries
+	 */
+	int read(TraceVisitor visitor) {
+		long end = written.get();
+		long start = Math.max(0, end - points.length);
+		TracePoint[] copyPoints = new TracePoint[(int)(end - start)];
+		long[] copyIds = new long[copyPoints.length];
+		long[] copyStarts = new long[copyPoints.length];
+		long[] copyEnds = new long[copyPoints.length];
+		for (long i=start ; i<end ; i++) {
+			int slot = (int)(i & mask);
+			int copy = (int)(i - start);
+			copyPoints[copy] = points[slot];
+			copyIds[copy] = traceIds[slot];
+			copyStarts[copy] = starts[slot];
+			copyEnds[copy] = ends[slot];
+		}
+		
+		//the entries that the owner may have overwritten during the copy are discarded.
+		//the fence keeps the reads of the copy before the second read of the written entries
+		VarHandle.acquireFence();
+		long valid = Math.max(start, written.get() - points.length + 1);
+		int count = 0;
+		for (long i=valid ; i<end ; i++) {
+			int copy = (int)(i - start);
+			if (copyPoints[copy] != null) {
+				visitor.visit(copyPoints[copy], copyIds[copy], copyStarts[copy], copyEnds[copy], threadId);
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * @return true if the thread of the buffer has terminated
+	 */
+	boolean isOwnerTerminated() {
+		Thread thread = owner.get();
+		return thread == null || !thread.isAlive();
+	}
+	
+	long getThreadId() {
+		return threadId;
+	}
+	
+	String getThreadName() {
+		return threadName;
+	}
+	
+	/**
+	 * receives the entries of a buffer
+	 */
+	interface TraceVisitor {
+		public void visit(TracePoint point, long traceId, long start, long end, long threadId);
+	}
+}
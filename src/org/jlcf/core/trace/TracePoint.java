@@ -0,0 +1,57 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.trace;
+
+/**
+ * An edge of the application that calls are traced on: a receptacle (or component reference) 
+ * and a method of the interface it is connected to.
+ * Trace points are created when a receptacle is wired, recording a call only stores a reference to one.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public final class TracePoint {
+
+	//the caller, for example componentB/receptacleA
+	private final String source;
+	
+	//the method called, for example componentA/interfaceA.method
+	private final String target;
+	
+	/**
+	 * constructor
+	 * @param source the caller, for example componentB/receptacleA
+	 * @param targetPath the path of the target interface
+	 * @param method the name of the method
+	 */
+	public TracePoint(String source, String targetPath, String method) {
+		this.source = source;
+		this.target = targetPath+"."+method;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getTarget() {
+		return target;
+	}
+
+	@Override
+	public String toString() {
+		return source+" -> "+target;
+	}
+}
@@ -24,7 +24,10 @@ public enum ContainerProcessorRequestType {
 
 	LOAD_APPLICATION, //load application
 	GET_TARGET_REFERENCE, //internal request to get a context-aware reference of a component
-	INSERT_INTERCEPTOR,
-	REMOVE_INTERCEPTOR,
-	QUISCE_SINGLE	
+	INSERT_INTERCEPTOR, //request to add an interceptor to a receptacle at runtime
+	REMOVE_INTERCEPTOR, //request to remove an interceptor from a receptacle at runtime
+	QUISCE_SINGLE,
+	GET_PENDING_CALLS, //request to get the number of calls currently served by a component
+	GET_METHOD_LATENCIES, //request to get the method latencies of a component interface
+	GET_RECEPTACLE_INTERCEPTORS //request to get the interceptors of a receptacle
 }
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.types.request;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jlcf.core.util.GenericRequestReplyReq;
+import org.jlcf.core.util.Pair;
+
+
+/**
+ * Request to add an interceptor at the end of the call chain of a receptacle.
+ * @author Petros Pissias
+ *
+ */
+public class InsertInterceptorRequest extends GenericRequestReplyReq< Pair<Boolean,String>, ContainerProcessorRequestType> {
+
+	//receptacle path in the form of component/receptacle
+	private final String receptaclePath;
+	
+	//the interceptor class
+	private final String interceptorClass;
+	
+	//the intercepted methods, separated by commas. null for all methods
+	private final String methods;
+	
+	//the properties the interceptor is configured with
+	private final Map<String, String> properties;
+	
+	/**
+	 * Creates a new instance of a request to add
+	 * an interceptor to a receptacle
+	 * @param receptaclePath the receptacle path
+	 * @param interceptorClass the class of the interceptor
+	 * @param methods the intercepted methods, separated by commas. null for all methods
+	 * @param properties the properties of the interceptor, null for none
+	 */
+	public InsertInterceptorRequest(String receptaclePath, String interceptorClass, String methods, Map<String, String> properties) {
+		super(ContainerProcessorRequestType.INSERT_INTERCEPTOR);
+		this.receptaclePath = receptaclePath;
+		this.interceptorClass = interceptorClass;
+		this.methods = methods;
+		//copied, the request is processed by another thread
+		this.properties = properties == null ? new HashMap<String, String>() : new HashMap<String, String>(properties);
+	}
+
+	public String getReceptaclePath() {
+		return receptaclePath;
+	}
+
+	public String getInterceptorClass() {
+		return interceptorClass;
+	}
+
+	public String getMethods() {
+		return methods;
+	}
+
+	public Map<String, String> getProperties() {
+		return properties;
+	}
+	
+}
@@ -15,6 +15,7 @@
  */
 package org.jlcf.core.types.request;
 
+import org.jlcf.core.IApplicationAssembly;
 import org.jlcf.core.util.GenericRequestReplyReq;
 import org.jlcf.core.util.Pair;
 
@@ -27,13 +28,27 @@ public class LoadApplicationRequest
 
 	private final String applicationDescription;
 	
+	//pre-built application, null when the application is loaded from a file
+	private final IApplicationAssembly assembly;
+	
 	public LoadApplicationRequest(String filename) {
 		super(ContainerProcessorRequestType.LOAD_APPLICATION);
 		applicationDescription = filename;
+		assembly = null;
 	}
 
+	public LoadApplicationRequest(IApplicationAssembly assembly) {
+		super(ContainerProcessorRequestType.LOAD_APPLICATION);
+		applicationDescription = null;
+		this.assembly = assembly;
+	}
+	
 	public String getApplicationDescription() {
 		return applicationDescription;
 	}
+
+	public IApplicationAssembly getAssembly() {
+		return assembly;
+	}
 	
 }
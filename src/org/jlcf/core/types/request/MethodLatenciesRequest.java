@@ -0,0 +1,51 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.types.request;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+
+import org.jlcf.core.util.GenericRequestReplyReq;
+import org.jlcf.core.util.LatencyHistogram;
+import org.jlcf.core.util.Pair;
+
+
+/**
+ * Request to get the method latencies of a component interface.
+ * @author Petros Pissias
+ *
+ */
+public class MethodLatenciesRequest extends GenericRequestReplyReq< Pair<Boolean,Map<Method, LatencyHistogram>>, ContainerProcessorRequestType> {
+
+	//target interface
+	private final String path;
+	
+	/**
+	 * Creates a new instance of a request to get
+	 * the method latencies of a component interface
+	 * @param path the path of the interface
+	 */
+	public MethodLatenciesRequest(String path) {
+		super(ContainerProcessorRequestType.GET_METHOD_LATENCIES);
+		this.path = path;		
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.types.request;
+
+import org.jlcf.core.util.GenericRequestReplyReq;
+import org.jlcf.core.util.Pair;
+
+
+/**
+ * Request to get the number of calls currently served by a component.
+ * @author Petros Pissias
+ *
+ */
+public class PendingCallsRequest extends GenericRequestReplyReq< Pair<Boolean,Long>, ContainerProcessorRequestType> {
+
+	//target component
+	private final String component;
+	
+	/**
+	 * Creates a new instance of a request to get
+	 * the pending calls of a component
+	 * @param component the component name
+	 */
+	public PendingCallsRequest(String component) {
+		super(ContainerProcessorRequestType.GET_PENDING_CALLS);
+		this.component = component;		
+	}
+
+	public String getComponent() {
+		return component;
+	}
+
+	
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.types.request;
+
+import org.jlcf.core.Interceptor;
+import org.jlcf.core.util.GenericRequestReplyReq;
+import org.jlcf.core.util.Pair;
+
+
+/**
+ * Request to get the interceptors of a receptacle.
+ * @author Petros Pissias
+ *
+ */
+public class ReceptacleInterceptorsRequest extends GenericRequestReplyReq< Pair<Boolean,Interceptor[]>, ContainerProcessorRequestType> {
+
+	//receptacle path in the form of component/receptacle
+	private final String receptaclePath;
+	
+	/**
+	 * Creates a new instance of a request to get
+	 * the interceptors of a receptacle
+	 * @param receptaclePath the receptacle path
+	 */
+	public ReceptacleInterceptorsRequest(String receptaclePath) {
+		super(ContainerProcessorRequestType.GET_RECEPTACLE_INTERCEPTORS);
+		this.receptaclePath = receptaclePath;		
+	}
+
+	public String getReceptaclePath() {
+		return receptaclePath;
+	}
+
+	
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.types.request;
+
+import org.jlcf.core.util.GenericRequestReplyReq;
+import org.jlcf.core.util.Pair;
+
+
+/**
+ * Request to remove an interceptor from the call chain of a receptacle.
+ * @author Petros Pissias
+ *
+ */
+public class RemoveInterceptorRequest extends GenericRequestReplyReq< Pair<Boolean,String>, ContainerProcessorRequestType> {
+
+	//receptacle path in the form of component/receptacle
+	private final String receptaclePath;
+	
+	//the interceptor class
+	private final String interceptorClass;
+	
+	/**
+	 * Creates a new instance of a request to remove
+	 * an interceptor from a receptacle
+	 * @param receptaclePath the receptacle path
+	 * @param interceptorClass the class of the interceptor. The last interceptor of this class is removed
+	 */
+	public RemoveInterceptorRequest(String receptaclePath, String interceptorClass) {
+		super(ContainerProcessorRequestType.REMOVE_INTERCEPTOR);
+		this.receptaclePath = receptaclePath;
+		this.interceptorClass = interceptorClass;
+	}
+
+	public String getReceptaclePath() {
+		return receptaclePath;
+	}
+
+	public String getInterceptorClass() {
+		return interceptorClass;
+	}
+	
+}
@@ -31,6 +31,8 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element name="component" type="{http://jlcf.sourceforge.net/JLCFApplication}Component" maxOccurs="unbounded"/>
  *       &lt;/sequence>
  *       &lt;attribute name="applicationName" type="{http://www.w3.org/2001/XMLSchema}string" />
+ *       &lt;attribute name="invocation" type="{http://www.w3.org/2001/XMLSchema}string" />
+ *       &lt;attribute name="blockingPercentile" type="{http://www.w3.org/2001/XMLSchema}double" />
  *     &lt;/restriction>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -49,6 +51,10 @@ public class Application {
     protected List<Component> component;
     @XmlAttribute
     protected String applicationName;
+    @XmlAttribute
+    protected String invocation;
+    @XmlAttribute
+    protected Double blockingPercentile;
 
     /**
      * Gets the value of the component property.
@@ -103,4 +109,52 @@ public class Application {
         this.applicationName = value;
     }
 
+    /**
+     * Gets the value of the invocation property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public String getInvocation() {
+        return invocation;
+    }
+
+    /**
+     * Sets the value of the invocation property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setInvocation(String value) {
+        this.invocation = value;
+    }
+
+    /**
+     * Gets the value of the blockingPercentile property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Double }
+     *     
+     */
+    public Double getBlockingPercentile() {
+        return blockingPercentile;
+    }
+
+    /**
+     * Sets the value of the blockingPercentile property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Double }
+     *     
+     */
+    public void setBlockingPercentile(Double value) {
+        this.blockingPercentile = value;
+    }
+
 }
@@ -33,6 +33,8 @@ import javax.xml.bind.annotation.XmlType;
  *       &lt;/sequence>
  *       &lt;attribute name="name" type="{http://www.w3.org/2001/XMLSchema}string" />
  *       &lt;attribute name="implementationClass" type="{http://www.w3.org/2001/XMLSchema}string" />
+ *       &lt;attribute name="poolSize" type="{http://www.w3.org/2001/XMLSchema}int" />
+ *       &lt;attribute name="poolPolicy" type="{http://www.w3.org/2001/XMLSchema}string" />
  *     &lt;/restriction>
  *   &lt;/complexContent>
  * &lt;/complexType>
@@ -56,6 +58,10 @@ public class Component {
     protected String name;
     @XmlAttribute
     protected String implementationClass;
+    @XmlAttribute
+    protected Integer poolSize;
+    @XmlAttribute
+    protected String poolPolicy;
 
     /**
      * Gets the value of the interface property.
@@ -192,4 +198,52 @@ public class Component {
         this.implementationClass = value;
     }
 
+    /**
+     * Gets the value of the poolSize property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link Integer }
+     *     
+     */
+    public Integer getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Sets the value of the poolSize property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link Integer }
+     *     
+     */
+    public void setPoolSize(Integer value) {
+        this.poolSize = value;
+    }
+
+    /**
+     * Gets the value of the poolPolicy property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link String }
+     *     
+     */
+    public String getPoolPolicy() {
+        return poolPolicy;
+    }
+
+    /**
+     * Sets the value of the poolPolicy property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link String }
+     *     
+     */
+    public void setPoolPolicy(String value) {
+        this.poolPolicy = value;
+    }
+
 }
@@ -8,9 +8,12 @@
 
 package org.jlcf.core.types.xml;
 
+import java.util.ArrayList;
+import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 
 
@@ -23,6 +26,9 @@ import javax.xml.bind.annotation.XmlType;
  * &lt;complexType name="Interface">
  *   &lt;complexContent>
  *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *       &lt;sequence>
+ *         &lt;element name="Interceptor" type="{http://jlcf.sourceforge.net/JLCFApplication}Interceptor" maxOccurs="unbounded" minOccurs="0"/>
+ *       &lt;/sequence>
  *       &lt;attribute name="name" type="{http://www.w3.org/2001/XMLSchema}string" />
  *       &lt;attribute name="type" type="{http://www.w3.org/2001/XMLSchema}string" />
  *     &lt;/restriction>
@@ -33,14 +39,47 @@ import javax.xml.bind.annotation.XmlType;
  * 
  */
 @XmlAccessorType(XmlAccessType.FIELD)
-@XmlType(name = "Interface")
+@XmlType(name = "Interface", propOrder = {
+    "interceptor"
+})
 public class Interface {
 
+    @XmlElement(name = "Interceptor")
+    protected List<Interceptor> interceptor;
     @XmlAttribute
     protected String name;
     @XmlAttribute
     protected String type;
 
+    /**
+     * Gets the value of the interceptor property.
+     * 
+     * <p>
+     * This accessor method returns a reference to the live list,
+     * not a snapshot. Therefore any modification you make to the
+     * returned list will be present inside the JAXB object.
+     * This is why there is not a <CODE>set</CODE> method for the interceptor property.
+     * 
+     * <p>
+     * For example, to add a new item, do as follows:
+     * <pre>
+     *    getInterceptor().add(newItem);
+     * </pre>
+     * 
+     * 
+     * <p>
+     * Objects of the following type(s) are allowed in the list
+     * {@link Interceptor }
+     * 
+     * 
+     */
+    public List<Interceptor> getInterceptor() {
+        if (interceptor == null) {
+            interceptor = new ArrayList<Interceptor>();
+        }
+        return this.interceptor;
+    }
+
     /**
      * Gets the value of the name property.
      * 
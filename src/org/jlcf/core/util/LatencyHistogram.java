@@ -0,0 +1,226 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * 
+ * Values are counted in log-linear buckets: values below 16 have their own bucket, 
+ * larger values are split in 8 buckets per power of 2. The upper bound of a bucket is 
+ * at most 12.5% larger than the values it contains.
+ * 
+ * The histogram is windowed, so that it follows changes of the latencies: values are counted in intervals 
+ * of the window length and the histogram holds the current and the previous interval. An interval is dropped 
+ * when the next one ends, so the histogram covers between one and two window lengths of the most recent values.
+ * 
+ * Recording a value is a single atomic increment, and an allocation when an interval ends. 
+ * Reading the histogram (count, percentiles) goes through all buckets and is meant for occasional use, 
+ * for example when a reconfiguration decides if a call can be admitted, or for monitoring.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class LatencyHistogram {
+
+	//number of bits that select the bucket inside a power of 2
+	private static final int SUB_BUCKET_BITS = 3;
+	
+	//buckets per power of 2
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	//values below this limit have their own bucket
+	private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+	
+	//number of buckets, enough for all positive long values
+	private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+	
+	//the default length of the window
+	public static final long DEFAULT_WINDOW_MILLIS = 60000;
+	
+	//the length of an interval in nanoseconds
+	private final long windowNanos;
+	
+	//the current interval, it links to the previous one
+	private final AtomicReference<Interval> current;
+	
+	/**
+	 * creates a histogram with the default window
+	 */
+	public LatencyHistogram() {
+		this(DEFAULT_WINDOW_MILLIS);
+	}
+	
+	/**
+	 * creates a histogram
+	 * @param windowMillis the length of an interval of the window in milliseconds
+	 */
+	public LatencyHistogram(long windowMillis) {
+		if (windowMillis <= 0) {
+			throw new IllegalArgumentException("invalid window "+windowMillis);
+		}
+		windowNanos = windowMillis * 1000000L;
+		current = new AtomicReference<Interval>(new Interval(System.nanoTime(), null));
+	}
+	
+	/**
+	 * records a latency
+	 * @param nanos the latency in nanoseconds. Negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		record(nanos, System.nanoTime());
+	}
+	
+	/**
+	 * records a latency, for callers that already know the time
+	 * @param nanos the latency in nanoseconds. Negative values are recorded as 0
+	 * @param now the current System.nanoTime()
+	 */
+	public void record(long nanos, long now) {
+		getInterval(now).counts.incrementAndGet(getBucket(nanos < 0 ? 0 : nanos));
+	}
+	
+	/**
+	 * returns the number of recorded latencies in the window
+	 * @return the count
+	 */
+	public long getCount() {
+		long count = 0;
+		for (long bucketCount : getCounts()) {
+			count += bucketCount;
+		}
+		return count;
+	}
+	
+	/**
+	 * returns the latency at a percentile. 
+	 * The value is the upper bound of the bucket that contains the percentile.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the latency in nanoseconds, -1 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] snapshot = getCounts();
+		long count = 0;
+		for (long bucketCount : snapshot) {
+			count += bucketCount;
+		}
+		if (count == 0) {
+			return -1;
+		}
+		
+		//the rank of the value at the percentile, at least the first value
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i=0; i<snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return getBucketUpperBound(i);
+			}
+		}
+		//values recorded while reading, return the last non empty bucket
+		for (int i=snapshot.length-1; i>=0; i--) {
+			if (snapshot[i] > 0) {
+				return getBucketUpperBound(i);
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * returns a copy of the bucket counts of the window
+	 * @return the counts, indexed by bucket
+	 */
+	public long[] getCounts() {
+		Interval interval = getInterval(System.nanoTime());
+		Interval previous = interval.previous;
+		long[] snapshot = new long[BUCKETS];
+		for (int i=0; i<BUCKETS; i++) {
+			snapshot[i] = interval.counts.get(i) + (previous == null ? 0 : previous.counts.get(i));
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * returns the current interval, starts a new one if it has ended
+	 */
+	private Interval getInterval(long now) {
+		Interval interval = current.get();
+		while (now - interval.start >= windowNanos) {
+			//the ended interval is kept as the previous one, unless it ended a whole window ago
+			Interval next = new Interval(now, now - interval.start - windowNanos < windowNanos ? interval : null);
+			if (current.compareAndSet(interval, next)) {
+				//only one previous interval is kept
+				interval.previous = null;
+				return next;
+			}
+			interval = current.get();
+		}
+		return interval;
+	}
+	
+	/**
+	 * returns the largest value that is counted in a bucket
+	 * @param bucket the bucket index
+	 * @return the upper bound in nanoseconds
+	 */
+	public static long getBucketUpperBound(int bucket) {
+		if (bucket < LINEAR_LIMIT) {
+			return bucket;
+		}
+		int shift = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+		long mantissa = (bucket - LINEAR_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+		//for the last bucket this wraps around to Long.MAX_VALUE
+		return ((mantissa + 1) << shift) - 1;
+	}
+	
+	/**
+	 * returns the bucket of a value
+	 */
+	private static int getBucket(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int mantissa = (int) (value >>> shift);
+		return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+	}
+	
+	/**
+	 * the counts of an interval of the window
+	 */
+	private static final class Interval {
+		
+		//System.nanoTime() at which the interval started
+		private final long start;
+		
+		private final AtomicLongArray counts;
+		
+		//the interval before this one, null when it was dropped
+		private volatile Interval previous;
+		
+		Interval(long start, Interval previous) {
+			this.start = start;
+			this.counts = new AtomicLongArray(BUCKETS);
+			this.previous = previous;
+		}
+	}
+}
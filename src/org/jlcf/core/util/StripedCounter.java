@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013 Petros Pissias.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jlcf.core.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that spreads updates of different threads over several cells,
+ * so that threads updating the counter concurrently do not contend on the same memory location.
+ * 
+ * A thread always updates the same cell. Reading the value sums all cells
+ * and is more expensive than an update.
+ * 
+ * @author Petros Pissias
+ *
+ */
+public class StripedCounter {
+
+	//distance between two used cells, keeps the cells on separate cache lines
+	private static final int PADDING = 16;
+	
+	//the cells, only every PADDING-th element is used
+	private final AtomicLongArray cells;
+	
+	//number of cells - 1, the number of cells is a power of 2
+	private final int mask;
+	
+	/**
+	 * creates a counter with a number of cells based on the available processors
+	 */
+	public StripedCounter() {
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+			stripes <<= 1;
+		}
+		mask = stripes - 1;
+		cells = new AtomicLongArray(stripes * PADDING);
+	}
+	
+	/**
+	 * returns the cell of the calling thread
+	 */
+	private int cell() {
+		long id = Thread.currentThread().getId();
+		return ((int)(id ^ (id >>> 32)) & mask) * PADDING;
+	}
+	
+	public void increment() {
+		cells.incrementAndGet(cell());
+	}
+	
+	public void decrement() {
+		cells.decrementAndGet(cell());
+	}
+	
+	/**
+	 * returns the sum of all cells. 
+	 * Concurrent updates may or may not be included.
+	 * @return the counter value
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i=0; i<cells.length(); i+=PADDING) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+}